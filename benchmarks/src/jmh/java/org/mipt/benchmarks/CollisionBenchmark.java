@@ -0,0 +1,69 @@
+package org.mipt.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.mipt.Excitation;
+import org.mipt.Lattice;
+import org.mipt.Physics;
+import org.mipt.entity.LatticeState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Фаза столкновений {@link Physics#handleCollisions} без шага интегратора. Решетка заранее
+ * раскачивается толчком заданной силы, чтобы грузы сместились и часть из них пересекалась.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class CollisionBenchmark {
+  private static final float FIXED_TIME_STEP = 0.01f;
+  private static final int SETTLE_STEPS = 20;
+
+  @Param({"30", "100", "200", "500"})
+  public int size;
+
+  /** Скорость толчка: 400 - как в окне, 4000 - с многочисленными столкновениями */
+  @Param({"400", "4000"})
+  public float velocity;
+
+  @Param({"1"})
+  public int threads;
+
+  private ForkJoinPool pool;
+  private Physics physics;
+  private LatticeState state;
+
+  @Setup(Level.Trial)
+  public void createLattice() {
+    pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    physics = new Physics(pool);
+    state = Lattice.create(size, size).getState();
+    Excitation.RADIAL.apply(physics, state, velocity);
+    for (int i = 0; i < SETTLE_STEPS; i++) {
+      physics.applyPhysics(state, FIXED_TIME_STEP);
+    }
+  }
+
+  @TearDown(Level.Trial)
+  public void shutdownPool() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+
+  /** Положения не меняются, поэтому каждый вызов находит те же пары */
+  @Benchmark
+  public LatticeState handleCollisions() {
+    physics.handleCollisions(state);
+    return state;
+  }
+}
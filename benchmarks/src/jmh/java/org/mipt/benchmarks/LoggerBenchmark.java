@@ -0,0 +1,138 @@
+package org.mipt.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.mipt.AsyncPhysicsLogger;
+import org.mipt.Excitation;
+import org.mipt.Lattice;
+import org.mipt.Physics;
+import org.mipt.PhysicsLogger;
+import org.mipt.entity.LatticeState;
+import org.mipt.io.TrajectoryFormat;
+import org.mipt.observer.CoordinateCsvObserver;
+import org.mipt.observer.KineticEnergyObserver;
+import org.mipt.observer.PhysicsObserver;
+import org.mipt.observer.TotalEnergyObserver;
+import org.mipt.observer.TrajectoryObserver;
+import org.mipt.observer.WeightMask;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Запись одного кадра каждым наблюдателем {@link PhysicsLogger} по отдельности, всем логером
+ * целиком и через {@link AsyncPhysicsLogger}. Файлы пишутся во временный каталог, который
+ * удаляется после замера.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LoggerBenchmark {
+  private static final float FIXED_TIME_STEP = 0.01f;
+  private static final int ASYNC_QUEUE_FRAMES = 256;
+
+  @Param({"30", "100"})
+  public int size;
+
+  private Path directory;
+  private LatticeState state;
+  private PhysicsObserver xPositions;
+  private PhysicsObserver totalEnergy;
+  private PhysicsObserver borderEnergy;
+  private PhysicsObserver trajectory;
+  private PhysicsObserver logger;
+  private PhysicsObserver asyncLogger;
+  private long step;
+
+  @Setup(Level.Trial)
+  public void createObservers() throws IOException {
+    directory = Files.createTempDirectory("logger-benchmark");
+    state = Lattice.create(size, size).getState();
+    Physics physics = new Physics();
+    Excitation.RADIAL.apply(physics, state, Excitation.DEFAULT_VELOCITY);
+    physics.applyPhysics(state, FIXED_TIME_STEP);
+
+    xPositions =
+        new CoordinateCsvObserver(file("x.csv"), LatticeState.X, WeightMask.all(state.size()));
+    totalEnergy = new TotalEnergyObserver(file("energy.csv"));
+    borderEnergy =
+        new KineticEnergyObserver(
+            file("border.csv"),
+            WeightMask.border(state.getWeightsNumberX(), state.getWeightsNumberY()));
+    trajectory =
+        new TrajectoryObserver(
+            directory.resolve("trajectory.bin"), state, FIXED_TIME_STEP, TrajectoryFormat.ALL);
+    logger = new PhysicsLogger(file("sync"), state);
+    asyncLogger =
+        new AsyncPhysicsLogger(
+            new PhysicsLogger(file("async"), state),
+            state,
+            ASYNC_QUEUE_FRAMES,
+            AsyncPhysicsLogger.OverflowPolicy.BLOCK);
+  }
+
+  @TearDown(Level.Trial)
+  public void closeObservers() throws IOException {
+    for (PhysicsObserver observer :
+        new PhysicsObserver[] {
+          xPositions, totalEnergy, borderEnergy, trajectory, logger, asyncLogger
+        }) {
+      observer.close();
+    }
+    File[] files = directory.toFile().listFiles();
+    if (files != null) {
+      for (File file : files) {
+        Files.delete(file.toPath());
+      }
+    }
+    Files.delete(directory);
+  }
+
+  private String file(String name) {
+    return directory.resolve(name).toString();
+  }
+
+  /** Положения по одной координате в csv, как xPos/yPos */
+  @Benchmark
+  public void positionsCsv() throws IOException {
+    xPositions.observe(state, ++step, step * FIXED_TIME_STEP);
+  }
+
+  @Benchmark
+  public void totalEnergy() throws IOException {
+    totalEnergy.observe(state, ++step, step * FIXED_TIME_STEP);
+  }
+
+  @Benchmark
+  public void borderKineticEnergy() throws IOException {
+    borderEnergy.observe(state, ++step, step * FIXED_TIME_STEP);
+  }
+
+  /** Все четыре поля в бинарную траекторию */
+  @Benchmark
+  public void trajectory() throws IOException {
+    trajectory.observe(state, ++step, step * FIXED_TIME_STEP);
+  }
+
+  /** Стандартный набор наблюдателей в потоке симуляции */
+  @Benchmark
+  public void physicsLogger() throws IOException {
+    logger.observe(state, ++step, step * FIXED_TIME_STEP);
+  }
+
+  /** Сколько платит поток симуляции при асинхронной записи, с ожиданием при полной очереди */
+  @Benchmark
+  public void asyncPhysicsLogger() throws IOException {
+    asyncLogger.observe(state, ++step, step * FIXED_TIME_STEP);
+  }
+}
@@ -0,0 +1,106 @@
+package org.mipt.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.mipt.Excitation;
+import org.mipt.Lattice;
+import org.mipt.Physics;
+import org.mipt.entity.LatticeState;
+import org.mipt.integrator.IntegratorType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/** Один фиксированный шаг {@link Physics#applyPhysics} после радиального толчка */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PhysicsBenchmark {
+  private static final float FIXED_TIME_STEP = 0.01f;
+
+  /** Сторона квадратной решетки */
+  @Param({"30", "100", "200", "500"})
+  public int size;
+
+  @Param({"RK4", "VERLET", "LEAPFROG", "DOPRI45"})
+  public String integrator;
+
+  @Param({"12"})
+  public int subSteps;
+
+  /** Число потоков для подсчета сил, 1 - без пула */
+  @Param({"1"})
+  public int threads;
+
+  /** Модель сил пружин: {@code NONLINEAR} или {@code LINEAR} */
+  @Param({"NONLINEAR"})
+  public String forces;
+
+  /** Ядро сил пружин: {@code scalar} или {@code vector} */
+  @Param({"scalar"})
+  public String kernel;
+
+  /** Строк сетки в плитке, 0 - без плиток */
+  @Param({"0"})
+  public int tileRows;
+
+  /** Подшагов, которые плитка проходит подряд */
+  @Param({"1"})
+  public int tileSubSteps;
+
+  private ForkJoinPool pool;
+  private Physics physics;
+
+  /** Решетка сразу после толчка, с нее начинается каждая итерация */
+  private LatticeState initial;
+
+  private LatticeState state;
+
+  @Setup(Level.Trial)
+  public void createPhysics() {
+    pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    // Ядро выбирается при первом создании физики; JMH запускает каждый набор параметров в своей JVM
+    System.setProperty("mipt.physics.kernel", kernel);
+    physics = new Physics(pool);
+    physics.setIntegrator(IntegratorType.valueOf(integrator).create());
+    physics.setSubSteps(subSteps);
+    physics.setForceModel(Physics.ForceModel.valueOf(forces));
+    physics.setTiling(tileRows, tileSubSteps);
+    // Толчок по умолчанию велик для линейной модели, здесь важна только скорость
+    physics.setWarnings(message -> {});
+
+    initial = Lattice.create(size, size).getState();
+    Excitation.RADIAL.apply(physics, initial, Excitation.DEFAULT_VELOCITY);
+    state = initial.snapshot();
+  }
+
+  /**
+   * Каждая итерация начинается с одного и того же состояния. Оно копируется в ту же решетку, а не
+   * строится заново, чтобы профиль {@code gc} показывал выделения только самого шага.
+   */
+  @Setup(Level.Iteration)
+  public void resetLattice() {
+    state.copyFrom(initial);
+    physics.getIntegrator().invalidate();
+  }
+
+  @TearDown(Level.Trial)
+  public void shutdownPool() {
+    if (pool != null) {
+      pool.shutdown();
+    }
+  }
+
+  @Benchmark
+  public LatticeState applyPhysics() {
+    physics.applyPhysics(state, FIXED_TIME_STEP);
+    return state;
+  }
+}
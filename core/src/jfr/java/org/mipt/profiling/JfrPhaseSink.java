@@ -0,0 +1,58 @@
+package org.mipt.profiling;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+/**
+ * Получатель замеров, который пишет их событиями {@link PhaseEvent}. Замеры нужны, только пока
+ * идет хотя бы одна запись JFR, за этим следит слушатель {@link FlightRecorder}.
+ *
+ * <p>Собирается под Java 11 отдельно от остального кода и загружается через {@link
+ * PhaseEventSink#load()}.
+ */
+final class JfrPhaseSink implements PhaseEventSink, FlightRecorderListener {
+  private static final String[] NAMES = new String[Phase.values().length];
+
+  static {
+    for (Phase phase : Phase.values()) {
+      NAMES[phase.ordinal()] = phase.getLabel();
+    }
+  }
+
+  private volatile boolean recording;
+
+  JfrPhaseSink() {
+    FlightRecorder.register(PhaseEvent.class);
+    FlightRecorder.addListener(this);
+    // Запись, начатая флагом -XX:StartFlightRecording, уже идет и слушателю не сообщается
+    recordingStateChanged(null);
+  }
+
+  @Override
+  public void recordingStateChanged(Recording changed) {
+    boolean running = false;
+    if (FlightRecorder.isInitialized()) {
+      for (Recording recording : FlightRecorder.getFlightRecorder().getRecordings()) {
+        running |= recording.getState() == RecordingState.RUNNING;
+      }
+    }
+    recording = running;
+  }
+
+  @Override
+  public boolean isRecording() {
+    return recording;
+  }
+
+  @Override
+  public void emit(Phase phase, long duration) {
+    PhaseEvent event = new PhaseEvent();
+    if (event.shouldCommit()) {
+      event.phase = NAMES[phase.ordinal()];
+      event.nanos = duration;
+      event.commit();
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package org.mipt.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/** JFR-событие с длительностью одной фазы кадра или шага физики */
+@Name("org.mipt.PhysicsPhase")
+@Label("Physics Phase")
+@Category("Elastic Wave")
+@Description("Duration of one phase of a frame or of a physics step")
+@StackTrace(false)
+class PhaseEvent extends jdk.jfr.Event {
+  @Label("Phase")
+  String phase;
+
+  @Label("Duration")
+  @Timespan(Timespan.NANOSECONDS)
+  long nanos;
+}
@@ -0,0 +1,218 @@
+package org.mipt;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+import org.mipt.entity.LatticeState;
+import org.mipt.observer.PhysicsObserver;
+
+/**
+ * Асинхронная обертка над наблюдателем, например {@link PhysicsLogger}. Поток симуляции только
+ * копирует состояние в заранее выделенный кадр и кладет его в очередь, а запись на диск идет в
+ * отдельном потоке. Кадры возвращаются обратно через вторую очередь, так что при работе память не
+ * выделяется. Шаги, которые наблюдатель все равно пропустит, не копируются.
+ */
+public class AsyncPhysicsLogger implements PhysicsObserver {
+  /** Что делать, когда все кадры заняты, потому что запись отстает */
+  public enum OverflowPolicy {
+    /** Ждать, пока писатель освободит кадр */
+    BLOCK,
+    /** Пропустить кадр */
+    DROP,
+    /** Пропустить кадр и писать только каждый 2-й, 4-й... кадр, пока очередь не разгрузится */
+    DOWNSAMPLE
+  }
+
+  private static final long WAIT_NANOS = 50_000;
+  private static final long IDLE_NANOS = 500_000;
+  private static final int FLUSH_BATCH = 64;
+  private static final int MAX_STRIDE = 1 << 10;
+
+  private final PhysicsObserver logger;
+  private final OverflowPolicy policy;
+  private final SpscQueue<Frame> queued;
+  private final SpscQueue<Frame> free;
+  private final Thread writer;
+
+  private volatile boolean closed;
+  /** Ошибка, на которой остановился поток записи, в том числе непроверяемая */
+  private volatile Throwable failure;
+
+  /** Счетчики потока симуляции */
+  private volatile long submittedFrames;
+
+  private volatile long droppedFrames;
+  private volatile float lastSubmittedTime;
+  private long sequence;
+  private int stride = 1;
+
+  /** Счетчики потока записи */
+  private volatile long writtenFrames;
+
+  private volatile float lastWrittenTime;
+
+  /** Снимок состояния решетки вместе с моментом времени */
+  private static final class Frame {
+    private final LatticeState state;
+    private long step;
+    private float time;
+
+    Frame(LatticeState state) {
+      this.state = state;
+    }
+  }
+
+  /**
+   * Создает логер и запускает поток записи
+   *
+   * @param logger наблюдатель, в который пишутся кадры. Дальше им пользуется только поток записи.
+   * @param lattice решетка, по образцу которой выделяются кадры
+   * @param capacity число кадров в пуле, округляется вверх до степени двойки
+   * @param policy поведение при переполнении очереди
+   */
+  public AsyncPhysicsLogger(
+      PhysicsObserver logger, LatticeState lattice, int capacity, OverflowPolicy policy) {
+    this.logger = logger;
+    this.policy = policy;
+    queued = new SpscQueue<>(capacity);
+    free = new SpscQueue<>(capacity);
+    for (int i = 0; i < free.capacity(); i++) {
+      free.offer(new Frame(lattice.snapshot()));
+    }
+    writer = new Thread(this::drain, "physics-logger");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Передает состояние на запись. Вызывается только из одного потока, обычно потока симуляции, и
+   * не обращается к диску.
+   *
+   * @param lattice состояние решетки
+   * @param step номер завершенного фиксированного шага
+   * @param time текущий момент времени
+   * @throws IOException если поток записи завершился с ошибкой
+   */
+  @Override
+  public void observe(LatticeState lattice, long step, float time) throws IOException {
+    checkFailure();
+    if (!logger.wants(step)) {
+      return;
+    }
+    submittedFrames++;
+    lastSubmittedTime = time;
+
+    if (policy == OverflowPolicy.DOWNSAMPLE) {
+      if (stride > 1 && queued.size() < queued.capacity() / 4) {
+        stride >>= 1;
+      }
+      if (sequence++ % stride != 0) {
+        droppedFrames++;
+        return;
+      }
+    }
+
+    Frame frame = free.poll();
+    while (frame == null) {
+      if (policy == OverflowPolicy.DROP) {
+        droppedFrames++;
+        return;
+      }
+      if (policy == OverflowPolicy.DOWNSAMPLE) {
+        droppedFrames++;
+        stride = Math.min(stride << 1, MAX_STRIDE);
+        return;
+      }
+      LockSupport.parkNanos(WAIT_NANOS);
+      checkFailure();
+      frame = free.poll();
+    }
+
+    frame.state.copyFrom(lattice);
+    frame.step = step;
+    frame.time = time;
+    queued.offer(frame);
+  }
+
+  private void drain() {
+    try {
+      int batch = 0;
+      while (true) {
+        boolean done = closed;
+        Frame frame = queued.poll();
+        if (frame == null) {
+          if (batch > 0) {
+            logger.flush();
+            batch = 0;
+          }
+          if (done) {
+            return;
+          }
+          LockSupport.parkNanos(IDLE_NANOS);
+          continue;
+        }
+
+        logger.observe(frame.state, frame.step, frame.time);
+        lastWrittenTime = frame.time;
+        writtenFrames++;
+        free.offer(frame);
+
+        if (++batch == FLUSH_BATCH) {
+          logger.flush();
+          batch = 0;
+        }
+      }
+    } catch (Throwable e) {
+      // Иначе поток записи умирает молча, а BLOCK ждет свободный кадр вечно
+      failure = e;
+    }
+  }
+
+  private void checkFailure() throws IOException {
+    Throwable e = failure;
+    if (e != null) {
+      throw new IOException("Physics logger thread failed", e);
+    }
+  }
+
+  /** Число кадров, ожидающих записи */
+  public int getQueuedFrames() {
+    return queued.size();
+  }
+
+  /** Насколько записанные данные отстают от симуляции, в секундах модельного времени */
+  public float getLagSeconds() {
+    return writtenFrames == 0 ? lastSubmittedTime : lastSubmittedTime - lastWrittenTime;
+  }
+
+  public long getSubmittedFrames() {
+    return submittedFrames;
+  }
+
+  public long getDroppedFrames() {
+    return droppedFrames;
+  }
+
+  public long getWrittenFrames() {
+    return writtenFrames;
+  }
+
+  /**
+   * Дописывает очередь, останавливает поток записи и закрывает файлы
+   *
+   * @throws IOException при ошибке записи
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    LockSupport.unpark(writer);
+    try {
+      writer.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for the logger thread", e);
+    } finally {
+      logger.close();
+    }
+    checkFailure();
+  }
+}
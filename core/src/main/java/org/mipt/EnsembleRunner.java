@@ -0,0 +1,367 @@
+package org.mipt;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.mipt.entity.LatticeState;
+import org.mipt.integrator.IntegratorType;
+import org.mipt.observer.EnergySummaryObserver;
+import org.mipt.observer.WeightMask;
+
+/**
+ * Запуск ансамбля независимых решеток для перебора параметров. Каждое сочетание параметров -
+ * отдельная решетка со своей физикой, члены ансамбля считаются параллельно на пуле потоков по
+ * одному на поток, поэтому общих данных между ними нет и пропускная способность растет с числом
+ * ядер. Крупные решетки запускаются первыми, чтобы в конце не ждать одну большую.
+ *
+ * <p>Каждый член пишет свои {@code <out>_<id>_energy.csv} и {@code <out>_<id>_border.csv}, а в
+ * конце печатается и пишется в {@code <out>_summary.csv} сводная таблица по {@link
+ * EnergySummaryObserver}.
+ *
+ * <p>Перебираемые параметры, значения через запятую:
+ *
+ * <ul>
+ *   <li>{@code --size} - размеры решеток {@code NXxNY} (30x30)
+ *   <li>{@code --k} - жесткость горизонтальных и вертикальных пружин ({@value Lattice#DEFAULT_K})
+ *   <li>{@code --mass} - масса груза ({@value Lattice#DEFAULT_MASS})
+ *   <li>{@code --velocity} - скорость возбуждения (400)
+ *   <li>{@code --excitation} - {@code radial} или {@code column} (radial)
+ * </ul>
+ *
+ * Общие параметры:
+ *
+ * <ul>
+ *   <li>{@code --steps} - число фиксированных шагов (1000)
+ *   <li>{@code --dt} - фиксированный шаг по времени (0.01)
+ *   <li>{@code --integrator} - {@code rk4}, {@code verlet}, {@code leapfrog} или {@code dopri45}
+ *       (rk4)
+ *   <li>{@code --substeps} - число подшагов на фиксированный шаг (12)
+ *   <li>{@code --forces} - {@code nonlinear} или {@code linear} (nonlinear)
+ *   <li>{@code --log-every} - записывать каждый N-й шаг (1)
+ *   <li>{@code --trajectory} - {@code true}: писать положения в бинарную траекторию (false)
+ *   <li>{@code --workers} - число потоков (число процессоров)
+ *   <li>{@code --out} - префикс файлов (ensemble)
+ * </ul>
+ */
+public class EnsembleRunner {
+  private int[][] sizes = {{30, 30}};
+  private float[] stiffnesses = {Lattice.DEFAULT_K};
+  private float[] masses = {Lattice.DEFAULT_MASS};
+  private float[] velocities = {Excitation.DEFAULT_VELOCITY};
+  private Excitation[] excitations = {Excitation.RADIAL};
+  private int steps = 1000;
+  private float fixedTimeStep = 0.01f;
+  private IntegratorType integrator = IntegratorType.RK4;
+  private int subSteps = 12;
+  private Physics.ForceModel forceModel = Physics.ForceModel.NONLINEAR;
+  private int logEvery = 1;
+  private boolean trajectory = false;
+  private int workers = Runtime.getRuntime().availableProcessors();
+  private String out = "ensemble";
+
+  /** Член ансамбля: параметры и результаты запуска */
+  private static final class Member {
+    private final int id;
+    private final int weightsNumberX;
+    private final int weightsNumberY;
+    private final float k;
+    private final float mass;
+    private final float velocity;
+    private final Excitation excitation;
+
+    /** Заполняются потоком пула, читаются после {@link Future#get()} */
+    private EnergySummaryObserver summary;
+
+    private double seconds;
+
+    Member(
+        int id,
+        int weightsNumberX,
+        int weightsNumberY,
+        float k,
+        float mass,
+        float velocity,
+        Excitation excitation) {
+      this.id = id;
+      this.weightsNumberX = weightsNumberX;
+      this.weightsNumberY = weightsNumberY;
+      this.k = k;
+      this.mass = mass;
+      this.velocity = velocity;
+      this.excitation = excitation;
+    }
+
+    long cost() {
+      return (long) weightsNumberX * weightsNumberY;
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    EnsembleRunner runner = new EnsembleRunner();
+    runner.parse(args);
+    runner.run();
+  }
+
+  private void parse(String[] args) {
+    for (String arg : args) {
+      int eq = arg.indexOf('=');
+      if (!arg.startsWith("--") || eq < 0) {
+        throw new IllegalArgumentException("Expected --name=value, got " + arg);
+      }
+      String name = arg.substring(2, eq);
+      String value = arg.substring(eq + 1);
+      switch (name) {
+        case "size":
+          String[] items = value.split(",");
+          sizes = new int[items.length][];
+          for (int i = 0; i < items.length; i++) {
+            int x = items[i].indexOf('x');
+            if (x < 0) {
+              throw new IllegalArgumentException("Expected --size=NXxNY, got " + items[i]);
+            }
+            sizes[i] =
+                new int[] {
+                  Integer.parseInt(items[i].substring(0, x)),
+                  Integer.parseInt(items[i].substring(x + 1))
+                };
+          }
+          break;
+        case "k":
+          stiffnesses = floats(value);
+          break;
+        case "mass":
+          masses = floats(value);
+          break;
+        case "velocity":
+          velocities = floats(value);
+          break;
+        case "excitation":
+          String[] names = value.split(",");
+          excitations = new Excitation[names.length];
+          for (int i = 0; i < names.length; i++) {
+            excitations[i] = Excitation.valueOf(names[i].trim().toUpperCase());
+          }
+          break;
+        case "steps":
+          steps = Integer.parseInt(value);
+          break;
+        case "dt":
+          fixedTimeStep = Float.parseFloat(value);
+          break;
+        case "integrator":
+          integrator = IntegratorType.valueOf(value.toUpperCase());
+          break;
+        case "substeps":
+          subSteps = Integer.parseInt(value);
+          break;
+        case "forces":
+          forceModel = Physics.ForceModel.valueOf(value.toUpperCase());
+          break;
+        case "log-every":
+          logEvery = Integer.parseInt(value);
+          break;
+        case "trajectory":
+          trajectory = Boolean.parseBoolean(value);
+          break;
+        case "workers":
+          workers = Integer.parseInt(value);
+          break;
+        case "out":
+          out = value;
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option --" + name);
+      }
+    }
+    // Проверяется до запуска пула, чтобы ни один член ансамбля не начал писать файлы
+    for (int[] size : sizes) {
+      if (size[0] < 1 || size[1] < 1) {
+        throw new IllegalArgumentException(
+            "Expected a positive --size, got " + size[0] + "x" + size[1]);
+      }
+    }
+    if (workers < 1) {
+      throw new IllegalArgumentException("Expected --workers > 0, got " + workers);
+    }
+  }
+
+  private static float[] floats(String value) {
+    String[] items = value.split(",");
+    float[] result = new float[items.length];
+    for (int i = 0; i < items.length; i++) {
+      result[i] = Float.parseFloat(items[i].trim());
+    }
+    return result;
+  }
+
+  /** Все сочетания параметров */
+  private List<Member> sweep() {
+    List<Member> members = new ArrayList<>();
+    for (int[] size : sizes) {
+      for (float k : stiffnesses) {
+        for (float mass : masses) {
+          for (float velocity : velocities) {
+            for (Excitation excitation : excitations) {
+              members.add(
+                  new Member(members.size(), size[0], size[1], k, mass, velocity, excitation));
+            }
+          }
+        }
+      }
+    }
+    return members;
+  }
+
+  private void run() throws IOException {
+    List<Member> members = sweep();
+    List<Member> order = new ArrayList<>(members);
+    order.sort(Comparator.comparingLong(Member::cost).reversed());
+
+    AtomicInteger threadNumber = new AtomicInteger();
+    ExecutorService pool =
+        Executors.newFixedThreadPool(
+            workers, task -> new Thread(task, "ensemble-" + threadNumber.incrementAndGet()));
+    long started = System.nanoTime();
+    try {
+      List<Future<?>> results = new ArrayList<>();
+      for (Member member : order) {
+        results.add(
+            pool.submit(
+                () -> {
+                  runMember(member);
+                  return null;
+                }));
+      }
+      for (Future<?> result : results) {
+        result.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for the ensemble", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IllegalStateException("Ensemble member failed", e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+    double seconds = (System.nanoTime() - started) / 1e9;
+
+    writeSummary(members);
+    long totalSteps = (long) steps * members.size();
+    System.out.printf(
+        "%d members, %d steps in %.2f s on %d workers, %.1f steps/s%n",
+        members.size(), totalSteps, seconds, workers, totalSteps / seconds);
+  }
+
+  /** Считает одного члена ансамбля в потоке пула */
+  private void runMember(Member member) throws IOException {
+    Lattice lattice =
+        Lattice.create(member.weightsNumberX, member.weightsNumberY, member.mass, member.k);
+    LatticeState state = lattice.getState();
+    Physics physics = new Physics();
+    physics.setIntegrator(integrator.create());
+    physics.setSubSteps(subSteps);
+    physics.setForceModel(forceModel);
+
+    String prefix = out + "_" + member.id;
+    PhysicsLogger logger =
+        trajectory
+            ? PhysicsLogger.binary(prefix, state, fixedTimeStep, logEvery)
+            : PhysicsLogger.energies(prefix, state, logEvery);
+    EnergySummaryObserver summary =
+        new EnergySummaryObserver(WeightMask.border(member.weightsNumberX, member.weightsNumberY));
+    logger.add(summary, logEvery);
+
+    long started = System.nanoTime();
+    try {
+      member.excitation.apply(physics, state, member.velocity);
+      float time = 0f;
+      for (int step = 1; step <= steps; step++) {
+        physics.applyPhysics(state, fixedTimeStep);
+        time += fixedTimeStep;
+        logger.observe(state, step, time);
+      }
+    } finally {
+      logger.close();
+    }
+    member.seconds = (System.nanoTime() - started) / 1e9;
+    member.summary = summary;
+  }
+
+  private void writeSummary(List<Member> members) throws IOException {
+    String header =
+        "id,nx,ny,k,mass,velocity,excitation,initial_energy,final_energy,max_drift,"
+            + "peak_border_energy,peak_border_time,arrival_time,seconds,steps_per_second\n";
+    try (Writer writer = new BufferedWriter(new FileWriter(out + "_summary.csv"))) {
+      writer.write(header);
+      for (Member m : members) {
+        EnergySummaryObserver s = m.summary;
+        writer.write(
+            String.format(
+                Locale.ROOT,
+                "%d,%d,%d,%s,%s,%s,%s,%s,%s,%s,%s,%s,%s,%.3f,%.1f\n",
+                m.id,
+                m.weightsNumberX,
+                m.weightsNumberY,
+                m.k,
+                m.mass,
+                m.velocity,
+                m.excitation.name().toLowerCase(Locale.ROOT),
+                s.getInitialEnergy(),
+                s.getFinalEnergy(),
+                s.getMaxDrift(),
+                s.getPeakBorderEnergy(),
+                s.getPeakBorderTime(),
+                s.getArrivalTime(),
+                m.seconds,
+                steps / m.seconds));
+      }
+    }
+
+    System.out.printf(
+        Locale.ROOT,
+        "%4s %9s %8s %6s %8s %-7s %12s %10s %12s %9s %9s %8s%n",
+        "id",
+        "size",
+        "k",
+        "mass",
+        "velocity",
+        "wave",
+        "energy",
+        "drift",
+        "peak border",
+        "at",
+        "arrival",
+        "steps/s");
+    for (Member m : members) {
+      EnergySummaryObserver s = m.summary;
+      System.out.printf(
+          Locale.ROOT,
+          "%4d %9s %8.2f %6.2f %8.1f %-7s %12.4g %10.2e %12.4g %9.2f %9.2f %8.1f%n",
+          m.id,
+          m.weightsNumberX + "x" + m.weightsNumberY,
+          m.k,
+          m.mass,
+          m.velocity,
+          m.excitation.name().toLowerCase(Locale.ROOT),
+          s.getInitialEnergy(),
+          s.getMaxDrift(),
+          s.getPeakBorderEnergy(),
+          s.getPeakBorderTime(),
+          s.getArrivalTime(),
+          steps / m.seconds);
+    }
+  }
+}
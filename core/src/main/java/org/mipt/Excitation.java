@@ -0,0 +1,58 @@
+package org.mipt;
+
+import org.mipt.entity.LatticeState;
+
+/** Способы запустить волну в решетке */
+public enum Excitation {
+  /**
+   * Радиальная волна: грузы 5x5 в центре разлетаются от центрального груза. На сетке меньше 5
+   * грузов по стороне толкаются только грузы внутри сетки.
+   */
+  RADIAL {
+    @Override
+    public void apply(Physics physics, LatticeState lattice, float velocity) {
+      int nx = lattice.getWeightsNumberX();
+      int ny = lattice.getWeightsNumberY();
+      int i0 = nx / 2;
+      int j0 = ny / 2;
+
+      for (int dj = -2; dj <= 2; dj++) {
+        for (int di = -2; di <= 2; di++) {
+          int i = i0 + di;
+          int j = j0 + dj;
+          if (i < 0 || i >= nx || j < 0 || j >= ny) {
+            continue;
+          }
+          int idx = j * nx + i;
+          physics.pushWeight(lattice, idx, di * velocity, dj * velocity);
+        }
+      }
+    }
+  },
+
+  /** Плоская волна: центральный столбец грузов толкается вправо */
+  COLUMN {
+    @Override
+    public void apply(Physics physics, LatticeState lattice, float velocity) {
+      int nx = lattice.getWeightsNumberX();
+      int i = nx / 2;
+
+      for (int j = 0; j < lattice.getWeightsNumberY(); j++) {
+        int idx = j * nx + i;
+        physics.pushWeight(lattice, idx, velocity, 0f);
+      }
+    }
+  };
+
+  /** Скорость, которую придают грузам клавиши в окне */
+  public static final float DEFAULT_VELOCITY = 400f;
+
+  /**
+   * Придает грузам начальные скорости
+   *
+   * @param physics физика, через которую толкаются грузы
+   * @param lattice состояние решетки
+   * @param velocity модуль добавляемой скорости
+   */
+  public abstract void apply(Physics physics, LatticeState lattice, float velocity);
+}
@@ -0,0 +1,392 @@
+package org.mipt;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
+import org.mipt.entity.LatticeState;
+import org.mipt.integrator.AdaptiveIntegrator;
+import org.mipt.integrator.DormandPrince45;
+import org.mipt.integrator.Integrator;
+import org.mipt.integrator.IntegratorType;
+import org.mipt.io.Checkpoint;
+import org.mipt.observer.CheckpointObserver;
+import org.mipt.observer.ObserverPipeline;
+import org.mipt.observer.PhysicsObserver;
+import org.mipt.observer.WeightMask;
+import org.mipt.profiling.Phase;
+import org.mipt.profiling.PhaseTimer;
+
+/**
+ * Запуск модели без окна и GL-контекста. Строит решетку, в заданный шаг возбуждает волну и шагает
+ * физику так быстро, как позволяет процессор, записывая те же датасеты, что и окно.
+ *
+ * <p>Параметры передаются в виде {@code --имя=значение}:
+ *
+ * <ul>
+ *   <li>{@code --nx}, {@code --ny} - размер решетки (30x30)
+ *   <li>{@code --steps} - число фиксированных шагов (1000)
+ *   <li>{@code --dt} - фиксированный шаг по времени (0.01)
+ *   <li>{@code --excitation} - {@code radial}, {@code column} или {@code none} (radial, а при
+ *       {@code --restore} - none)
+ *   <li>{@code --excite-at} - номер шага от начала запуска, перед которым возбуждается волна (0)
+ *   <li>{@code --velocity} - скорость возбуждения (400)
+ *   <li>{@code --threads} - число потоков для подсчета сил, 1 - без пула (1)
+ *   <li>{@code --integrator} - {@code rk4}, {@code verlet}, {@code leapfrog} или {@code dopri45}
+ *       (rk4)
+ *   <li>{@code --tolerance} - допустимая локальная ошибка для {@code dopri45} (1e-4)
+ *   <li>{@code --substeps} - число подшагов на фиксированный шаг (12)
+ *   <li>{@code --forces} - {@code nonlinear} или {@code linear}: линеаризованные силы для малых
+ *       колебаний (nonlinear)
+ *   <li>{@code --tile-rows} - считать решетку плитками по N строк сетки, 0 - целиком (0)
+ *   <li>{@code --tile-substeps} - число подшагов, которые плитка проходит подряд (1)
+ *   <li>{@code --out} - префикс файлов датасета (dataset)
+ *   <li>{@code --format} - {@code csv} или {@code binary}: положения в бинарную траекторию (csv)
+ *   <li>{@code --async} - {@code off} или политика асинхронной записи при переполнении очереди:
+ *       {@code block}, {@code drop}, {@code downsample} (off)
+ *   <li>{@code --queue} - число кадров в очереди асинхронной записи (256)
+ *   <li>{@code --log-every} - записывать каждый N-й шаг (1)
+ *   <li>{@code --log-rows} - строки сетки {@code from:to} (не включая to), положения которых
+ *       пишутся в csv (все)
+ *   <li>{@code --profile} - {@code true}: в конце напечатать p50/p99 длительности фаз по последним
+ *       {@value PhaseTimer#DEFAULT_WINDOW} замерам (false)
+ *   <li>{@code --checkpoint-every} - каждые N шагов и в конце писать контрольную точку в {@code
+ *       <out>_checkpoint.ewcp}, не останавливая шаги; 0 - не писать (0)
+ *   <li>{@code --restore} - начать с контрольной точки: размер решетки, шаг и время берутся из нее
+ *   <li>{@code --replay} - повторить журнал сеанса {@link InputJournal}: размер решетки, шаг по
+ *       времени, метод, подшаги, толчки и число шагов берутся из журнала
+ *   <li>{@code --modal-time} - без шагов перевести линеаризованную решетку в заданный момент
+ *       модельного времени через {@link NormalModes} и записать {@code <out>_checkpoint.ewcp};
+ *       только для решеток до {@value NormalModes#MAX_WEIGHTS} грузов
+ *   <li>{@code --modes} - файл нормальных форм для {@code --modal-time} ({@code
+ *       modes_<nx>x<ny>.ewnm})
+ * </ul>
+ */
+public class HeadlessRunner {
+  private int weightsNumberX = 30;
+  private int weightsNumberY = 30;
+  private int steps = 1000;
+  private float fixedTimeStep = 0.01f;
+  private Excitation excitation = Excitation.RADIAL;
+  private boolean excitationSet = false;
+  private int exciteAt = 0;
+  private float velocity = Excitation.DEFAULT_VELOCITY;
+  private int threads = 1;
+  private IntegratorType integrator = IntegratorType.RK4;
+  private int subSteps = 12;
+  private Physics.ForceModel forceModel = Physics.ForceModel.NONLINEAR;
+  private int tileRows = 0;
+  private int tileSubSteps = 1;
+  private float tolerance = DormandPrince45.DEFAULT_TOLERANCE;
+  private String out = "dataset";
+  private boolean binary = false;
+  private AsyncPhysicsLogger.OverflowPolicy async = null;
+  private int queueFrames = 256;
+  private int logEvery = 1;
+  private int logRowFrom = 0;
+  private int logRowTo = -1;
+  private boolean profile = false;
+  private int checkpointEvery = 0;
+  private Path restore = null;
+  private Path replay = null;
+  private double modalTime = -1.0;
+  private Path modes = null;
+
+  public static void main(String[] args) throws IOException {
+    HeadlessRunner runner = new HeadlessRunner();
+    runner.parse(args);
+    runner.run();
+  }
+
+  private void parse(String[] args) {
+    for (String arg : args) {
+      int eq = arg.indexOf('=');
+      if (!arg.startsWith("--") || eq < 0) {
+        throw new IllegalArgumentException("Expected --name=value, got " + arg);
+      }
+      String name = arg.substring(2, eq);
+      String value = arg.substring(eq + 1);
+      switch (name) {
+        case "nx":
+          weightsNumberX = Integer.parseInt(value);
+          break;
+        case "ny":
+          weightsNumberY = Integer.parseInt(value);
+          break;
+        case "steps":
+          steps = Integer.parseInt(value);
+          break;
+        case "dt":
+          fixedTimeStep = Float.parseFloat(value);
+          break;
+        case "excitation":
+          excitation = "none".equals(value) ? null : Excitation.valueOf(value.toUpperCase());
+          excitationSet = true;
+          break;
+        case "excite-at":
+          exciteAt = Integer.parseInt(value);
+          break;
+        case "velocity":
+          velocity = Float.parseFloat(value);
+          break;
+        case "threads":
+          threads = Integer.parseInt(value);
+          break;
+        case "integrator":
+          integrator = IntegratorType.valueOf(value.toUpperCase());
+          break;
+        case "tolerance":
+          tolerance = Float.parseFloat(value);
+          break;
+        case "substeps":
+          subSteps = Integer.parseInt(value);
+          break;
+        case "forces":
+          forceModel = Physics.ForceModel.valueOf(value.toUpperCase());
+          break;
+        case "tile-rows":
+          tileRows = Integer.parseInt(value);
+          break;
+        case "tile-substeps":
+          tileSubSteps = Integer.parseInt(value);
+          break;
+        case "out":
+          out = value;
+          break;
+        case "format":
+          if (!"csv".equals(value) && !"binary".equals(value)) {
+            throw new IllegalArgumentException("Unknown format " + value);
+          }
+          binary = "binary".equals(value);
+          break;
+        case "async":
+          async =
+              "off".equals(value)
+                  ? null
+                  : AsyncPhysicsLogger.OverflowPolicy.valueOf(value.toUpperCase());
+          break;
+        case "queue":
+          queueFrames = Integer.parseInt(value);
+          break;
+        case "log-every":
+          logEvery = Integer.parseInt(value);
+          break;
+        case "log-rows":
+          int colon = value.indexOf(':');
+          if (colon < 0) {
+            throw new IllegalArgumentException("Expected --log-rows=from:to, got " + value);
+          }
+          logRowFrom = Integer.parseInt(value.substring(0, colon));
+          logRowTo = Integer.parseInt(value.substring(colon + 1));
+          break;
+        case "profile":
+          profile = Boolean.parseBoolean(value);
+          break;
+        case "checkpoint-every":
+          checkpointEvery = Integer.parseInt(value);
+          break;
+        case "restore":
+          restore = Paths.get(value);
+          break;
+        case "replay":
+          replay = Paths.get(value);
+          break;
+        case "modal-time":
+          modalTime = Double.parseDouble(value);
+          break;
+        case "modes":
+          modes = Paths.get(value);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option --" + name);
+      }
+    }
+  }
+
+  private void run() throws IOException {
+    JournalReplay journal = null;
+    if (replay != null) {
+      if (restore != null) {
+        throw new IllegalArgumentException("--replay and --restore cannot be combined");
+      }
+      journal = JournalReplay.open(replay);
+      weightsNumberX = journal.getWeightsNumberX();
+      weightsNumberY = journal.getWeightsNumberY();
+      fixedTimeStep = journal.getFixedTimeStep();
+      excitation = null;
+    }
+    Checkpoint checkpoint = null;
+    if (restore != null) {
+      checkpoint = Checkpoint.read(restore);
+      weightsNumberX = checkpoint.getWeightsNumberX();
+      weightsNumberY = checkpoint.getWeightsNumberY();
+      if (!excitationSet) {
+        // Точку обычно снимают уже после возбуждения
+        excitation = null;
+      }
+    }
+    Lattice lattice = Lattice.create(weightsNumberX, weightsNumberY);
+    long firstStep = 0;
+    float simTime = 0f;
+    if (checkpoint != null) {
+      checkpoint.restore(lattice.getState());
+      firstStep = checkpoint.getStep();
+      simTime = checkpoint.getTime();
+    }
+    if (modalTime >= 0.0) {
+      jumpThroughModes(lattice.getState(), simTime);
+      return;
+    }
+    ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+    Physics physics = new Physics(pool);
+    Integrator method = integrator.create();
+    if (method instanceof DormandPrince45) {
+      ((DormandPrince45) method).setTolerance(tolerance);
+    }
+    physics.setIntegrator(method);
+    physics.setSubSteps(subSteps);
+    physics.setForceModel(forceModel);
+    physics.setTiling(tileRows, tileSubSteps);
+    if (journal != null) {
+      journal.configure(physics);
+    }
+    PhaseTimer timer = new PhaseTimer();
+    timer.setEnabled(profile);
+    physics.setTimer(timer);
+    WeightMask positions =
+        WeightMask.rows(
+            weightsNumberX,
+            weightsNumberY,
+            logRowFrom,
+            logRowTo < 0 ? weightsNumberY : logRowTo);
+    PhysicsLogger logger =
+        binary
+            ? PhysicsLogger.binary(out, lattice.getState(), fixedTimeStep, logEvery)
+            : new PhysicsLogger(out, lattice.getState(), positions, logEvery);
+    AsyncPhysicsLogger asyncLogger =
+        async == null
+            ? null
+            : new AsyncPhysicsLogger(logger, lattice.getState(), queueFrames, async);
+    PhysicsObserver observer = asyncLogger != null ? asyncLogger : logger;
+    Path checkpointFile = Paths.get(out + "_checkpoint.ewcp");
+    AsyncPhysicsLogger autosave = null;
+    if (checkpointEvery > 0) {
+      autosave =
+          new AsyncPhysicsLogger(
+              new CheckpointObserver(checkpointFile),
+              lattice.getState(),
+              1,
+              AsyncPhysicsLogger.OverflowPolicy.DROP);
+      observer = new ObserverPipeline().add(observer).add(autosave, checkpointEvery);
+    }
+
+    long started = System.nanoTime();
+    int done = 0;
+    long lastStep = firstStep;
+    try {
+      while (journal != null ? journal.applyDue(physics, lattice.getState()) : done < steps) {
+        if (excitation != null && done == exciteAt) {
+          excitation.apply(physics, lattice.getState(), velocity);
+        }
+        long start = timer.start();
+        physics.applyPhysics(lattice.getState(), fixedTimeStep);
+        timer.stop(Phase.STEP, start);
+        done++;
+        if (journal != null) {
+          // Журнал сам ведет номер шага и время, они меняются при загрузке точек
+          journal.stepped();
+          lastStep = journal.getStep();
+          simTime = journal.getTime();
+        } else {
+          lastStep++;
+          simTime += fixedTimeStep;
+        }
+        start = timer.start();
+        observer.observe(lattice.getState(), lastStep, simTime);
+        timer.stop(Phase.LOGGING, start);
+      }
+    } finally {
+      observer.close();
+      if (pool != null) {
+        pool.shutdown();
+      }
+    }
+
+    if (autosave != null) {
+      // Пишется после закрытия, когда периодическая запись уже закончилась
+      Checkpoint.write(checkpointFile, lattice.getState(), lastStep, simTime);
+      System.out.printf(
+          "%d periodic checkpoints written, %d skipped, last at step %d in %s%n",
+          autosave.getWrittenFrames(),
+          autosave.getDroppedFrames(),
+          lastStep,
+          checkpointFile);
+    }
+    if (asyncLogger != null) {
+      System.out.printf(
+          "logged %d of %d frames, %d dropped%n",
+          asyncLogger.getWrittenFrames(),
+          asyncLogger.getSubmittedFrames(),
+          asyncLogger.getDroppedFrames());
+    }
+    if (physics.getIntegrator() instanceof AdaptiveIntegrator) {
+      AdaptiveIntegrator adaptive = (AdaptiveIntegrator) physics.getIntegrator();
+      System.out.printf(
+          "%d steps accepted, %d rejected%n",
+          adaptive.getAcceptedSteps(), adaptive.getRejectedSteps());
+    }
+    if (physics.getForceModel() == Physics.ForceModel.LINEAR) {
+      System.out.printf(
+          "linear forces: spring ends moved by %.4f of spring length at the end (limit %.4f)%n",
+          physics.getLinearStrain(), Physics.LINEAR_STRAIN_LIMIT);
+    }
+    double seconds = (System.nanoTime() - started) / 1e9;
+    System.out.printf(
+        "%d steps (%.2f s of sim time) in %.2f s, %.1f steps/s%n",
+        done, simTime, seconds, done / seconds);
+    if (profile) {
+      System.out.print(timer.summary(new StringBuilder()));
+    }
+  }
+
+  /**
+   * Переводит решетку из начального состояния в момент {@code --modal-time} одной проекцией на
+   * нормальные формы и пишет контрольную точку, с которой можно продолжить шаги
+   */
+  private void jumpThroughModes(LatticeState state, float startTime) throws IOException {
+    if (replay != null) {
+      throw new IllegalArgumentException("--replay and --modal-time cannot be combined");
+    }
+    if (modalTime < startTime) {
+      throw new IllegalArgumentException(
+          "--modal-time " + modalTime + " is before the start time " + startTime);
+    }
+    if (excitation != null && exciteAt != 0) {
+      throw new IllegalArgumentException("--modal-time excites the lattice only at the start");
+    }
+    Path file = modes;
+    if (file == null) {
+      file = Paths.get("modes_" + weightsNumberX + "x" + weightsNumberY + ".ewnm");
+    }
+
+    long started = System.nanoTime();
+    NormalModes normalModes = NormalModes.cached(file, state);
+    double prepared = (System.nanoTime() - started) / 1e9;
+
+    started = System.nanoTime();
+    if (excitation != null) {
+      // Толчки меняют только скорости, проекция переносит их на формы
+      excitation.apply(new Physics(), state, velocity);
+    }
+    NormalModes.Motion motion = normalModes.project(state);
+    motion.at(modalTime - startTime, state);
+    long step = Math.round(modalTime / fixedTimeStep);
+    Path checkpointFile = Paths.get(out + "_checkpoint.ewcp");
+    Checkpoint.write(checkpointFile, state, step, (float) modalTime);
+    double jumped = (System.nanoTime() - started) / 1e9;
+
+    System.out.printf(
+        "%d normal modes ready in %.2f s (%s), jumped to t = %.2f (step %d) in %.3f s, wrote %s%n",
+        normalModes.size(), prepared, file, modalTime, step, jumped, checkpointFile);
+  }
+}
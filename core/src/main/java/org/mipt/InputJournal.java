@@ -0,0 +1,204 @@
+package org.mipt;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.mipt.entity.LatticeState;
+import org.mipt.integrator.DormandPrince45;
+import org.mipt.integrator.Integrator;
+import org.mipt.integrator.IntegratorType;
+
+/**
+ * Журнал всего, что меняет решетку и физику между фиксированными шагами: толчков грузов, смены
+ * метода, числа подшагов и модели сил, загрузки контрольных точек. Каждая запись привязана к числу
+ * сделанных шагов, поэтому {@link JournalReplay} повторяет сеанс из окна без окна и с той
+ * скоростью, какую позволяет процессор, с тем же результатом.
+ *
+ * <p>Заголовок ({@value #HEADER_SIZE} байт, little-endian):
+ *
+ * <pre>
+ *   int   magic       'EWJN'
+ *   int   version
+ *   int   weightsNumberX
+ *   int   weightsNumberY
+ *   float dt
+ *   int   integrator  номер {@link IntegratorType}
+ *   float tolerance   допустимая ошибка адаптивного метода, иначе 0
+ *   int   subSteps
+ * </pre>
+ *
+ * Затем записи: {@code int kind, long step} и данные по {@link Kind}. Записи идут в порядке
+ * применения; после загрузки точки номера шагов могут повториться.
+ *
+ * <p>Записи копятся в памяти и сбрасываются в файл вызовом {@link #flush()} между шагами.
+ */
+public class InputJournal implements Closeable {
+  /** Вид записи журнала */
+  public enum Kind {
+    /** {@code int index, float velocityX, float velocityY} - толчок {@link Physics#pushWeight} */
+    PUSH,
+    /** {@code int integrator, float tolerance} - новый метод */
+    INTEGRATOR,
+    /** {@code int subSteps} - новое число подшагов */
+    SUB_STEPS,
+    /**
+     * {@code long step, float time, float[4] walls, int length, float[length] state} - загрузка
+     * контрольной точки
+     */
+    STATE,
+    /** Конец журнала, {@code step} - последний сделанный шаг */
+    END,
+    /** {@code int model} - новая модель сил, номер {@link Physics.ForceModel} */
+    FORCE_MODEL
+  }
+
+  static final int MAGIC = 0x45574a4e;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 32;
+  static final int ENTRY_HEADER_SIZE = 12;
+  static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+  private static final int INITIAL_CAPACITY = 4096;
+
+  private final FileChannel channel;
+  private ByteBuffer pending;
+  private long step;
+
+  /**
+   * Создает файл журнала и пишет начальные параметры
+   *
+   * @param file путь к файлу, существующий файл перезаписывается
+   * @param lattice решетка в начальном состоянии {@link Lattice#create}
+   * @param fixedTimeStep фиксированный шаг по времени
+   * @param physics физика с начальным методом и числом подшагов
+   * @throws IOException при ошибке создания файла
+   */
+  public InputJournal(Path file, LatticeState lattice, float fixedTimeStep, Physics physics)
+      throws IOException {
+    channel =
+        FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE);
+    pending = ByteBuffer.allocate(INITIAL_CAPACITY).order(ORDER);
+    Integrator integrator = physics.getIntegrator();
+    pending
+        .putInt(MAGIC)
+        .putInt(VERSION)
+        .putInt(lattice.getWeightsNumberX())
+        .putInt(lattice.getWeightsNumberY())
+        .putFloat(fixedTimeStep)
+        .putInt(IntegratorType.of(integrator).ordinal())
+        .putFloat(toleranceOf(integrator))
+        .putInt(physics.getSubSteps());
+    if (physics.getForceModel() != Physics.ForceModel.NONLINEAR) {
+      forceModel(physics.getForceModel());
+    }
+    flush();
+  }
+
+  /**
+   * Задает число сделанных шагов, к которому привязываются следующие записи
+   *
+   * @param step номер последнего сделанного шага
+   */
+  void at(long step) {
+    this.step = step;
+  }
+
+  void push(int index, float velocityX, float velocityY) {
+    entry(Kind.PUSH, 12).putInt(index).putFloat(velocityX).putFloat(velocityY);
+  }
+
+  void integrator(Integrator integrator) {
+    entry(Kind.INTEGRATOR, 8)
+        .putInt(IntegratorType.of(integrator).ordinal())
+        .putFloat(toleranceOf(integrator));
+  }
+
+  void subSteps(int subSteps) {
+    entry(Kind.SUB_STEPS, 4).putInt(subSteps);
+  }
+
+  void forceModel(Physics.ForceModel forceModel) {
+    entry(Kind.FORCE_MODEL, 4).putInt(forceModel.ordinal());
+  }
+
+  /**
+   * Записывает загрузку контрольной точки. Следующие записи привязываются к ее шагу.
+   *
+   * @param lattice решетка после загрузки
+   * @param step номер шага точки
+   * @param time модельное время точки
+   */
+  void state(LatticeState lattice, long step, float time) {
+    float[] state = lattice.getState();
+    ByteBuffer buffer =
+        entry(Kind.STATE, 32 + 4 * state.length)
+            .putLong(step)
+            .putFloat(time)
+            .putFloat(lattice.getLeftWallX())
+            .putFloat(lattice.getRightWallX())
+            .putFloat(lattice.getLowerWallY())
+            .putFloat(lattice.getUpperWallY())
+            .putInt(state.length);
+    buffer.asFloatBuffer().put(state);
+    buffer.position(buffer.position() + 4 * state.length);
+    this.step = step;
+  }
+
+  /**
+   * Дописывает накопленные записи в файл
+   *
+   * @throws IOException при ошибке записи
+   */
+  public void flush() throws IOException {
+    if (pending.position() == 0) {
+      return;
+    }
+    pending.flip();
+    while (pending.hasRemaining()) {
+      channel.write(pending);
+    }
+    pending.clear();
+  }
+
+  /**
+   * Пишет конец журнала с последним заданным шагом и закрывает файл
+   *
+   * @throws IOException при ошибке записи
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      entry(Kind.END, 0);
+      flush();
+    } finally {
+      channel.close();
+    }
+  }
+
+  private ByteBuffer entry(Kind kind, int bytes) {
+    int needed = ENTRY_HEADER_SIZE + bytes;
+    if (pending.remaining() < needed) {
+      ByteBuffer grown =
+          ByteBuffer.allocate(Math.max(2 * pending.capacity(), pending.position() + needed));
+      grown.order(ORDER);
+      pending.flip();
+      grown.put(pending);
+      pending = grown;
+    }
+    return pending.putInt(kind.ordinal()).putLong(step);
+  }
+
+  private static float toleranceOf(Integrator integrator) {
+    return integrator instanceof DormandPrince45
+        ? ((DormandPrince45) integrator).getTolerance()
+        : 0f;
+  }
+}
@@ -0,0 +1,226 @@
+package org.mipt;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.mipt.entity.LatticeState;
+import org.mipt.integrator.DormandPrince45;
+import org.mipt.integrator.Integrator;
+import org.mipt.integrator.IntegratorType;
+
+/**
+ * Повтор журнала {@link InputJournal}. Цикл шагов спрашивает у повтора, не пора ли применить
+ * записи, и сам делает шаги, так что сеанс из окна пересчитывается без окна с теми же датасетами:
+ *
+ * <pre>
+ *   replay.configure(physics);
+ *   while (replay.applyDue(physics, lattice)) {
+ *     physics.applyPhysics(lattice, replay.getFixedTimeStep());
+ *     replay.stepped();
+ *     observer.observe(lattice, replay.getStep(), replay.getTime());
+ *   }
+ * </pre>
+ *
+ * Журнал без записи конца, например после падения окна, повторяется до последней записи.
+ */
+public class JournalReplay {
+  private static final InputJournal.Kind[] KINDS = InputJournal.Kind.values();
+
+  private final int weightsNumberX;
+  private final int weightsNumberY;
+  private final float fixedTimeStep;
+  private final IntegratorType integrator;
+  private final float tolerance;
+  private final int subSteps;
+
+  /** Записи после заголовка */
+  private final ByteBuffer entries;
+
+  private long step;
+  private float time;
+
+  private JournalReplay(ByteBuffer buffer) throws IOException {
+    if (buffer.remaining() < InputJournal.HEADER_SIZE) {
+      throw new IOException("Journal header is truncated");
+    }
+    if (buffer.getInt() != InputJournal.MAGIC) {
+      throw new IOException("Not a journal file");
+    }
+    int version = buffer.getInt();
+    if (version != InputJournal.VERSION) {
+      throw new IOException("Unsupported journal version " + version);
+    }
+    weightsNumberX = buffer.getInt();
+    weightsNumberY = buffer.getInt();
+    fixedTimeStep = buffer.getFloat();
+    integrator = integratorType(buffer.getInt());
+    tolerance = buffer.getFloat();
+    subSteps = buffer.getInt();
+    entries = buffer.slice().order(InputJournal.ORDER);
+  }
+
+  /**
+   * Читает журнал целиком
+   *
+   * @param file путь к файлу
+   * @return повтор, стоящий перед первым шагом
+   * @throws IOException если файл не удалось прочитать или он другого формата
+   */
+  public static JournalReplay open(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Journal is too large: " + channel.size() + " bytes");
+      }
+      ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+      buffer.order(InputJournal.ORDER);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          throw new IOException("Journal is truncated");
+        }
+      }
+      buffer.flip();
+      return new JournalReplay(buffer);
+    }
+  }
+
+  /**
+   * Задает физике начальные метод, число подшагов и модель сил сеанса
+   *
+   * @param physics физика повтора без журнала
+   */
+  public void configure(Physics physics) {
+    physics.setIntegrator(createIntegrator(integrator, tolerance));
+    physics.setSubSteps(subSteps);
+    physics.setForceModel(Physics.ForceModel.NONLINEAR);
+  }
+
+  /**
+   * Применяет записи, привязанные к текущему шагу
+   *
+   * @param physics физика, через которую толкаются грузы
+   * @param lattice решетка, построенная {@link Lattice#create} с размерами из журнала
+   * @return {@code true}, если нужно сделать следующий шаг, {@code false} - сеанс закончен
+   * @throws IOException если запись обрезана или повреждена
+   */
+  public boolean applyDue(Physics physics, LatticeState lattice) throws IOException {
+    try {
+      while (entries.remaining() >= InputJournal.ENTRY_HEADER_SIZE
+          && entries.getLong(entries.position() + 4) == step) {
+        InputJournal.Kind kind = kind(entries.getInt());
+        entries.getLong();
+        switch (kind) {
+          case PUSH:
+            int index = entries.getInt();
+            float velocityX = entries.getFloat();
+            float velocityY = entries.getFloat();
+            physics.pushWeight(lattice, index, velocityX, velocityY);
+            break;
+          case INTEGRATOR:
+            IntegratorType type = integratorType(entries.getInt());
+            physics.setIntegrator(createIntegrator(type, entries.getFloat()));
+            break;
+          case SUB_STEPS:
+            physics.setSubSteps(entries.getInt());
+            break;
+          case STATE:
+            readState(lattice);
+            break;
+          case FORCE_MODEL:
+            physics.setForceModel(forceModel(entries.getInt()));
+            break;
+          case END:
+            return false;
+        }
+      }
+    } catch (BufferUnderflowException e) {
+      throw new IOException("Journal entry is truncated", e);
+    }
+    return entries.remaining() >= InputJournal.ENTRY_HEADER_SIZE;
+  }
+
+  /** Отмечает сделанный шаг */
+  public void stepped() {
+    step++;
+    time += fixedTimeStep;
+  }
+
+  /** Номер последнего сделанного шага */
+  public long getStep() {
+    return step;
+  }
+
+  /** Модельное время после последнего шага */
+  public float getTime() {
+    return time;
+  }
+
+  public int getWeightsNumberX() {
+    return weightsNumberX;
+  }
+
+  public int getWeightsNumberY() {
+    return weightsNumberY;
+  }
+
+  public float getFixedTimeStep() {
+    return fixedTimeStep;
+  }
+
+  private void readState(LatticeState lattice) throws IOException {
+    long newStep = entries.getLong();
+    float newTime = entries.getFloat();
+    float leftWallX = entries.getFloat();
+    float rightWallX = entries.getFloat();
+    float lowerWallY = entries.getFloat();
+    float upperWallY = entries.getFloat();
+    int length = entries.getInt();
+    float[] state = lattice.getState();
+    if (length != state.length) {
+      throw new IOException("Journal state has " + length + " values, expected " + state.length);
+    }
+    if (lattice.getLeftWallX() != leftWallX
+        || lattice.getRightWallX() != rightWallX
+        || lattice.getLowerWallY() != lowerWallY
+        || lattice.getUpperWallY() != upperWallY) {
+      lattice.setWalls(leftWallX, rightWallX, lowerWallY, upperWallY);
+    }
+    entries.asFloatBuffer().get(state);
+    entries.position(entries.position() + 4 * length);
+    step = newStep;
+    time = newTime;
+  }
+
+  private static InputJournal.Kind kind(int ordinal) throws IOException {
+    if (ordinal < 0 || ordinal >= KINDS.length) {
+      throw new IOException("Unknown journal entry " + ordinal);
+    }
+    return KINDS[ordinal];
+  }
+
+  private static IntegratorType integratorType(int ordinal) throws IOException {
+    IntegratorType[] types = IntegratorType.values();
+    if (ordinal < 0 || ordinal >= types.length) {
+      throw new IOException("Unknown integrator " + ordinal);
+    }
+    return types[ordinal];
+  }
+
+  private static Physics.ForceModel forceModel(int ordinal) throws IOException {
+    Physics.ForceModel[] models = Physics.ForceModel.values();
+    if (ordinal < 0 || ordinal >= models.length) {
+      throw new IOException("Unknown force model " + ordinal);
+    }
+    return models[ordinal];
+  }
+
+  private static Integrator createIntegrator(IntegratorType type, float tolerance) {
+    Integrator integrator = type.create();
+    if (integrator instanceof DormandPrince45) {
+      ((DormandPrince45) integrator).setTolerance(tolerance);
+    }
+    return integrator;
+  }
+}
@@ -0,0 +1,185 @@
+package org.mipt;
+
+import com.badlogic.gdx.math.Vector2;
+import java.util.ArrayList;
+import java.util.List;
+import org.mipt.entity.LatticeState;
+import org.mipt.entity.Spring;
+import org.mipt.entity.Weight;
+
+/**
+ * Решетка грузов и пружин между четырьмя стенами. Грузы и пружины нужны для отрисовки, физика
+ * шагает {@link LatticeState}.
+ */
+public class Lattice {
+  private static final float LEFT_WALL_X = 200;
+  private static final float LOWER_Y = 275;
+  private static final float SPRING_LENGTH = 200;
+  private static final float WEIGHT_WIDTH = 50;
+  private static final float WEIGHT_HEIGHT = 50;
+  private static final int SPRING_COILS = 20;
+  private static final float SPRING_WIDTH = 8.0f;
+
+  /** Отношение жесткости диагональных пружин к жесткости остальных */
+  private static final float DIAGONAL_K_RATIO = 0.7f;
+
+  public static final float DEFAULT_MASS = 1f;
+  public static final float DEFAULT_K = 60;
+
+  private final List<Weight> weights = new ArrayList<>();
+  private final List<Spring> springs = new ArrayList<>();
+  private final LatticeState state;
+
+  private Lattice(int weightsNumberX, int weightsNumberY, float mass, float k) {
+    float length = SPRING_LENGTH;
+    float width = WEIGHT_WIDTH;
+    float weightHeight = WEIGHT_HEIGHT;
+    float leftWallX = LEFT_WALL_X;
+    float lowerY = LOWER_Y;
+    float lowerWallY = lowerY - length;
+    for (int j = 0; j < weightsNumberY; j++) {
+      float leftX = leftWallX;
+      for (int i = 0; i < weightsNumberX; i++) {
+        Spring horizontalSpring;
+        horizontalSpring =
+            new Spring(
+                k,
+                new Vector2(leftX, lowerY + weightHeight / 2),
+                new Vector2(leftX + length, lowerY + weightHeight / 2),
+                SPRING_COILS,
+                SPRING_WIDTH);
+        springs.add(horizontalSpring);
+        if (i != 0) {
+          weights.get(weights.size() - 1).setRightSpring(horizontalSpring);
+        }
+        Spring verticalSpring = new Spring(k, SPRING_COILS, SPRING_WIDTH, length);
+        verticalSpring.setUpperAnchor(new Vector2(leftX + width / 2 + length, lowerY));
+        verticalSpring.setLowerAnchor(new Vector2(leftX + width / 2 + length, lowerY - length));
+        springs.add(verticalSpring);
+        if (j != 0) {
+          weights.get(weights.size() - weightsNumberX).setUpperSpring(verticalSpring);
+        }
+        Weight weight = new Weight(mass, leftX + length, lowerY, width, weightHeight);
+        weight.setLeftSpring(horizontalSpring);
+        weight.setLowerSpring(verticalSpring);
+        weights.add(weight);
+        leftX = leftX + length + width;
+      }
+      Spring lastSpring =
+          new Spring(
+              k,
+              new Vector2(leftX, lowerY + weightHeight / 2),
+              new Vector2(leftX + length, lowerY + weightHeight / 2),
+              SPRING_COILS,
+              SPRING_WIDTH);
+      weights.get(weights.size() - 1).setRightSpring(lastSpring);
+      springs.add(lastSpring);
+      lowerY = lowerY + weightHeight + length;
+    }
+    float rightWallX = springs.get(springs.size() - 1).getRightX();
+    float upperWallY = weights.get(weights.size() - 1).getY() + weightHeight + length;
+    for (int i = 0; i < weightsNumberX; i++) {
+      Spring verticalSpring = new Spring(k, SPRING_COILS, SPRING_WIDTH, length);
+      Weight weight = weights.get(weights.size() - weightsNumberX + i);
+      verticalSpring.setUpperAnchor(
+          new Vector2(weight.getX() + width / 2, weight.getY() + weightHeight + length));
+      verticalSpring.setLowerAnchor(
+          new Vector2(weight.getX() + width / 2, weight.getY() + weightHeight));
+      weight.setUpperSpring(verticalSpring);
+      springs.add(verticalSpring);
+    }
+
+    float diagK = k * DIAGONAL_K_RATIO;
+
+    for (int j = 0; j < weightsNumberY; j++) {
+      for (int i = 0; i < weightsNumberX; i++) {
+        int idx = j * weightsNumberX + i;
+        Weight w = weights.get(idx);
+        Vector2 c = new Vector2(w.getX() + width / 2f, w.getY() + weightHeight / 2f);
+
+        if (i < weightsNumberX - 1 && j < weightsNumberY - 1) {
+          int idxUR = (j + 1) * weightsNumberX + (i + 1);
+          Weight wUR = weights.get(idxUR);
+          Vector2 cUR = new Vector2(wUR.getX() + width / 2f, wUR.getY() + weightHeight / 2f);
+
+          float diagRest = c.dst(cUR);
+
+          Spring diagUR = new Spring(diagK, SPRING_COILS, SPRING_WIDTH, diagRest);
+          diagUR.setAnchors(c.cpy(), cUR.cpy());
+          springs.add(diagUR);
+
+          w.setUpperRightSpring(diagUR);
+          wUR.setLowerLeftSpring(diagUR);
+        }
+
+        if (i > 0 && j < weightsNumberY - 1) {
+          int idxUL = (j + 1) * weightsNumberX + (i - 1);
+          Weight wUL = weights.get(idxUL);
+          Vector2 cUL = new Vector2(wUL.getX() + width / 2f, wUL.getY() + weightHeight / 2f);
+
+          float diagRest = c.dst(cUL);
+
+          Spring diagUL = new Spring(diagK, SPRING_COILS, SPRING_WIDTH, diagRest);
+          diagUL.setAnchors(c.cpy(), cUL.cpy());
+          springs.add(diagUL);
+
+          w.setUpperLeftSpring(diagUL);
+          wUL.setLowerRightSpring(diagUL);
+        }
+      }
+    }
+
+    state = LatticeState.of(weights, weightsNumberX, weightsNumberY);
+    state.setWalls(leftWallX, rightWallX, lowerWallY, upperWallY);
+  }
+
+  /**
+   * Строит решетку с массой и жесткостью по умолчанию
+   *
+   * @param weightsNumberX число грузов по X
+   * @param weightsNumberY число грузов по Y
+   * @return решетка в положении равновесия
+   */
+  public static Lattice create(int weightsNumberX, int weightsNumberY) {
+    return create(weightsNumberX, weightsNumberY, DEFAULT_MASS, DEFAULT_K);
+  }
+
+  /**
+   * Строит решетку. Диагональные пружины получают жесткость {@code 0.7 * k}.
+   *
+   * @param weightsNumberX число грузов по X
+   * @param weightsNumberY число грузов по Y
+   * @param mass масса каждого груза
+   * @param k жесткость горизонтальных и вертикальных пружин
+   * @return решетка в положении равновесия
+   */
+  public static Lattice create(int weightsNumberX, int weightsNumberY, float mass, float k) {
+    return new Lattice(weightsNumberX, weightsNumberY, mass, k);
+  }
+
+  public List<Weight> getWeights() {
+    return weights;
+  }
+
+  public List<Spring> getSprings() {
+    return springs;
+  }
+
+  public LatticeState getState() {
+    return state;
+  }
+
+  /** Переносит текущее состояние физики в грузы и якоря пружин */
+  public void syncWeights() {
+    state.copyTo(weights);
+  }
+
+  /**
+   * Переносит в грузы и якоря пружин снимок состояния, например опубликованный потоком симуляции
+   *
+   * @param snapshot снимок этой решетки
+   */
+  public void syncWeights(LatticeState snapshot) {
+    snapshot.copyTo(weights);
+  }
+}
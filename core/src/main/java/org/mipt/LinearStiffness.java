@@ -0,0 +1,294 @@
+package org.mipt;
+
+import java.util.Arrays;
+import org.mipt.entity.LatticeState;
+import org.mipt.entity.SpringTable;
+
+/**
+ * Линеаризованные силы пружин для малых колебаний: матрица жесткости, один раз собранная около
+ * положения покоя решетки, в формате CSR. Ускорения считаются умножением разреженной матрицы на
+ * смещения от положения покоя, без корней и делений на каждую пружину.
+ *
+ * <p>Матрица хранится блоками 2x2 по парам грузов: строка груза {@code i} - его соседи {@code
+ * blockColumn[blockStart[i] .. blockStart[i + 1])} и для каждого блок {@code xx, xy, yx, yy},
+ * связывающий ускорение груза {@code i} со смещением соседа. Так x и y груза считаются за один
+ * проход по соседям. Строки уже поделены на массы, так что матрица сразу дает ускорения.
+ *
+ * <p>Для пружины с {@code d = a - b} (обозначения {@link SpringTable}) сила на конце {@code a}
+ * около длины {@code l0 = |d0|} в покое раскладывается как {@code F(d0) + G (d - d0)}, где
+ *
+ * <pre>
+ *   G = -k ((1 - L / l0) I + (L / l0) m m^T),  m = d0 / l0
+ * </pre>
+ *
+ * {@code L} - длина пружины без натяжения. Член {@code F(d0)} не равен нулю у предварительно
+ * натянутых пружин и хранится отдельно.
+ */
+final class LinearStiffness {
+  private final SpringTable springs;
+  private final float[] rest;
+  private final int n;
+  private final int nx;
+
+  /** Ускорения в положении покоя: x и y по {@code n} элементов */
+  private final float[] bias;
+
+  private final int[] blockStart;
+  private final int[] blockColumn;
+  private final float[] blockValue;
+
+  private LinearStiffness(
+      SpringTable springs,
+      float[] rest,
+      int nx,
+      float[] bias,
+      int[] blockStart,
+      int[] blockColumn,
+      float[] blockValue) {
+    this.springs = springs;
+    this.rest = rest;
+    this.n = bias.length / 2;
+    this.nx = nx;
+    this.bias = bias;
+    this.blockStart = blockStart;
+    this.blockColumn = blockColumn;
+    this.blockValue = blockValue;
+  }
+
+  /**
+   * Собирает матрицу жесткости около {@link LatticeState#getRestPositions()}
+   *
+   * @param lattice решетка, пружины которой линеаризуются
+   * @return матрица для текущей таблицы пружин решетки
+   */
+  static LinearStiffness assemble(LatticeState lattice) {
+    SpringTable springs = lattice.getSprings();
+    float[] rest = lattice.getRestPositions();
+    float[] mass = lattice.getMass();
+    int n = lattice.size();
+    int[] a = springs.getFrom();
+    int[] b = springs.getTo();
+    float[] scaleX = springs.getToScaleX();
+    float[] scaleY = springs.getToScaleY();
+
+    // Сила в покое и матрица G каждой пружины
+    int m = springs.size();
+    float[] forceX = new float[m];
+    float[] forceY = new float[m];
+    float[] gxx = new float[m];
+    float[] gxy = new float[m];
+    float[] gyy = new float[m];
+    float[] k = springs.getK();
+    float[] restLength = springs.getRestLength();
+    for (int e = 0; e < m; e++) {
+      float dx = endX(springs, rest, 0, e) - endX(springs, rest, 1, e);
+      float dy = endY(springs, rest, n, 0, e) - endY(springs, rest, n, 1, e);
+      float len = (float) Math.sqrt(dx * dx + dy * dy);
+      if (len < SpringKernel.EPSILON) {
+        continue;
+      }
+      float ratio = restLength[e] / len;
+      float mx = dx / len;
+      float my = dy / len;
+      forceX[e] = -k[e] * (1f - ratio) * dx;
+      forceY[e] = -k[e] * (1f - ratio) * dy;
+      gxx[e] = -k[e] * ((1f - ratio) + ratio * mx * mx);
+      gxy[e] = -k[e] * ratio * mx * my;
+      gyy[e] = -k[e] * ((1f - ratio) + ratio * my * my);
+    }
+
+    int[] start = springs.getIncidenceStart();
+    int[] edge = springs.getIncidenceEdge();
+    float[] sign = springs.getIncidenceSign();
+
+    // Соседи груза i: он сам и другие концы его пружин
+    int[] blockStart = new int[n + 1];
+    int[] neighbours = new int[16];
+    for (int i = 0; i < n; i++) {
+      neighbours = neighbours(a, b, start, edge, i, neighbours);
+      blockStart[i + 1] = blockStart[i] + neighbours[neighbours.length - 1];
+    }
+    int[] blockColumn = new int[blockStart[n]];
+    float[] blockValue = new float[4 * blockStart[n]];
+    float[] bias = new float[2 * n];
+
+    for (int i = 0; i < n; i++) {
+      neighbours = neighbours(a, b, start, edge, i, neighbours);
+      int first = blockStart[i];
+      int count = blockStart[i + 1] - first;
+      System.arraycopy(neighbours, 0, blockColumn, first, count);
+      float biasX = 0f;
+      float biasY = 0f;
+      for (int p = start[i]; p < start[i + 1]; p++) {
+        int e = edge[p];
+        float s = sign[p];
+        biasX += s * forceX[e];
+        biasY += s * forceY[e];
+        // d зависит от груза a с единичной матрицей и от груза b с матрицей -diag(scale)
+        int ja = 4 * (first + Arrays.binarySearch(neighbours, 0, count, a[e]));
+        blockValue[ja] += s * gxx[e];
+        blockValue[ja + 1] += s * gxy[e];
+        blockValue[ja + 2] += s * gxy[e];
+        blockValue[ja + 3] += s * gyy[e];
+        int jb = 4 * (first + Arrays.binarySearch(neighbours, 0, count, b[e]));
+        blockValue[jb] -= s * gxx[e] * scaleX[e];
+        blockValue[jb + 1] -= s * gxy[e] * scaleY[e];
+        blockValue[jb + 2] -= s * gxy[e] * scaleX[e];
+        blockValue[jb + 3] -= s * gyy[e] * scaleY[e];
+      }
+
+      float invMass = 1f / mass[i];
+      bias[i] = biasX * invMass;
+      bias[n + i] = biasY * invMass;
+      for (int v = 4 * first; v < 4 * blockStart[i + 1]; v++) {
+        blockValue[v] *= invMass;
+      }
+    }
+    return new LinearStiffness(
+        springs, rest, lattice.getWeightsNumberX(), bias, blockStart, blockColumn, blockValue);
+  }
+
+  /**
+   * Отсортированные без повторов соседи груза. Число соседей пишется в последний элемент массива.
+   */
+  private static int[] neighbours(
+      int[] a, int[] b, int[] start, int[] edge, int i, int[] neighbours) {
+    int needed = 2 * (start[i + 1] - start[i]) + 2;
+    if (neighbours.length < needed) {
+      neighbours = new int[needed];
+    }
+    int count = 0;
+    neighbours[count++] = i;
+    for (int p = start[i]; p < start[i + 1]; p++) {
+      int e = edge[p];
+      neighbours[count++] = a[e];
+      neighbours[count++] = b[e];
+    }
+    Arrays.sort(neighbours, 0, count);
+    int unique = 1;
+    for (int c = 1; c < count; c++) {
+      if (neighbours[c] != neighbours[unique - 1]) {
+        neighbours[unique++] = neighbours[c];
+      }
+    }
+    neighbours[neighbours.length - 1] = unique;
+    return neighbours;
+  }
+
+  /** Координата x конца пружины: 0 - {@code a}, 1 - {@code b} */
+  private static float endX(SpringTable springs, float[] positions, int end, int e) {
+    return end == 0
+        ? positions[springs.getFrom()[e]] + springs.getFromOffsetX()[e]
+        : springs.getToScaleX()[e] * positions[springs.getTo()[e]] + springs.getToOffsetX()[e];
+  }
+
+  /** Координата y конца пружины: 0 - {@code a}, 1 - {@code b} */
+  private static float endY(SpringTable springs, float[] positions, int n, int end, int e) {
+    return end == 0
+        ? positions[n + springs.getFrom()[e]] + springs.getFromOffsetY()[e]
+        : springs.getToScaleY()[e] * positions[n + springs.getTo()[e]] + springs.getToOffsetY()[e];
+  }
+
+  /**
+   * Собрана ли матрица для этой решетки: таблица пружин меняется при смене стен
+   *
+   * @param lattice решетка или ее снимок
+   */
+  boolean isFor(LatticeState lattice) {
+    return lattice.getSprings() == springs && lattice.getRestPositions() == rest;
+  }
+
+  /**
+   * Пишет ускорения грузов в строках сетки {@code [fromRow, toRow)} в блоки vx и vy {@code res}.
+   * Каждая строка сетки пишет только свои ячейки, поэтому строки можно считать независимо.
+   *
+   * @param state вектор состояния
+   * @param res вектор производных
+   */
+  void accelerations(float[] state, float[] res, int fromRow, int toRow) {
+    int vxOff = 2 * n;
+    int vyOff = 3 * n;
+    for (int i = fromRow * nx; i < toRow * nx; i++) {
+      float ax = bias[i];
+      float ay = bias[n + i];
+      for (int p = blockStart[i]; p < blockStart[i + 1]; p++) {
+        int j = blockColumn[p];
+        float ux = state[j] - rest[j];
+        float uy = state[n + j] - rest[n + j];
+        int v = 4 * p;
+        ax += blockValue[v] * ux + blockValue[v + 1] * uy;
+        ay += blockValue[v + 2] * ux + blockValue[v + 3] * uy;
+      }
+      res[vxOff + i] = ax;
+      res[vyOff + i] = ay;
+    }
+  }
+
+  /**
+   * Наибольшее по пружинам смещение одного конца относительно другого, в долях длины пружины без
+   * натяжения. Пока оно мало, линейная модель близка к закону Гука по текущей длине.
+   *
+   * @param state вектор состояния
+   */
+  float maxStrain(float[] state) {
+    int[] a = springs.getFrom();
+    int[] b = springs.getTo();
+    float[] scaleX = springs.getToScaleX();
+    float[] scaleY = springs.getToScaleY();
+    float[] restLength = springs.getRestLength();
+    float max = 0f;
+    for (int e = 0; e < springs.size(); e++) {
+      int ia = a[e];
+      int ib = b[e];
+      float ux = (state[ia] - rest[ia]) - scaleX[e] * (state[ib] - rest[ib]);
+      float uy = (state[n + ia] - rest[n + ia]) - scaleY[e] * (state[n + ib] - rest[n + ib]);
+      float strain = (ux * ux + uy * uy) / (restLength[e] * restLength[e]);
+      if (strain > max) {
+        max = strain;
+      }
+    }
+    return (float) Math.sqrt(max);
+  }
+
+  /**
+   * Плотная матрица жесткости в координатах, взвешенных по массам: {@code -M^(1/2) A M^(-1/2)},
+   * где {@code A} - матрица ускорений. Ее собственные значения - квадраты частот нормальных форм.
+   * Несимметричная часть, которую дают пружины к стенам с наклоном вдоль стены, отбрасывается.
+   *
+   * @param mass массы грузов
+   * @return симметричная матрица {@code 2n x 2n} с нумерацией вектора состояния
+   */
+  double[][] massWeighted(float[] mass) {
+    double[][] result = new double[2 * n][2 * n];
+    for (int i = 0; i < n; i++) {
+      double rootI = Math.sqrt(mass[i]);
+      for (int p = blockStart[i]; p < blockStart[i + 1]; p++) {
+        int j = blockColumn[p];
+        double scale = -rootI / Math.sqrt(mass[j]);
+        int v = 4 * p;
+        result[i][j] += scale * blockValue[v];
+        result[i][n + j] += scale * blockValue[v + 1];
+        result[n + i][j] += scale * blockValue[v + 2];
+        result[n + i][n + j] += scale * blockValue[v + 3];
+      }
+    }
+    for (int r = 0; r < 2 * n; r++) {
+      for (int c = r + 1; c < 2 * n; c++) {
+        double mean = 0.5 * (result[r][c] + result[c][r]);
+        result[r][c] = mean;
+        result[c][r] = mean;
+      }
+    }
+    return result;
+  }
+
+  /** Ускорения в положении покоя: x и y по {@code size()} грузов */
+  float[] getBias() {
+    return bias;
+  }
+
+  /** Число ненулевых элементов матрицы */
+  int nonZeros() {
+    return 4 * blockStart[n];
+  }
+}
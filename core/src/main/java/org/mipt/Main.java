@@ -6,20 +6,35 @@ import com.badlogic.gdx.Input;
 import com.badlogic.gdx.InputAdapter;
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.Mesh;
 import com.badlogic.gdx.graphics.OrthographicCamera;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes.Usage;
+import com.badlogic.gdx.graphics.glutils.ImmediateModeRenderer20;
+import com.badlogic.gdx.graphics.glutils.ShaderProgram;
 import com.badlogic.gdx.graphics.glutils.ShapeRenderer;
 import com.badlogic.gdx.math.MathUtils;
-import com.badlogic.gdx.math.Vector2;
 import com.badlogic.gdx.utils.viewport.FillViewport;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumSet;
 import java.util.List;
-import org.mipt.entity.Spring;
+import org.mipt.entity.LatticeState;
 import org.mipt.entity.Weight;
+import org.mipt.integrator.IntegratorType;
+import org.mipt.io.Checkpoint;
+import org.mipt.observer.CheckpointObserver;
+import org.mipt.observer.ObserverPipeline;
+import org.mipt.profiling.Phase;
+import org.mipt.profiling.PhaseTimer;
+import org.mipt.profiling.ProfilerOverlay;
 
 public class Main extends ApplicationAdapter {
-  private Physics physics;
-  PhysicsLogger logger;
+  private SimulationThread simulation;
+
+  /** Запись контрольной точки по F5 в фоне, чтобы кадр не ждал диска */
+  private AsyncPhysicsLogger checkpointWriter;
   private ShapeRenderer shapeRenderer;
 
   private FillViewport viewport;
@@ -28,11 +43,41 @@ public class Main extends ApplicationAdapter {
   private static final float WORLD_HEIGHT = 600;
   private static final float WORLD_WIDTH = 1000;
   private static final float FIXED_TIME_STEP = 0.01f;
-  private float accumulator = 0f;
-  private static float simTime = 0f;
+  private static final int LOG_QUEUE_FRAMES = 256;
+
+  /** Контрольная точка по F5 и F9 */
+  private static final Path CHECKPOINT = Paths.get("checkpoint.ewcp");
+
+  /** Автоматическая контрольная точка и ее период в шагах */
+  private static final Path AUTOSAVE = Paths.get("autosave.ewcp");
+
+  private static final int AUTOSAVE_EVERY = 1000;
+
+  /** Журнал сеанса для повтора без окна */
+  private static final Path JOURNAL = Paths.get("dataset_journal.ewj");
+  private IntegratorType integratorType = IntegratorType.RK4;
+  private Physics.ForceModel forceModel = Physics.ForceModel.NONLINEAR;
+
+  /** Замеры фаз кадра, включаются вместе с панелью по F3 */
+  private final PhaseTimer timer = new PhaseTimer();
+
+  private ProfilerOverlay overlay;
+
+  private Lattice lattice;
+  private List<Weight> weights;
+  private SpringGeometry springGeometry;
+  private Mesh springMesh;
+  private ShaderProgram springShader;
+
+  /** Видимая область мира, пересчитывается каждый кадр */
+  private final ViewWindow view = new ViewWindow();
+
+  /** Сторона груза на экране в пикселях, меньше которой груз рисуется точкой */
+  private static final float MIN_WEIGHT_PIXELS = 3f;
+
+  /** Наибольшая сторона груза, по ней выбирается детализация грузов */
+  private float maxWeightSize;
 
-  private final List<Weight> weights = new ArrayList<>();
-  private final List<Spring> springs = new ArrayList<>();
   private static final int WEIGHTS_NUMBER_X = 30;
   private static final int WEIGHTS_NUMBER_Y = 30;
 
@@ -49,119 +94,75 @@ public class Main extends ApplicationAdapter {
     camera.position.set(WORLD_WIDTH / 2f, WORLD_HEIGHT / 2f, 0);
 
     shapeRenderer = new ShapeRenderer();
-    physics = new Physics();
+    Physics physics = new Physics();
+    physics.setTimer(timer);
+    physics.setWarnings(message -> Gdx.app.log("Physics", message));
+    lattice = Lattice.create(WEIGHTS_NUMBER_X, WEIGHTS_NUMBER_Y);
+    ObserverPipeline observers = new ObserverPipeline();
     try {
-      logger = new PhysicsLogger("dataset", WEIGHTS_NUMBER_X * WEIGHTS_NUMBER_Y);
+      observers.add(
+          new AsyncPhysicsLogger(
+              new PhysicsLogger("dataset", lattice.getState()),
+              lattice.getState(),
+              LOG_QUEUE_FRAMES,
+              AsyncPhysicsLogger.OverflowPolicy.BLOCK));
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
-
-    Physics.setWeightsNumberX(WEIGHTS_NUMBER_X);
-    Physics.setWeightsNumberY(WEIGHTS_NUMBER_Y);
-    leftWallX = 200;
-    float mass = 1f;
-    float length = 200;
-    float width = 50;
-    float k = 60;
-    float weightHeight = 50;
-    float lowerY = 275;
-    lowerWallY = lowerY - length;
-    for (int j = 0; j < WEIGHTS_NUMBER_Y; j++) {
-      float leftX = leftWallX;
-      for (int i = 0; i < WEIGHTS_NUMBER_X; i++) {
-        Spring horizontalSpring;
-        horizontalSpring =
-            new Spring(
-                k,
-                new Vector2(leftX, lowerY + weightHeight / 2),
-                new Vector2(leftX + length, lowerY + weightHeight / 2),
-                20,
-                8.0f);
-        springs.add(horizontalSpring);
-        if (i != 0) {
-          weights.get(weights.size() - 1).setRightSpring(horizontalSpring);
-        }
-        Spring verticalSpring = new Spring(k, 20, 8.0f, length);
-        verticalSpring.setUpperAnchor(new Vector2(leftX + width / 2 + length, lowerY));
-        verticalSpring.setLowerAnchor(new Vector2(leftX + width / 2 + length, lowerY - length));
-        springs.add(verticalSpring);
-        if (j != 0) {
-          weights.get(weights.size() - WEIGHTS_NUMBER_X).setUpperSpring(verticalSpring);
-        }
-        Weight weight = new Weight(mass, leftX + length, lowerY, width, weightHeight);
-        weight.setLeftSpring(horizontalSpring);
-        weight.setLowerSpring(verticalSpring);
-        weights.add(weight);
-        leftX = leftX + length + width;
-      }
-      Spring lastSpring =
-          new Spring(
-              k,
-              new Vector2(leftX, lowerY + weightHeight / 2),
-              new Vector2(leftX + length, lowerY + weightHeight / 2),
-              20,
-              8.0f);
-      weights.get(weights.size() - 1).setRightSpring(lastSpring);
-      springs.add(lastSpring);
-      lowerY = lowerY + weightHeight + length;
-    }
-    rightWallX = springs.get(springs.size() - 1).getRightX();
-    upperWallY = weights.get(weights.size() - 1).getY() + weightHeight + length;
-    for (int i = 0; i < WEIGHTS_NUMBER_X; i++) {
-      Spring verticalSpring = new Spring(k, 20, 8.0f, length);
-      Weight weight = weights.get(weights.size() - WEIGHTS_NUMBER_X + i);
-      verticalSpring.setUpperAnchor(
-          new Vector2(weight.getX() + width / 2, weight.getY() + weightHeight + length));
-      verticalSpring.setLowerAnchor(
-          new Vector2(weight.getX() + width / 2, weight.getY() + weightHeight));
-      weight.setUpperSpring(verticalSpring);
-      springs.add(verticalSpring);
+    // Пока пишется прежняя точка, новая пропускается, шаги не ждут диска
+    observers.add(
+        new AsyncPhysicsLogger(
+            new CheckpointObserver(AUTOSAVE),
+            lattice.getState(),
+            1,
+            AsyncPhysicsLogger.OverflowPolicy.DROP),
+        AUTOSAVE_EVERY);
+    // Окно только копирует снимок, а пока пишется прежняя точка, новое сохранение пропускается
+    checkpointWriter =
+        new AsyncPhysicsLogger(
+            new CheckpointObserver(CHECKPOINT),
+            lattice.getState(),
+            1,
+            AsyncPhysicsLogger.OverflowPolicy.DROP);
+    StepScheduler scheduler =
+        new StepScheduler(
+            FIXED_TIME_STEP, EnumSet.allOf(StepScheduler.Degradation.class), physics.getSubSteps());
+    simulation =
+        new SimulationThread(
+            physics, lattice.getState(), observers, timer, FIXED_TIME_STEP, scheduler);
+    try {
+      simulation.setJournal(
+          new InputJournal(JOURNAL, lattice.getState(), FIXED_TIME_STEP, physics));
+    } catch (IOException e) {
+      throw new RuntimeException(e);
     }
-
-    float diagK = k * 0.7f;
-
-    for (int j = 0; j < WEIGHTS_NUMBER_Y; j++) {
-      for (int i = 0; i < WEIGHTS_NUMBER_X; i++) {
-        int idx = j * WEIGHTS_NUMBER_X + i;
-        Weight w = weights.get(idx);
-        Vector2 c = new Vector2(w.getX() + width / 2f, w.getY() + weightHeight / 2f);
-
-        if (i < WEIGHTS_NUMBER_X - 1 && j < WEIGHTS_NUMBER_Y - 1) {
-          int idxUR = (j + 1) * WEIGHTS_NUMBER_X + (i + 1);
-          Weight wUR = weights.get(idxUR);
-          Vector2 cUR = new Vector2(wUR.getX() + width / 2f, wUR.getY() + weightHeight / 2f);
-
-          float diagRest = c.dst(cUR);
-
-          Spring diagUR = new Spring(diagK, 20, 8.0f, diagRest);
-          diagUR.setAnchors(c.cpy(), cUR.cpy());
-          springs.add(diagUR);
-
-          w.setUpperRightSpring(diagUR);
-          wUR.setLowerLeftSpring(diagUR);
-        }
-
-        if (i > 0 && j < WEIGHTS_NUMBER_Y - 1) {
-          int idxUL = (j + 1) * WEIGHTS_NUMBER_X + (i - 1);
-          Weight wUL = weights.get(idxUL);
-          Vector2 cUL = new Vector2(wUL.getX() + width / 2f, wUL.getY() + weightHeight / 2f);
-
-          float diagRest = c.dst(cUL);
-
-          Spring diagUL = new Spring(diagK, 20, 8.0f, diagRest);
-          diagUL.setAnchors(c.cpy(), cUL.cpy());
-          springs.add(diagUL);
-
-          w.setUpperLeftSpring(diagUL);
-          wUL.setLowerRightSpring(diagUL);
-        }
-      }
+    overlay =
+        new ProfilerOverlay(
+            () ->
+                String.format(
+                    "lag %.3f s  x%.2f  substeps %d  unlogged %d",
+                    scheduler.getLagSeconds(),
+                    scheduler.getTimeScale(),
+                    scheduler.getSubSteps(),
+                    scheduler.getSkippedLogFrames()));
+    weights = lattice.getWeights();
+    for (Weight weight : weights) {
+      maxWeightSize = Math.max(maxWeightSize, Math.max(weight.getWidth(), weight.getHeight()));
     }
-
-    Physics.setLeftWallX(leftWallX);
-    Physics.setRightWallX(rightWallX);
-    Physics.setUpperWallY(upperWallY);
-    Physics.setLowerWallY(lowerWallY);
+    springGeometry = new SpringGeometry(lattice);
+    springMesh =
+        new Mesh(
+            false,
+            springGeometry.getMaxVertices(),
+            0,
+            new VertexAttribute(Usage.Position, 2, ShaderProgram.POSITION_ATTRIBUTE),
+            VertexAttribute.ColorPacked());
+    springShader = ImmediateModeRenderer20.createDefaultShader(false, true, 0);
+    LatticeState state = lattice.getState();
+    leftWallX = state.getLeftWallX();
+    rightWallX = state.getRightWallX();
+    lowerWallY = state.getLowerWallY();
+    upperWallY = state.getUpperWallY();
 
     Gdx.input.setInputProcessor(
         new InputAdapter() {
@@ -186,31 +187,24 @@ public class Main extends ApplicationAdapter {
             return true;
           }
         });
+    simulation.start();
   }
 
   @Override
   public void render() {
+    long frameStart = timer.start();
     Gdx.gl.glClear(GL20.GL_COLOR_BUFFER_BIT);
 
     handleInput();
     camera.update();
     shapeRenderer.setProjectionMatrix(camera.combined);
+    view.update(camera.combined, Gdx.graphics.getHeight());
 
-    float frameTime = Gdx.graphics.getDeltaTime();
-    accumulator += frameTime;
-    while (accumulator >= FIXED_TIME_STEP) {
-      physics.applyPhysics(weights, FIXED_TIME_STEP);
-      simTime += FIXED_TIME_STEP;
-      try {
-        logger.logX(weights, simTime);
-        logger.logY(weights, simTime);
-        logger.logTotalEnergy(weights, springs, simTime);
-        logger.logBorderKineticEnergy(weights, WEIGHTS_NUMBER_X, WEIGHTS_NUMBER_Y, simTime);
-      } catch (IOException e) {
-        throw new RuntimeException(e);
-      }
-      accumulator -= FIXED_TIME_STEP;
-    }
+    // Физика шагает в своем потоке, окно рисует последний опубликованный снимок
+    LatticeState snapshot = simulation.latest().getState();
+    long start = timer.start();
+    lattice.syncWeights(snapshot);
+    timer.stop(Phase.SYNC_WEIGHTS, start);
 
     // отрисовка стен
     shapeRenderer.begin(ShapeRenderer.ShapeType.Line);
@@ -220,122 +214,120 @@ public class Main extends ApplicationAdapter {
     shapeRenderer.line(leftWallX, upperWallY, rightWallX, upperWallY);
     shapeRenderer.end();
 
-    drawSprings(springs);
+    start = timer.start();
+    drawSprings(snapshot);
+    timer.stop(Phase.DRAW_SPRINGS, start);
 
+    start = timer.start();
     drawWeights(weights);
+    timer.stop(Phase.DRAW_WEIGHTS, start);
+
+    if (timer.isEnabled()) {
+      overlay.draw(timer, Gdx.graphics.getWidth(), Gdx.graphics.getHeight());
+    }
+    timer.stop(Phase.FRAME, frameStart);
   }
 
   /**
    * Отрисовка пружин с цветом, зависящим от растяжения/сжатия: красный – растянута, синий – сжата,
-   * белый – в равновесии.
+   * белый – в равновесии. Витки видимых пружин собираются в буфер меша и рисуются одним вызовом,
+   * при сильном отдалении пружины рисуются линиями или не рисуются (см. {@link SpringGeometry}).
    */
-  private void drawSprings(List<Spring> springs) {
-    shapeRenderer.begin(ShapeRenderer.ShapeType.Line);
+  private void drawSprings(LatticeState snapshot) {
+    int vertices = springGeometry.build(snapshot, view, springMesh.getVerticesBuffer(true));
+    if (vertices == 0) {
+      return;
+    }
+    springShader.bind();
+    springShader.setUniformMatrix("u_projModelView", camera.combined);
+    springMesh.render(springShader, GL20.GL_LINES, 0, vertices);
+  }
 
-    for (Spring spring : springs) {
-      Vector2 a;
-      Vector2 b;
-
-      if (spring.getLeftAnchor() != null && spring.getRightAnchor() != null) {
-        a = spring.getLeftAnchor();
-        b = spring.getRightAnchor();
-      } else if (spring.getLowerAnchor() != null && spring.getUpperAnchor() != null) {
-        a = spring.getLowerAnchor();
-        b = spring.getUpperAnchor();
-      } else if (spring.getAnchorA() != null && spring.getAnchorB() != null) {
-        a = spring.getAnchorA();
-        b = spring.getAnchorB();
-      } else {
+  /** Отрисовка видимых грузов: прямоугольниками или, при сильном отдалении, точками в центре */
+  private void drawWeights(List<Weight> weights) {
+    boolean points = view.toPixels(maxWeightSize) < MIN_WEIGHT_PIXELS;
+    shapeRenderer.begin(points ? ShapeRenderer.ShapeType.Point : ShapeRenderer.ShapeType.Filled);
+    shapeRenderer.setColor(Color.DARK_GRAY);
+
+    for (Weight weight : weights) {
+      float x = weight.getX();
+      float y = weight.getY();
+      float width = weight.getWidth();
+      float height = weight.getHeight();
+      if (!view.overlaps(x, y, x + width, y + height)) {
         continue;
       }
-
-      float dx = (b.x - a.x) / spring.getCoils();
-      float dy = (b.y - a.y) / spring.getCoils();
-      Vector2 boardAnchor = a;
-
-      float currentLength = a.dst(b);
-      float restLength = spring.getLength();
-      float strain = (currentLength - restLength) / restLength;
-
-      float prev = spring.getVisualStrain();
-      float blended = MathUtils.lerp(prev, strain, 0.01f);
-      spring.setVisualStrain(blended);
-
-      float s = MathUtils.clamp(blended * 100f, -1f, 1f);
-
-      float red;
-      float green;
-      float blue;
-      if (s >= 0) {
-        red = 1f;
-        green = 1f - 0.6f * s;
-        blue = 1f - 0.6f * s;
+      if (points) {
+        shapeRenderer.point(x + width / 2f, y + height / 2f, 0f);
       } else {
-        red = 1f + 0.3f * s;
-        green = 1f + 0.3f * s;
-        blue = 1f - s;
+        shapeRenderer.rect(x, y, width, height);
       }
-      shapeRenderer.setColor(red, green, blue, 1f);
-
-      for (int i = 0; i < spring.getCoils(); i++) {
-        float sign = (i % 2 == 0) ? 1 : -1;
+    }
 
-        float x1 = boardAnchor.x + dx * i;
-        float y1 = boardAnchor.y + dy * i;
-        float x2 = boardAnchor.x + dx * (i + 1);
-        float y2 = boardAnchor.y + dy * (i + 1);
+    shapeRenderer.end();
+  }
 
-        float nx = -dy;
-        float ny = dx;
-        float len = (float) Math.sqrt(nx * nx + ny * ny);
-        nx /= len;
-        ny /= len;
+  private void handleInput() {
+    if (Gdx.input.isKeyJustPressed(Input.Keys.SPACE)) {
+      simulation.submit(
+          (physics, state) -> Excitation.RADIAL.apply(physics, state, Excitation.DEFAULT_VELOCITY));
+    }
 
-        x1 += nx * spring.getWidth() * sign;
-        y1 += ny * spring.getWidth() * sign;
-        x2 += nx * spring.getWidth() * -sign;
-        y2 += ny * spring.getWidth() * -sign;
+    if (Gdx.input.isKeyJustPressed(Input.Keys.NUM_1)) {
+      simulation.submit(
+          (physics, state) -> Excitation.COLUMN.apply(physics, state, Excitation.DEFAULT_VELOCITY));
+    }
 
-        shapeRenderer.line(x1, y1, x2, y2);
-      }
+    if (Gdx.input.isKeyJustPressed(Input.Keys.I)) {
+      IntegratorType[] types = IntegratorType.values();
+      integratorType = types[(integratorType.ordinal() + 1) % types.length];
+      IntegratorType type = integratorType;
+      simulation.submit((physics, state) -> physics.setIntegrator(type.create()));
+      Gdx.app.log("Physics", "Integrator: " + integratorType);
     }
-    shapeRenderer.end();
-  }
 
-  private void drawWeights(List<Weight> weights) {
-    shapeRenderer.begin(ShapeRenderer.ShapeType.Filled);
-    shapeRenderer.setColor(Color.DARK_GRAY);
+    if (Gdx.input.isKeyJustPressed(Input.Keys.L)) {
+      forceModel =
+          forceModel == Physics.ForceModel.NONLINEAR
+              ? Physics.ForceModel.LINEAR
+              : Physics.ForceModel.NONLINEAR;
+      Physics.ForceModel model = forceModel;
+      simulation.submit((physics, state) -> physics.setForceModel(model));
+      Gdx.app.log("Physics", "Spring forces: " + forceModel);
+    }
 
-    for (Weight weight : weights) {
-      shapeRenderer.rect(weight.getX(), weight.getY(), weight.getWidth(), weight.getHeight());
+    if (Gdx.input.isKeyJustPressed(Input.Keys.T)) {
+      simulation.setRealTime(!simulation.isRealTime());
+      Gdx.app.log("Physics", simulation.isRealTime() ? "Real time" : "As fast as possible");
     }
 
-    shapeRenderer.end();
-  }
+    if (Gdx.input.isKeyJustPressed(Input.Keys.F3)) {
+      timer.setEnabled(!timer.isEnabled());
+    }
 
-  private void handleInput() {
-    if (Gdx.input.isKeyJustPressed(Input.Keys.SPACE)) {
-      int i0 = WEIGHTS_NUMBER_X / 2;
-      int j0 = WEIGHTS_NUMBER_Y / 2;
-      float v = 400f;
-
-      for (int dj = -2; dj <= 2; dj++) {
-        for (int di = -2; di <= 2; di++) {
-          int i = i0 + di;
-          int j = j0 + dj;
-          int idx = j * WEIGHTS_NUMBER_X + i;
-          physics.pushWeight(weights, idx, di * v, dj * v);
+    if (Gdx.input.isKeyJustPressed(Input.Keys.F5)) {
+      SimulationThread.Snapshot snapshot = simulation.latest();
+      try {
+        long dropped = checkpointWriter.getDroppedFrames();
+        checkpointWriter.observe(snapshot.getState(), snapshot.getStep(), snapshot.getTime());
+        if (checkpointWriter.getDroppedFrames() != dropped) {
+          Gdx.app.log("Checkpoint", "Previous save is still being written, skipped");
+        } else {
+          Gdx.app.log("Checkpoint", "Saving step " + snapshot.getStep() + " to " + CHECKPOINT);
         }
+      } catch (IOException e) {
+        Gdx.app.error("Checkpoint", "Cannot save " + CHECKPOINT, e);
       }
     }
 
-    if (Gdx.input.isKeyJustPressed(Input.Keys.NUM_1)) {
-      int i = WEIGHTS_NUMBER_X / 2;
-      float v = 400f;
-
-      for (int j = 0; j < WEIGHTS_NUMBER_Y; j++) {
-        int idx = j * WEIGHTS_NUMBER_X + i;
-        physics.pushWeight(weights, idx, v, 0f);
+    if (Gdx.input.isKeyJustPressed(Input.Keys.F9)) {
+      try {
+        Checkpoint checkpoint = Checkpoint.read(CHECKPOINT);
+        checkpoint.check(simulation.latest().getState());
+        simulation.restore(checkpoint);
+        Gdx.app.log("Checkpoint", "Loaded step " + checkpoint.getStep() + " from " + CHECKPOINT);
+      } catch (IOException | IllegalArgumentException e) {
+        Gdx.app.error("Checkpoint", "Cannot load " + CHECKPOINT, e);
       }
     }
   }
@@ -348,8 +340,15 @@ public class Main extends ApplicationAdapter {
   @Override
   public void dispose() {
     shapeRenderer.dispose();
+    springMesh.dispose();
+    springShader.dispose();
+    overlay.dispose();
     try {
-      logger.close();
+      try {
+        simulation.close();
+      } finally {
+        checkpointWriter.close();
+      }
     } catch (IOException e) {
       throw new RuntimeException(e);
     }
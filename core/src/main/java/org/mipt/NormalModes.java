@@ -0,0 +1,443 @@
+package org.mipt;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import org.mipt.entity.LatticeState;
+import org.mipt.io.Checkpoint;
+
+/**
+ * Нормальные формы линеаризованной решетки ({@link Physics.ForceModel#LINEAR}). Движение малых
+ * колебаний - сумма независимых гармонических колебаний по формам, поэтому положения и скорости в
+ * любой момент времени считаются сразу, без шагов: проекция начального состояния на формы и одна
+ * сумма по формам.
+ *
+ * <p>Формы - собственные векторы матрицы жесткости, взвешенной по массам, {@link
+ * LinearStiffness#massWeighted}. Разложение плотное: {@code (2n)^2} чисел памяти и {@code
+ * O((2n)^3)} времени, около 10 с на одном ядре для 30x30. Поэтому оно годится только для
+ * небольших решеток, не больше {@value #MAX_WEIGHTS} грузов (50x50: около 7 минут и 300 МБ
+ * матриц), а на 200x200 потребовало бы десятков гигабайт и дней счета. Разложение сохраняют в файл
+ * ({@link #cached}) и пересчитывают, только если решетка другая.
+ *
+ * <p>Столкновения и отражения от стен не учитываются: при малых колебаниях грузы до них не
+ * доходят.
+ *
+ * <p>Файл ({@value #HEADER_SIZE} байт заголовка, little-endian):
+ *
+ * <pre>
+ *   int    magic       'EWNM'
+ *   int    version
+ *   int    weightsNumberX
+ *   int    weightsNumberY
+ *   long   parameters  {@link Checkpoint#parameters}
+ *   float  leftWallX, rightWallX, lowerWallY, upperWallY
+ *   int    modes       2 * weightsNumberX * weightsNumberY
+ *   int    reserved
+ *   double[modes] eigenvalue
+ *   double[modes] load
+ *   float[modes][modes] shape
+ * </pre>
+ */
+public final class NormalModes {
+  static final int MAGIC = 0x45574e4d;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 48;
+  static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+  /** Наибольшее число грузов, для которого считаются формы */
+  public static final int MAX_WEIGHTS = 2500;
+
+  /** Собственные значения меньше этой доли наибольшего считаются нулевыми */
+  private static final double ZERO_EIGENVALUE = 1e-9;
+
+  private final int weightsNumberX;
+  private final int weightsNumberY;
+  private final long parameters;
+  private final float leftWallX;
+  private final float rightWallX;
+  private final float lowerWallY;
+  private final float upperWallY;
+
+  /** Квадраты частот по возрастанию */
+  private final double[] eigenvalue;
+
+  /** Проекции сил в положении покоя, у предварительно натянутых пружин не равны нулю */
+  private final double[] load;
+
+  /**
+   * Формы смещений грузов, строка на форму, с раскладкой первых двух блоков вектора состояния.
+   * Нормированы по массам: {@code sum(m * shape[k] * shape[l])} равна 1 при {@code k == l} и 0
+   * иначе.
+   */
+  private final float[][] shape;
+
+  private NormalModes(
+      LatticeState lattice, long parameters, double[] eigenvalue, double[] load, float[][] shape) {
+    this(
+        lattice.getWeightsNumberX(),
+        lattice.getWeightsNumberY(),
+        parameters,
+        new float[] {
+          lattice.getLeftWallX(),
+          lattice.getRightWallX(),
+          lattice.getLowerWallY(),
+          lattice.getUpperWallY()
+        },
+        eigenvalue,
+        load,
+        shape);
+  }
+
+  private NormalModes(
+      int weightsNumberX,
+      int weightsNumberY,
+      long parameters,
+      float[] walls,
+      double[] eigenvalue,
+      double[] load,
+      float[][] shape) {
+    this.weightsNumberX = weightsNumberX;
+    this.weightsNumberY = weightsNumberY;
+    this.parameters = parameters;
+    this.leftWallX = walls[0];
+    this.rightWallX = walls[1];
+    this.lowerWallY = walls[2];
+    this.upperWallY = walls[3];
+    this.eigenvalue = eigenvalue;
+    this.load = load;
+    this.shape = shape;
+  }
+
+  /**
+   * Раскладывает линеаризованную решетку на нормальные формы
+   *
+   * @param lattice решетка, пружины которой линеаризуются около положения покоя
+   * @return формы для текущих стен решетки
+   * @throws IllegalArgumentException если в решетке больше {@value #MAX_WEIGHTS} грузов
+   * @throws IllegalStateException если положение покоя неустойчиво
+   */
+  public static NormalModes compute(LatticeState lattice) {
+    checkSize(lattice);
+    LinearStiffness stiffness = LinearStiffness.assemble(lattice);
+    float[] mass = lattice.getMass();
+    int n = lattice.size();
+    double[][] matrix = stiffness.massWeighted(mass);
+    double[] eigenvalue = SymmetricEigen.decompose(matrix);
+    double largest = 0.0;
+    for (double value : eigenvalue) {
+      largest = Math.max(largest, Math.abs(value));
+    }
+
+    float[] bias = stiffness.getBias();
+    double[] load = new double[2 * n];
+    float[][] shape = new float[2 * n][2 * n];
+    for (int k = 0; k < 2 * n; k++) {
+      if (Math.abs(eigenvalue[k]) <= ZERO_EIGENVALUE * largest) {
+        eigenvalue[k] = 0.0;
+      } else if (eigenvalue[k] < 0.0) {
+        throw new IllegalStateException(
+            "Lattice is unstable around its rest configuration: eigenvalue " + eigenvalue[k]);
+      }
+      double[] vector = matrix[k];
+      double projected = 0.0;
+      for (int r = 0; r < 2 * n; r++) {
+        double root = Math.sqrt(mass[r % n]);
+        shape[k][r] = (float) (vector[r] / root);
+        projected += vector[r] * root * bias[r];
+      }
+      load[k] = projected;
+    }
+    return new NormalModes(lattice, Checkpoint.parameters(lattice), eigenvalue, load, shape);
+  }
+
+  private static void checkSize(LatticeState lattice) {
+    if (lattice.size() > MAX_WEIGHTS) {
+      throw new IllegalArgumentException(
+          "Normal modes need a dense "
+              + 2 * lattice.size()
+              + "x"
+              + 2 * lattice.size()
+              + " decomposition; only lattices up to "
+              + MAX_WEIGHTS
+              + " weights are supported, got "
+              + lattice.getWeightsNumberX()
+              + "x"
+              + lattice.getWeightsNumberY());
+    }
+  }
+
+  /**
+   * Читает формы из файла, если они посчитаны для этой решетки, иначе считает и записывает
+   *
+   * @param file путь к файлу
+   * @param lattice решетка
+   * @return формы для решетки
+   * @throws IOException при ошибке записи
+   * @throws IllegalArgumentException если в решетке больше {@value #MAX_WEIGHTS} грузов
+   */
+  public static NormalModes cached(Path file, LatticeState lattice) throws IOException {
+    checkSize(lattice);
+    if (Files.exists(file)) {
+      try {
+        NormalModes modes = read(file);
+        if (modes.isFor(lattice)) {
+          return modes;
+        }
+      } catch (IOException e) {
+        // Поврежденный файл или файл другой версии просто пересчитывается
+      }
+    }
+    NormalModes modes = compute(lattice);
+    modes.write(file);
+    return modes;
+  }
+
+  /**
+   * Записывает формы. Файл сначала пишется под временным именем и затем переименовывается.
+   *
+   * @param file путь к файлу, существующий файл заменяется
+   * @throws IOException при ошибке записи
+   */
+  public void write(Path file) throws IOException {
+    int modes = eigenvalue.length;
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 16 * modes + 4 * modes * modes);
+    buffer.order(ORDER);
+    buffer
+        .putInt(MAGIC)
+        .putInt(VERSION)
+        .putInt(weightsNumberX)
+        .putInt(weightsNumberY)
+        .putLong(parameters)
+        .putFloat(leftWallX)
+        .putFloat(rightWallX)
+        .putFloat(lowerWallY)
+        .putFloat(upperWallY)
+        .putInt(modes);
+    buffer.position(HEADER_SIZE);
+    buffer.asDoubleBuffer().put(eigenvalue).put(load);
+    buffer.position(HEADER_SIZE + 16 * modes);
+    for (float[] row : shape) {
+      buffer.asFloatBuffer().put(row);
+      buffer.position(buffer.position() + 4 * modes);
+    }
+    buffer.rewind();
+
+    Path absolute = file.toAbsolutePath();
+    Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+    try (FileChannel channel =
+        FileChannel.open(
+            temp,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+    try {
+      Files.move(temp, absolute, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Читает формы целиком
+   *
+   * @param file путь к файлу
+   * @return прочитанные формы
+   * @throws IOException если файл не удалось прочитать, он обрезан или другого формата
+   */
+  public static NormalModes read(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (channel.size() < HEADER_SIZE || channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Bad normal modes file size " + channel.size());
+      }
+      ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+      buffer.order(ORDER);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          throw new IOException("Normal modes file is truncated");
+        }
+      }
+      buffer.flip();
+
+      if (buffer.getInt() != MAGIC) {
+        throw new IOException("Not a normal modes file");
+      }
+      int version = buffer.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported normal modes version " + version);
+      }
+      int weightsNumberX = buffer.getInt();
+      int weightsNumberY = buffer.getInt();
+      long parameters = buffer.getLong();
+      float[] walls = new float[4];
+      buffer.asFloatBuffer().get(walls);
+      buffer.position(buffer.position() + 16);
+      int modes = buffer.getInt();
+      if (weightsNumberX <= 0
+          || weightsNumberY <= 0
+          || modes != 2L * weightsNumberX * weightsNumberY
+          || buffer.capacity() != HEADER_SIZE + 16L * modes + 4L * modes * modes) {
+        throw new IOException("Normal modes file is truncated or corrupt");
+      }
+
+      double[] eigenvalue = new double[modes];
+      double[] load = new double[modes];
+      buffer.position(HEADER_SIZE);
+      buffer.asDoubleBuffer().get(eigenvalue).get(load);
+      buffer.position(HEADER_SIZE + 16 * modes);
+      float[][] shape = new float[modes][modes];
+      for (float[] row : shape) {
+        buffer.asFloatBuffer().get(row);
+        buffer.position(buffer.position() + 4 * modes);
+      }
+      return new NormalModes(
+          weightsNumberX, weightsNumberY, parameters, walls, eigenvalue, load, shape);
+    }
+  }
+
+  /**
+   * Посчитаны ли формы для решетки: те же размер, массы, пружины и стены
+   *
+   * @param lattice решетка или ее снимок
+   */
+  public boolean isFor(LatticeState lattice) {
+    return lattice.getWeightsNumberX() == weightsNumberX
+        && lattice.getWeightsNumberY() == weightsNumberY
+        && lattice.getLeftWallX() == leftWallX
+        && lattice.getRightWallX() == rightWallX
+        && lattice.getLowerWallY() == lowerWallY
+        && lattice.getUpperWallY() == upperWallY
+        && Checkpoint.parameters(lattice) == parameters;
+  }
+
+  /**
+   * Раскладывает состояние решетки по формам
+   *
+   * @param lattice решетка, для которой посчитаны формы
+   * @return движение, начинающееся с этого состояния
+   * @throws IllegalArgumentException если формы посчитаны для другой решетки
+   */
+  public Motion project(LatticeState lattice) {
+    check(lattice);
+    int n = lattice.size();
+    float[] state = lattice.getState();
+    float[] rest = lattice.getRestPositions();
+    float[] mass = lattice.getMass();
+    Motion motion = new Motion(mass);
+    for (int k = 0; k < eigenvalue.length; k++) {
+      float[] form = shape[k];
+      double displacement = 0.0;
+      double velocity = 0.0;
+      for (int r = 0; r < 2 * n; r++) {
+        double weight = mass[r % n] * form[r];
+        displacement += weight * (state[r] - rest[r]);
+        velocity += weight * state[2 * n + r];
+      }
+      motion.displacement[k] = displacement;
+      motion.velocity[k] = velocity;
+    }
+    return motion;
+  }
+
+  /** Число форм, по две на груз */
+  public int size() {
+    return eigenvalue.length;
+  }
+
+  /**
+   * Угловая частота формы
+   *
+   * @param mode номер формы, формы идут по возрастанию частоты
+   */
+  public double getFrequency(int mode) {
+    return Math.sqrt(eigenvalue[mode]);
+  }
+
+  private void check(LatticeState lattice) {
+    if (!isFor(lattice)) {
+      throw new IllegalArgumentException(
+          "Normal modes were computed for another lattice or other walls");
+    }
+  }
+
+  /** Движение решетки в координатах форм от начального состояния {@link #project} */
+  public final class Motion {
+    /** Координаты форм в начальный момент */
+    private final double[] displacement = new double[eigenvalue.length];
+
+    private final double[] velocity = new double[eigenvalue.length];
+
+    private final float[] mass;
+
+    private Motion(float[] mass) {
+      this.mass = mass;
+    }
+
+    /**
+     * Придает грузу скорость в начальный момент, как {@link Physics#pushWeight}
+     *
+     * @param index номер груза
+     * @param velocityX добавка к скорости по X
+     * @param velocityY добавка к скорости по Y
+     */
+    public void push(int index, float velocityX, float velocityY) {
+      int n = eigenvalue.length / 2;
+      for (int k = 0; k < eigenvalue.length; k++) {
+        velocity[k] +=
+            mass[index] * (shape[k][index] * velocityX + shape[k][n + index] * velocityY);
+      }
+    }
+
+    /**
+     * Записывает в решетку положения и скорости в момент {@code time} от начала движения
+     *
+     * @param time время от начального состояния
+     * @param target решетка, для которой посчитаны формы
+     * @throws IllegalArgumentException если формы посчитаны для другой решетки
+     */
+    public void at(double time, LatticeState target) {
+      check(target);
+      int n = target.size();
+      double[] positions = new double[2 * n];
+      double[] velocities = new double[2 * n];
+      for (int k = 0; k < eigenvalue.length; k++) {
+        double lambda = eigenvalue[k];
+        double q;
+        double dq;
+        if (lambda == 0.0) {
+          q = displacement[k] + velocity[k] * time + 0.5 * load[k] * time * time;
+          dq = velocity[k] + load[k] * time;
+        } else {
+          double omega = Math.sqrt(lambda);
+          double equilibrium = load[k] / lambda;
+          double cos = Math.cos(omega * time);
+          double sin = Math.sin(omega * time);
+          double amplitude = displacement[k] - equilibrium;
+          q = equilibrium + amplitude * cos + velocity[k] / omega * sin;
+          dq = -amplitude * omega * sin + velocity[k] * cos;
+        }
+        float[] form = shape[k];
+        for (int r = 0; r < 2 * n; r++) {
+          positions[r] += form[r] * q;
+          velocities[r] += form[r] * dq;
+        }
+      }
+
+      float[] state = target.getState();
+      float[] rest = target.getRestPositions();
+      for (int r = 0; r < 2 * n; r++) {
+        state[r] = (float) (rest[r] + positions[r]);
+        state[2 * n + r] = (float) velocities[r];
+      }
+    }
+  }
+}
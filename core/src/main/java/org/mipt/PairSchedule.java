@@ -0,0 +1,81 @@
+package org.mipt;
+
+import java.util.Arrays;
+
+/**
+ * Делит упорядоченный список пар грузов на пакеты, в каждом из которых никакие две пары не делят
+ * груз. Пара попадает в пакет на единицу позже последнего пакета, где уже встречались ее грузы.
+ * Поэтому каждый груз проходит свои пары в исходном порядке, и разрешение столкновений пакетами
+ * дает тот же результат, что и последовательное, при любом числе потоков.
+ */
+final class PairSchedule {
+  /** Номер последнего пакета, в котором встречался груз, 0 - ни в каком */
+  private int[] massBatch;
+
+  private int[] pairBatch = new int[16];
+
+  /** Номера пар, разложенные по пакетам */
+  private int[] order = new int[16];
+
+  /** Пары пакета {@code b} лежат в {@code order[batchStart[b]..batchStart[b + 1])} */
+  private int[] batchStart = new int[16];
+
+  /** Следующая свободная позиция каждого пакета при раскладке */
+  private int[] cursor = new int[16];
+
+  /**
+   * Раскладывает пары по пакетам
+   *
+   * @param pairA первые грузы пар
+   * @param pairB вторые грузы пар
+   * @param pairs число пар
+   * @param weightsNumber число грузов
+   * @return число пакетов
+   */
+  int build(int[] pairA, int[] pairB, int pairs, int weightsNumber) {
+    if (massBatch == null || massBatch.length != weightsNumber) {
+      massBatch = new int[weightsNumber];
+    } else {
+      Arrays.fill(massBatch, 0);
+    }
+    if (pairBatch.length < pairs) {
+      pairBatch = new int[pairs];
+      order = new int[pairs];
+    }
+
+    int batches = 0;
+    for (int p = 0; p < pairs; p++) {
+      int batch = Math.max(massBatch[pairA[p]], massBatch[pairB[p]]) + 1;
+      massBatch[pairA[p]] = batch;
+      massBatch[pairB[p]] = batch;
+      pairBatch[p] = batch - 1;
+      batches = Math.max(batches, batch);
+    }
+
+    if (batchStart.length < batches + 1) {
+      batchStart = new int[Math.max(batches + 1, batchStart.length * 2)];
+      cursor = new int[batchStart.length];
+    }
+    Arrays.fill(batchStart, 0, batches + 1, 0);
+    for (int p = 0; p < pairs; p++) {
+      batchStart[pairBatch[p] + 1]++;
+    }
+    for (int b = 0; b < batches; b++) {
+      batchStart[b + 1] += batchStart[b];
+    }
+    // Внутри пакета пары идут в исходном порядке
+    System.arraycopy(batchStart, 0, cursor, 0, batches);
+    for (int p = 0; p < pairs; p++) {
+      order[cursor[pairBatch[p]]++] = p;
+    }
+    return batches;
+  }
+
+  int[] getOrder() {
+    return order;
+  }
+
+  int[] getBatchStart() {
+    return batchStart;
+  }
+}
@@ -1,388 +1,588 @@
 package org.mipt;
 
-import com.badlogic.gdx.math.Vector2;
-import java.util.List;
-import org.mipt.entity.Spring;
-import org.mipt.entity.Weight;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import org.mipt.entity.LatticeState;
+import org.mipt.entity.SpringTable;
+import org.mipt.integrator.AdaptiveIntegrator;
+import org.mipt.integrator.Derivative;
+import org.mipt.integrator.Integrator;
+import org.mipt.integrator.IntegratorType;
+import org.mipt.profiling.Phase;
+import org.mipt.profiling.PhaseTimer;
 
 /** Класс для пересчета физики. */
 public class Physics {
-  private static final float EPSILON = 0.0001F;
-  private static float leftWallX;
-  private static float rightWallX;
-  private static float upperWallY;
-  private static float lowerWallY;
-  private static int weightsNumberX;
-  private static int weightsNumberY;
-  private static final int NEIGHBOURS_DEPTH = 3;
+  /** Модель сил пружин */
+  public enum ForceModel {
+    /** Закон Гука по текущей длине пружины: корень и деление на каждую пружину */
+    NONLINEAR,
+    /**
+     * Линеаризация около положения покоя: умножение разреженной матрицы жесткости на смещения.
+     * Годится только для малых колебаний.
+     */
+    LINEAR
+  }
 
-  public Physics() {}
+  /**
+   * Смещение концов пружины в долях ее длины, после которого линейная модель считается
+   * ненадежной
+   */
+  public static final float LINEAR_STRAIN_LIMIT = 0.01f;
 
-  public static void setLeftWallX(float leftWallX) {
-    Physics.leftWallX = leftWallX;
-  }
+  private static final int DEFAULT_ROWS_PER_TASK = 16;
+  private static final int DEFAULT_SUB_STEPS = 12;
 
-  public static void setRightWallX(float rightWallX) {
-    Physics.rightWallX = rightWallX;
-  }
+  /** Наибольшее число пар столкновений, которое разрешает одна задача пула */
+  private static final int PAIRS_PER_TASK = 64;
+
+  /**
+   * Ядро сил пружин, выбранное свойством {@value SpringKernel#KERNEL_PROPERTY} один раз на JVM, так
+   * что предупреждение о замене ядра печатается один раз, а не для каждой физики и плитки. Ядра не
+   * хранят состояния, поэтому одно ядро служит всем физикам и потокам.
+   */
+  private static final SpringKernel SPRING_KERNEL = SpringKernel.select();
+
+  /** Численный метод, которым делается каждый подшаг */
+  private Integrator integrator = IntegratorType.RK4.create();
+
+  /** Правая часть, которую вызывает метод. Ссылка создается один раз, чтобы не выделять память. */
+  private final Derivative derivative = this::makeDiff;
+
+  private int subSteps = DEFAULT_SUB_STEPS;
+
+  /** Поиск пар сталкивающихся грузов */
+  private final SpatialHash broadPhase = new SpatialHash();
+
+  /** Разбиение пар на независимые пакеты для параллельного разрешения */
+  private final PairSchedule pairSchedule = new PairSchedule();
+
+  /** Силы пружин, действующие на их конец {@code from} */
+  private float[] springForceX;
+
+  private float[] springForceY;
+
+  /** Пул для параллельного подсчета производной. Если не задан, производная считается в потоке. */
+  private ForkJoinPool pool;
+
+  /** Максимальное число строк сетки, которое обрабатывает одна задача пула */
+  private int rowsPerTask = DEFAULT_ROWS_PER_TASK;
 
-  public static void setUpperWallY(float upperWallY) {
-    Physics.upperWallY = upperWallY;
+  /** Замеры сил и столкновений, по умолчанию выключены */
+  private PhaseTimer timer = new PhaseTimer();
+
+  /** Журнал толчков и смены параметров, если ведется */
+  private InputJournal journal;
+
+  private ForceModel forceModel = ForceModel.NONLINEAR;
+
+  /** Матрица жесткости линейной модели, собирается при первом шаге и после смены стен */
+  private LinearStiffness stiffness;
+
+  /** Смещение концов пружин после последнего шага в линейной модели */
+  private volatile float linearStrain;
+
+  /** Предупреждение о выходе из линейного режима уже выдано и еще не снято */
+  private boolean outsideLinearRegime;
+
+  private Consumer<String> warnings = System.err::println;
+
+  /** Таблица пружин и решетка последнего шага: при их смене кэш метода сбрасывается */
+  private SpringTable lastSprings;
+
+  private LatticeState lastLattice;
+
+  /** Шаги плитками строк, если заданы */
+  private TiledStepper tiling;
+
+  /** Число найденных пар столкновений за все время, по нему плитки узнают о столкновениях */
+  private long collisionPairs;
+
+  public Physics() {}
+
+  /**
+   * Создает физику с параллельным подсчетом производной
+   *
+   * @param pool пул, на котором производная считается полосами строк сетки
+   */
+  public Physics(ForkJoinPool pool) {
+    this.pool = pool;
   }
 
-  public static void setLowerWallY(float lowerWallY) {
-    Physics.lowerWallY = lowerWallY;
+  public void setPool(ForkJoinPool pool) {
+    this.pool = pool;
   }
 
-  public static void setWeightsNumberX(int weightsNumberX) {
-    Physics.weightsNumberX = weightsNumberX;
+  public void setRowsPerTask(int rowsPerTask) {
+    if (rowsPerTask < 1) {
+      throw new IllegalArgumentException("rowsPerTask must be positive: " + rowsPerTask);
+    }
+    this.rowsPerTask = rowsPerTask;
   }
 
-  public static void setWeightsNumberY(int weightsNumberY) {
-    Physics.weightsNumberY = weightsNumberY;
+  public Integrator getIntegrator() {
+    return integrator;
   }
 
   /**
-   * Просчитывает физику для модели
+   * Меняет численный метод. Можно вызывать между шагами.
    *
-   * @param weights грузы
-   * @param deltaTime dt
+   * @param integrator метод
    */
-  public void applyPhysics(List<Weight> weights, float deltaTime) {
-    float subSteps = 12;
-    float subDelta = deltaTime / subSteps;
-    for (int i = 0; i < subSteps; i++) {
-      calcPhysicsForWeights(weights, subDelta);
+  public void setIntegrator(Integrator integrator) {
+    if (journal != null) {
+      journal.integrator(integrator);
     }
+    this.integrator = integrator;
+    integrator.invalidate();
+  }
+
+  public PhaseTimer getTimer() {
+    return timer;
   }
 
   /**
-   * Просчитывает положения грузов при помощи решения дифференциального уравнения второго порядка
-   * численным методом Рунге-Кутты
+   * Задает таймер, в который пишутся фазы {@link Phase#FORCES} и {@link Phase#COLLISIONS}
    *
-   * @param weights грузы
-   * @param deltaTime дельта времени
+   * @param timer таймер
    */
-  private static void calcPhysicsForWeights(List<Weight> weights, float deltaTime) {
-    float[] state = new float[weights.size() * 4];
-
-    for (int i = 0; i < weights.size(); i++) {
-      int offset = i * 4;
-      state[offset] = weights.get(i).getX();
-      state[offset + 1] = weights.get(i).getY();
-      state[offset + 2] = weights.get(i).getVelocityX();
-      state[offset + 3] = weights.get(i).getVelocityY();
-    }
-
-    state = RT4(state, weights, deltaTime);
+  public void setTimer(PhaseTimer timer) {
+    this.timer = timer;
+  }
 
-    handleCollisions(weights, state);
+  public int getSubSteps() {
+    return subSteps;
+  }
 
-    for (int i = 0; i < weights.size(); i++) {
-      int offset = i * 4;
-      weights.get(i).setX(state[offset]);
-      weights.get(i).setY(state[offset + 1]);
-      weights.get(i).setVelocityX(state[offset + 2]);
-      weights.get(i).setVelocityY(state[offset + 3]);
+  public void setSubSteps(int subSteps) {
+    if (subSteps < 1) {
+      throw new IllegalArgumentException("subSteps must be positive: " + subSteps);
+    }
+    if (journal != null && subSteps != this.subSteps) {
+      journal.subSteps(subSteps);
     }
+    this.subSteps = subSteps;
+  }
+
+  public InputJournal getJournal() {
+    return journal;
   }
 
   /**
-   * Реализует численный метод Рунге-Кутты 4-го порядка
+   * Задает журнал, в который записываются толчки грузов, смена метода, числа подшагов и модели сил
    *
-   * @param state текущее положение грузов
-   * @param weights набор весов
-   * @param h шаг
-   * @return обновленные положения грузов (решение дифференциального уравнения)
+   * @param journal журнал или {@code null}, чтобы не записывать
    */
-  private static float[] RT4(float[] state, List<Weight> weights, float h) {
-    float[] k1 = multipleVector(makeDiff(weights, state), h);
-    float[] k2 = multipleVector(makeDiff(weights, addVectors(state, multipleVector(k1, 0.5f))), h);
-    float[] k3 = multipleVector(makeDiff(weights, addVectors(state, multipleVector(k2, 0.5f))), h);
-    float[] k4 = multipleVector(makeDiff(weights, addVectors(state, k3)), h);
+  public void setJournal(InputJournal journal) {
+    this.journal = journal;
+  }
 
-    float[] newZ =
-        addVectors(
-            addVectors(addVectors(k1, multipleVector(k2, 2.0f)), multipleVector(k3, 2.0f)), k4);
-    state = addVectors(state, multipleVector(newZ, 1.0f / 6.0f));
-    return state;
+  public ForceModel getForceModel() {
+    return forceModel;
   }
 
   /**
-   * Создает вектор из производных x и z
+   * Меняет модель сил пружин. Можно вызывать между шагами.
    *
-   * @param weights набор грузов
-   * @param state текущие положения грузов
-   * @return вектор производных
+   * @param forceModel модель
    */
-  private static float[] makeDiff(List<Weight> weights, float[] state) {
-    int n = weights.size();
-    float[] res = new float[state.length];
-
-    for (int i = 0; i < n; i++) {
-      int off = i * 4;
-
-      float vx = state[off + 2];
-      float vy = state[off + 3];
-
-      Vector2 a = accelFromState(i, weights, state);
-
-      res[off] = vx;
-      res[off + 1] = vy;
-      res[off + 2] = a.x;
-      res[off + 3] = a.y;
+  public void setForceModel(ForceModel forceModel) {
+    if (journal != null && forceModel != this.forceModel) {
+      journal.forceModel(forceModel);
     }
-    return res;
+    this.forceModel = forceModel;
+    integrator.invalidate();
+    outsideLinearRegime = false;
+    linearStrain = 0f;
   }
 
-  private static Vector2 accelFromState(int idx, List<Weight> weights, float[] state) {
-    final int nx = weightsNumberX;
-    final int ny = weightsNumberY;
-    int j = idx / nx;
-    int i = idx % nx;
-
-    Weight w = weights.get(idx);
-    float m = w.getMass();
-
-    int off = idx * 4;
-    float x = state[off];
-    float y = state[off + 1];
-    float wWidth = w.getWidth();
-    float wHeight = w.getHeight();
-
-    Vector2 leftEnd = new Vector2(x, y + wHeight / 2f);
-    Vector2 rightEnd = new Vector2(x + wWidth, y + wHeight / 2f);
-    Vector2 bottomEnd = new Vector2(x + wWidth / 2f, y);
-    Vector2 topEnd = new Vector2(x + wWidth / 2f, y + wHeight);
-
-    Vector2 force = new Vector2();
+  /**
+   * Наибольшее смещение концов пружин в долях их длины после последнего шага в линейной модели
+   */
+  public float getLinearStrain() {
+    return linearStrain;
+  }
 
-    if (w.getLeftSpring() != null) {
-      Spring s = w.getLeftSpring();
-      Vector2 other =
-          (i == 0)
-              ? new Vector2(leftWallX, y + wHeight / 2f)
-              : rightEdgeCenterOf(i - 1, j, nx, weights, state);
+  /**
+   * Задает получателя предупреждений. Предупреждение о выходе из линейного режима выдается один
+   * раз, когда смещение превышает {@value #LINEAR_STRAIN_LIMIT}, и снова только после того, как
+   * оно упало ниже половины порога.
+   *
+   * @param warnings получатель, по умолчанию {@code System.err}
+   */
+  public void setWarnings(Consumer<String> warnings) {
+    this.warnings = warnings;
+  }
 
-      force.add(hooke(other, leftEnd, s.getK(), s.getLength()));
+  /**
+   * Включает шаги плитками: решетка делится на полосы по {@code tileRows} строк сетки, и каждая
+   * полоса вместе с соседними строками проходит {@code fusedSubSteps} подшагов подряд, пока ее
+   * данные в кэше. С пулом плитки считаются параллельно. Результат побитно совпадает со счетом без
+   * плиток.
+   *
+   * <p>С каждой стороны плитки берется {@code fusedSubSteps * e + 1} строк соседей, где {@code e}
+   * - число вычислений сил на шаг метода ({@link IntegratorType#getEvaluations()}), и они
+   * считаются в каждой плитке заново. Лишняя работа - около {@code 2 * (fusedSubSteps * e + 1) /
+   * tileRows}: для RK4 с {@code tileRows = 64} и {@code fusedSubSteps = 1} это 16%. Если все окна
+   * вместе больше двух решеток, решетка считается без плиток. Проход, в котором нашлись
+   * столкновения, повторяется без плиток, и следующие проходы идут без плиток, пока столкновения
+   * не прекратятся, так что при сильных колебаниях плитки не ускоряют счет. Метод с
+   * автоматическим выбором шага считается без плиток. Фазы сил и столкновений внутри плиток не
+   * замеряются.
+   *
+   * @param tileRows число строк в плитке, 0 - считать решетку целиком
+   * @param fusedSubSteps число подшагов, которые плитка проходит подряд
+   */
+  public void setTiling(int tileRows, int fusedSubSteps) {
+    if (tileRows < 0) {
+      throw new IllegalArgumentException("tileRows must not be negative: " + tileRows);
     }
-
-    if (w.getRightSpring() != null) {
-      Spring s = w.getRightSpring();
-      Vector2 other =
-          (i == nx - 1)
-              ? new Vector2(rightWallX, y + wHeight / 2f)
-              : leftEdgeCenterOf(i + 1, j, nx, weights, state);
-
-      force.add(hooke(other, rightEnd, s.getK(), s.getLength()));
+    if (fusedSubSteps < 1) {
+      throw new IllegalArgumentException("fusedSubSteps must be positive: " + fusedSubSteps);
     }
+    tiling = tileRows == 0 ? null : new TiledStepper(tileRows, fusedSubSteps);
+  }
 
-    if (w.getLowerSpring() != null) {
-      Spring s = w.getLowerSpring();
-      Vector2 other =
-          (j == 0)
-              ? new Vector2(x + wWidth / 2f, lowerWallY)
-              : topEdgeCenterOf(i, j - 1, nx, weights, state);
-
-      force.add(hooke(other, bottomEnd, s.getK(), s.getLength()));
+  /**
+   * Просчитывает физику для модели. Метод с автоматическим выбором шага сам дробит {@code
+   * deltaTime}, иначе шаг делится на {@link #getSubSteps()} равных подшагов. Столкновения
+   * обрабатываются после каждого подшага.
+   *
+   * @param lattice состояние решетки
+   * @param deltaTime dt
+   */
+  public void applyPhysics(LatticeState lattice, float deltaTime) {
+    if (lattice != lastLattice || lattice.getSprings() != lastSprings) {
+      // Стены или решетка сменились, а положения могли остаться прежними
+      integrator.invalidate();
+      lastLattice = lattice;
+      lastSprings = lattice.getSprings();
     }
-
-    if (w.getUpperSpring() != null) {
-      Spring s = w.getUpperSpring();
-      Vector2 other =
-          (j == ny - 1)
-              ? new Vector2(x + wWidth / 2f, upperWallY)
-              : bottomEdgeCenterOf(i, j + 1, nx, weights, state);
-
-      force.add(hooke(other, topEnd, s.getK(), s.getLength()));
+    if (integrator instanceof AdaptiveIntegrator) {
+      AdaptiveIntegrator adaptive = (AdaptiveIntegrator) integrator;
+      float remaining = deltaTime;
+      while (remaining > 0f) {
+        remaining -= adaptive.advance(lattice, remaining, derivative);
+        handleCollisions(lattice);
+      }
+    } else if (tiling != null && tiling.prepare(lattice, integrator, forceModel) > 1) {
+      applyTiled(lattice, deltaTime / subSteps);
+    } else {
+      float subDelta = deltaTime / subSteps;
+      for (int i = 0; i < subSteps; i++) {
+        calcPhysicsForLattice(lattice, subDelta);
+      }
     }
 
-    if (w.getUpperLeftSpring() != null && i > 0 && j < ny - 1) {
-      Spring s = w.getUpperLeftSpring();
-      Vector2 other = topEdgeCenterOf(i - 1, j + 1, nx, weights, state);
-      force.add(hooke(other, topEnd, s.getK(), s.getLength()));
+    if (forceModel == ForceModel.LINEAR) {
+      checkLinearRegime(lattice);
     }
-    if (w.getUpperRightSpring() != null && i < nx - 1 && j < ny - 1) {
-      Spring s = w.getUpperRightSpring();
-      Vector2 other = topEdgeCenterOf(i + 1, j + 1, nx, weights, state);
-      force.add(hooke(other, topEnd, s.getK(), s.getLength()));
-    }
-    if (w.getLowerLeftSpring() != null && i > 0 && j > 0) {
-      Spring s = w.getLowerLeftSpring();
-      Vector2 other = bottomEdgeCenterOf(i - 1, j - 1, nx, weights, state);
-      force.add(hooke(other, bottomEnd, s.getK(), s.getLength()));
-    }
-    if (w.getLowerRightSpring() != null && i < nx - 1 && j > 0) {
-      Spring s = w.getLowerRightSpring();
-      Vector2 other = bottomEdgeCenterOf(i + 1, j - 1, nx, weights, state);
-      force.add(hooke(other, bottomEnd, s.getK(), s.getLength()));
-    }
-
-    return force.scl(1f / m);
   }
 
-  private static Vector2 hooke(Vector2 from, Vector2 to, float k, float restLen) {
-    Vector2 d = to.cpy().sub(from);
-    float len = d.len();
-    if (len < EPSILON) return new Vector2();
-    float ext = len - restLen;
-    return d.scl((-k * ext) / len);
+  /**
+   * Проводит подшаги проходами по плиткам {@link #tiling}, уже подготовленным для решетки. Проход,
+   * в котором окна нашли столкновения, повторяется без плиток: цепочка столкновений может передать
+   * влияние дальше соседних строк. Следующие проходы идут без плиток, пока столкновения не
+   * прекратятся.
+   */
+  private void applyTiled(LatticeState lattice, float subDelta) {
+    int tiles = tiling.size();
+    for (int done = 0; done < subSteps; done += tiling.getFusedSubSteps()) {
+      int count = Math.min(tiling.getFusedSubSteps(), subSteps - done);
+      if (tiling.isColliding()) {
+        long pairs = collisionPairs;
+        advance(lattice, subDelta, count);
+        tiling.setColliding(collisionPairs != pairs);
+        continue;
+      }
+      tiling.beginPass();
+      if (pool == null) {
+        for (int t = 0; t < tiles; t++) {
+          tiling.advance(t, subDelta, count);
+        }
+      } else {
+        pool.invoke(
+            new Stripe(
+                0,
+                tiles,
+                1,
+                (from, to) -> {
+                  for (int t = from; t < to; t++) {
+                    tiling.advance(t, subDelta, count);
+                  }
+                }));
+      }
+      if (tiling.endPass()) {
+        advance(lattice, subDelta, count);
+      }
+    }
   }
 
-  private static Vector2 leftEdgeCenterOf(int i, int j, int nx, List<Weight> w, float[] st) {
-    int idx = j * nx + i;
-    int off = idx * 4;
-    float x = st[off];
-    float y = st[off + 1];
-    return new Vector2(x, y + w.get(idx).getHeight() / 2f);
+  /** Следит, чтобы смещения оставались в пределах, где линейная модель верна */
+  private void checkLinearRegime(LatticeState lattice) {
+    float strain = stiffness(lattice).maxStrain(lattice.getState());
+    linearStrain = strain;
+    if (!outsideLinearRegime && strain > LINEAR_STRAIN_LIMIT) {
+      outsideLinearRegime = true;
+      warnings.accept(
+          String.format(
+              "Linear force model: spring ends moved by %.3f of spring length (limit %.3f),"
+                  + " results are no longer accurate",
+              strain, LINEAR_STRAIN_LIMIT));
+    } else if (outsideLinearRegime && strain < LINEAR_STRAIN_LIMIT / 2) {
+      outsideLinearRegime = false;
+    }
   }
 
-  private static Vector2 rightEdgeCenterOf(int i, int j, int nx, List<Weight> w, float[] st) {
-    int idx = j * nx + i;
-    int off = idx * 4;
-    float x = st[off];
-    float y = st[off + 1];
-    Weight wi = w.get(idx);
-    return new Vector2(x + wi.getWidth(), y + wi.getHeight() / 2f);
+  private LinearStiffness stiffness(LatticeState lattice) {
+    if (stiffness == null || !stiffness.isFor(lattice)) {
+      stiffness = LinearStiffness.assemble(lattice);
+    }
+    return stiffness;
   }
 
-  private static Vector2 bottomEdgeCenterOf(int i, int j, int nx, List<Weight> w, float[] st) {
-    int idx = j * nx + i;
-    int off = idx * 4;
-    float x = st[off];
-    float y = st[off + 1];
-    Weight wi = w.get(idx);
-    return new Vector2(x + wi.getWidth() / 2f, y);
+  /**
+   * Просчитывает положения грузов при помощи решения дифференциального уравнения второго порядка
+   * выбранным численным методом
+   *
+   * @param lattice состояние решетки
+   * @param deltaTime дельта времени
+   */
+  private void calcPhysicsForLattice(LatticeState lattice, float deltaTime) {
+    integrator.step(lattice, deltaTime, derivative);
+
+    handleCollisions(lattice);
   }
 
-  private static Vector2 topEdgeCenterOf(int i, int j, int nx, List<Weight> w, float[] st) {
-    int idx = j * nx + i;
-    int off = idx * 4;
-    float x = st[off];
-    float y = st[off + 1];
-    Weight wi = w.get(idx);
-    return new Vector2(x + wi.getWidth() / 2f, y + wi.getHeight());
+  /** Число найденных пар столкновений с создания физики */
+  long getCollisionPairs() {
+    return collisionPairs;
   }
 
   /**
-   * Умножает вектор на число
-   *
-   * @param vector вектор
-   * @param multiplier число, на которое нужно умножить вектор
-   * @return результирующий вектор
+   * Проводит решетку через {@code count} подшагов длины {@code subDelta}, как {@link
+   * #applyPhysics} без плиток. Так {@link TiledStepper} шагает свои окна.
    */
-  private static float[] multipleVector(float[] vector, float multiplier) {
-    float[] diffCopy = vector.clone();
-    for (int i = 0; i < vector.length; i++) {
-      diffCopy[i] = vector[i] * multiplier;
+  void advance(LatticeState lattice, float subDelta, int count) {
+    for (int i = 0; i < count; i++) {
+      calcPhysicsForLattice(lattice, subDelta);
     }
-
-    return diffCopy;
   }
 
   /**
-   * Складывает два вектора
+   * Создает вектор из производных x и z
    *
-   * @param vector1 первый вектор
-   * @param vector2 второй вектор
-   * @return результат сложения
+   * @param lattice состояние решетки
+   * @param state текущие положения грузов
+   * @param res вектор, в который записываются производные
    */
-  private static float[] addVectors(float[] vector1, float[] vector2) {
-    float[] res = new float[vector1.length];
-    for (int i = 0; i < vector1.length; i++) {
-      res[i] = vector2[i] + vector1[i];
+  private void makeDiff(LatticeState lattice, float[] state, float[] res) {
+    long start = timer.start();
+    int n = lattice.size();
+    int vxOff = lattice.offset(LatticeState.VX);
+    int vyOff = lattice.offset(LatticeState.VY);
+
+    System.arraycopy(state, vxOff, res, lattice.offset(LatticeState.X), n);
+    System.arraycopy(state, vyOff, res, lattice.offset(LatticeState.Y), n);
+
+    int rows = lattice.getWeightsNumberY();
+    if (forceModel == ForceModel.LINEAR) {
+      LinearStiffness linear = stiffness(lattice);
+      if (pool == null || rows <= rowsPerTask) {
+        linear.accelerations(state, res, 0, rows);
+      } else {
+        pool.invoke(
+            new Stripe(
+                0, rows, rowsPerTask, (from, to) -> linear.accelerations(state, res, from, to)));
+      }
+      timer.stop(Phase.FORCES, start);
+      return;
     }
-    return res;
-  }
-
-  /** Обрабатывает коллизии грузов при абсолютно упругом ударе */
-  private static void handleCollisions(List<Weight> weights, float[] state) {
-    int n = weights.size();
-    float[] newX = new float[n];
-    float[] newY = new float[n];
-    float[] newVx = new float[n];
-    float[] newVy = new float[n];
-    for (int i = 0; i < n; i++) {
-      int offset = i * 4;
-      newX[i] = state[offset];
-      newY[i] = state[offset + 1];
-      newVx[i] = state[offset + 2];
-      newVy[i] = state[offset + 3];
+
+    SpringTable springs = lattice.getSprings();
+    if (springForceX == null || springForceX.length != springs.size()) {
+      springForceX = new float[springs.size()];
+      springForceY = new float[springs.size()];
     }
 
-    for (int j = 0; j < weightsNumberY; ++j) {
-      for (int i = 0; i < weightsNumberX; ++i) {
-        int index = j * weightsNumberX + i;
-        for (int x = 0; x <= NEIGHBOURS_DEPTH && x + i < weightsNumberX; ++x) {
-          for (int y = 0; y + x <= NEIGHBOURS_DEPTH && y + j < weightsNumberY; ++y) {
-            int neighbour = (j + y) * weightsNumberX + x + i;
-            if (isColliding(
-                weights.get(index),
-                newX[index],
-                newY[index],
-                weights.get(neighbour),
-                newX[neighbour],
-                newY[neighbour])) {
-              resolveCollision(
-                  weights.get(index),
-                  newX[index],
-                  newY[index],
-                  weights.get(neighbour),
-                  newX[neighbour],
-                  newY[neighbour],
-                  newVx,
-                  newVy,
-                  index,
-                  neighbour);
-            }
-          }
-        }
-      }
+    if (pool == null || rows <= rowsPerTask) {
+      SPRING_KERNEL.springForces(springs, state, n, springForceX, springForceY, 0, springs.size());
+      accelForRows(lattice, springForceX, springForceY, res, 0, rows);
+    } else {
+      int springsPerTask = Math.max(1, springs.size() / rows * rowsPerTask);
+      pool.invoke(
+          new Stripe(
+              0,
+              springs.size(),
+              springsPerTask,
+              (from, to) ->
+                  SPRING_KERNEL.springForces(
+                      springs, state, n, springForceX, springForceY, from, to)));
+      pool.invoke(
+          new Stripe(
+              0,
+              rows,
+              rowsPerTask,
+              (from, to) -> accelForRows(lattice, springForceX, springForceY, res, from, to)));
     }
+    timer.stop(Phase.FORCES, start);
+  }
 
-    for (int i = 0; i < n; i++) {
-      if (newX[i] < leftWallX) {
-        newX[i] = leftWallX;
-        newVx[i] = -newVx[i];
+  /**
+   * Собирает ускорения грузов в строках сетки {@code [fromRow, toRow)} из сил пружин. Каждый груз
+   * пишет только свои ячейки {@code res}, поэтому строки можно считать независимо.
+   */
+  private static void accelForRows(
+      LatticeState lattice, float[] fx, float[] fy, float[] res, int fromRow, int toRow) {
+    int nx = lattice.getWeightsNumberX();
+    int vxOff = lattice.offset(LatticeState.VX);
+    int vyOff = lattice.offset(LatticeState.VY);
+    float[] mass = lattice.getMass();
+    SpringTable springs = lattice.getSprings();
+    int[] start = springs.getIncidenceStart();
+    int[] edge = springs.getIncidenceEdge();
+    float[] sign = springs.getIncidenceSign();
+
+    for (int i = fromRow * nx; i < toRow * nx; i++) {
+      float ax = 0f;
+      float ay = 0f;
+      for (int p = start[i]; p < start[i + 1]; p++) {
+        int e = edge[p];
+        ax += sign[p] * fx[e];
+        ay += sign[p] * fy[e];
       }
+      float invMass = 1f / mass[i];
+      res[vxOff + i] = ax * invMass;
+      res[vyOff + i] = ay * invMass;
+    }
+  }
 
-      if (newX[i] + weights.get(i).getWidth() > rightWallX) {
-        newX[i] = rightWallX - weights.get(i).getWidth();
-        newVx[i] = -newVx[i];
-      }
+  /** Обработчик диапазона индексов {@code [from, to)} */
+  private interface RangeAction {
+    void run(int from, int to);
+  }
 
-      if (newY[i] < lowerWallY) {
-        newY[i] = lowerWallY;
-        newVy[i] = -newVy[i];
-      }
+  /** Задача пула, которая делит диапазон пополам, пока он не станет достаточно узким */
+  private static final class Stripe extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
 
-      if (newY[i] + weights.get(i).getHeight() > upperWallY) {
-        newY[i] = upperWallY - weights.get(i).getHeight();
-        newVy[i] = -newVy[i];
-      }
+    private final int from;
+    private final int to;
+    private final int grain;
+    private final RangeAction action;
+
+    Stripe(int from, int to, int grain, RangeAction action) {
+      this.from = from;
+      this.to = to;
+      this.grain = grain;
+      this.action = action;
     }
 
-    for (int i = 0; i < n; i++) {
-      int offset = i * 4;
-      state[offset + 2] = newVx[i];
-      state[offset + 3] = newVy[i];
+    @Override
+    protected void compute() {
+      if (to - from <= grain) {
+        action.run(from, to);
+        return;
+      }
+      int mid = (from + to) >>> 1;
+      invokeAll(new Stripe(from, mid, grain, action), new Stripe(mid, to, grain, action));
     }
   }
 
   /**
-   * Проверка коллизий грузов
+   * Обрабатывает коллизии грузов при абсолютно упругом ударе. Пары кандидатов ищутся в мировых
+   * координатах через {@link SpatialHash} и разрешаются по порядку номеров грузов. С пулом пары
+   * разрешаются пакетами {@link PairSchedule} без общих грузов, результат совпадает с
+   * последовательным.
    *
-   * @param first - первый груз
-   * @param x1 - координата левая по x
-   * @param y1 - координата нижняя по y
+   * <p>Вызывается после каждого подшага {@link #applyPhysics}. Открыт для замеров фазы столкновений
+   * отдельно от шага интегратора.
+   *
+   * @param lattice состояние решетки
    */
-  private static boolean isColliding(
-      Weight first, float x1, float y1, Weight second, float x2, float y2) {
+  public void handleCollisions(LatticeState lattice) {
+    long start = timer.start();
+    int n = lattice.size();
+    float[] width = lattice.getWidth();
+    float[] height = lattice.getHeight();
+    float[] mass = lattice.getMass();
+
+    int pairs = broadPhase.findPairs(lattice);
+    collisionPairs += pairs;
+    int[] pairA = broadPhase.getPairA();
+    int[] pairB = broadPhase.getPairB();
+    if (pool == null || pairs <= PAIRS_PER_TASK) {
+      for (int p = 0; p < pairs; p++) {
+        resolveCollision(lattice, mass, width, height, pairA[p], pairB[p]);
+      }
+    } else {
+      int batches = pairSchedule.build(pairA, pairB, pairs, n);
+      int[] order = pairSchedule.getOrder();
+      int[] batchStart = pairSchedule.getBatchStart();
+      RangeAction resolve =
+          (from, to) -> {
+            for (int k = from; k < to; k++) {
+              int p = order[k];
+              resolveCollision(lattice, mass, width, height, pairA[p], pairB[p]);
+            }
+          };
+      for (int b = 0; b < batches; b++) {
+        int from = batchStart[b];
+        int to = batchStart[b + 1];
+        if (to - from <= PAIRS_PER_TASK) {
+          resolve.run(from, to);
+        } else {
+          pool.invoke(new Stripe(from, to, PAIRS_PER_TASK, resolve));
+        }
+      }
+    }
 
-    return x1 < x2 + second.getWidth()
-        && x1 + first.getWidth() > x2
-        && y1 < y2 + second.getHeight()
-        && y1 + first.getHeight() > y2;
+    int rows = lattice.getWeightsNumberY();
+    if (pool == null || rows <= rowsPerTask) {
+      bounceOffWalls(lattice, 0, rows);
+    } else {
+      pool.invoke(
+          new Stripe(0, rows, rowsPerTask, (from, to) -> bounceOffWalls(lattice, from, to)));
+    }
+    timer.stop(Phase.COLLISIONS, start);
+  }
+
+  /** Отражает от стен грузы в строках сетки {@code [fromRow, toRow)} */
+  private static void bounceOffWalls(LatticeState lattice, int fromRow, int toRow) {
+    int nx = lattice.getWeightsNumberX();
+    float[] state = lattice.getState();
+    float[] width = lattice.getWidth();
+    float[] height = lattice.getHeight();
+    int yOff = lattice.offset(LatticeState.Y);
+    int vxOff = lattice.offset(LatticeState.VX);
+    int vyOff = lattice.offset(LatticeState.VY);
+
+    float leftWallX = lattice.getLeftWallX();
+    float rightWallX = lattice.getRightWallX();
+    float lowerWallY = lattice.getLowerWallY();
+    float upperWallY = lattice.getUpperWallY();
+    for (int i = fromRow * nx; i < toRow * nx; i++) {
+      float x = state[i];
+      float y = state[yOff + i];
+      if (x < leftWallX) {
+        x = leftWallX;
+        state[vxOff + i] = -state[vxOff + i];
+      }
+
+      if (x + width[i] > rightWallX) {
+        state[vxOff + i] = -state[vxOff + i];
+      }
+
+      if (y < lowerWallY) {
+        y = lowerWallY;
+        state[vyOff + i] = -state[vyOff + i];
+      }
+
+      if (y + height[i] > upperWallY) {
+        state[vyOff + i] = -state[vyOff + i];
+      }
+    }
   }
 
   /**
@@ -390,66 +590,65 @@ public class Physics {
    * импульса и энергии <a href="https://en.wikipedia.org/wiki/Elastic_collision">...</a>
    */
   private static void resolveCollision(
-      Weight first,
-      float x1,
-      float y1,
-      Weight second,
-      float x2,
-      float y2,
-      float[] vx,
-      float[] vy,
-      int i,
-      int j) {
-    Vector2 v1 = new Vector2(vx[i], vy[i]);
-    Vector2 v2 = new Vector2(vx[j], vy[j]);
-
-    Vector2 center1 = new Vector2(x1 + first.getWidth() / 2, y1 + first.getHeight() / 2);
-    Vector2 center2 = new Vector2(x2 + second.getWidth() / 2, y2 + second.getHeight() / 2);
-
-    Vector2 normal = center2.cpy().sub(center1).nor();
-
-    Vector2 relativeVelocity = v1.cpy().sub(v2);
+      LatticeState lattice, float[] mass, float[] width, float[] height, int i, int j) {
+    float[] state = lattice.getState();
+    int yOff = lattice.offset(LatticeState.Y);
+    int vxOff = lattice.offset(LatticeState.VX);
+    int vyOff = lattice.offset(LatticeState.VY);
+
+    float v1x = state[vxOff + i];
+    float v1y = state[vyOff + i];
+    float v2x = state[vxOff + j];
+    float v2y = state[vyOff + j];
+
+    float normalX = (state[j] + width[j] / 2) - (state[i] + width[i] / 2);
+    float normalY = (state[yOff + j] + height[j] / 2) - (state[yOff + i] + height[i] / 2);
+    float normalLen = (float) Math.sqrt(normalX * normalX + normalY * normalY);
+    if (normalLen != 0) {
+      normalX /= normalLen;
+      normalY /= normalLen;
+    }
 
-    float velocityAlongNormal = relativeVelocity.dot(normal);
+    float velocityAlongNormal = (v1x - v2x) * normalX + (v1y - v2y) * normalY;
 
-    float m1 = first.getMass();
-    float m2 = second.getMass();
+    float m1 = mass[i];
+    float m2 = mass[j];
 
     float impulseScalar = -2 * velocityAlongNormal / (1 / m1 + 1 / m2);
 
-    Vector2 impulse = normal.cpy().scl(impulseScalar);
+    float impulseX = normalX * impulseScalar;
+    float impulseY = normalY * impulseScalar;
 
-    Vector2 v1New = v1.cpy().add(impulse.cpy().scl(1 / m1));
-    Vector2 v2New = v2.cpy().sub(impulse.cpy().scl(1 / m2));
-
-    vx[i] = v1New.x;
-    vy[i] = v1New.y;
-    vx[j] = v2New.x;
-    vy[j] = v2New.y;
+    state[vxOff + i] = v1x + impulseX * (1 / m1);
+    state[vyOff + i] = v1y + impulseY * (1 / m1);
+    state[vxOff + j] = v2x - impulseX * (1 / m2);
+    state[vyOff + j] = v2y - impulseY * (1 / m2);
   }
 
   /**
    * Придает начальное ускорение первому грузу
    *
-   * @param weights набор грузов
+   * @param lattice состояние решетки
    * @param velocityX ускорение, которое нужно придать грузу по координате X
    * @param velocityY ускорение, которое нужно придать грузу по координате Y
    */
-  public void pushFirstWeight(List<Weight> weights, float velocityX, float velocityY) {
-    weights.get(0).setVelocityX(weights.get(0).getVelocityX() + velocityX);
-    weights.get(0).setVelocityY(weights.get(0).getVelocityY() + velocityY);
+  public void pushFirstWeight(LatticeState lattice, float velocityX, float velocityY) {
+    pushWeight(lattice, 0, velocityX, velocityY);
   }
 
   /**
    * Придает ускорение выбранному грузу
    *
-   * @param weights набор грузов
+   * @param lattice состояние решетки
    * @param index номер груза из списка
    * @param velocityX ускорение, которое нужно придать грузу по координате X
    * @param velocityY ускорение, которое нужно придать грузу по координате Y
    */
-  public void pushWeight(List<Weight> weights, int index, float velocityX, float velocityY) {
-    weights.get(index).setVelocityX(weights.get(index).getVelocityX() + velocityX);
-    weights.get(index).setVelocityY(weights.get(index).getVelocityY() + velocityY);
+  public void pushWeight(LatticeState lattice, int index, float velocityX, float velocityY) {
+    if (journal != null) {
+      journal.push(index, velocityX, velocityY);
+    }
+    lattice.setVelocityX(index, lattice.getVelocityX(index) + velocityX);
+    lattice.setVelocityY(index, lattice.getVelocityY(index) + velocityY);
   }
 }
@@ -1,141 +1,98 @@
 package org.mipt;
 
-import com.badlogic.gdx.math.Vector2;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.util.List;
-import org.mipt.entity.Spring;
-import org.mipt.entity.Weight;
+import java.nio.file.Paths;
+import org.mipt.entity.LatticeState;
+import org.mipt.io.TrajectoryFormat;
+import org.mipt.observer.CoordinateCsvObserver;
+import org.mipt.observer.KineticEnergyObserver;
+import org.mipt.observer.ObserverPipeline;
+import org.mipt.observer.TotalEnergyObserver;
+import org.mipt.observer.TrajectoryObserver;
+import org.mipt.observer.WeightMask;
 
-/** Логер класса Physics. Собирает статистику (например положения) в csv файлы. */
-public class PhysicsLogger {
-
-  private final FileWriter xWriter;
-  private final FileWriter yWriter;
-  private final FileWriter energyWriter;
-  private final FileWriter borderWriter;
-
-  public PhysicsLogger(String filename, int weightsNumber) throws IOException {
-    xWriter = new FileWriter(filename + "_xPos.csv");
-    yWriter = new FileWriter(filename + "_yPos.csv");
-    borderWriter = new FileWriter(filename + "_border.csv");
-    energyWriter = new FileWriter(filename + "_energy.csv");
-    xWriter.write("time");
-    yWriter.write("time");
-    energyWriter.write("time,energy\n");
-    borderWriter.write("time,energy\n");
-    for (int i = 0; i < weightsNumber; i++) {
-      xWriter.write(",x" + i);
-      yWriter.write(",y" + i);
-    }
-    xWriter.write("\n");
-    yWriter.write("\n");
-  }
+/**
+ * Логер класса Physics. Стандартный набор наблюдателей: положения грузов в xPos/yPos csv, полная
+ * энергия в energy csv и кинетическая энергия грузов у стен в border csv.
+ */
+public class PhysicsLogger extends ObserverPipeline {
 
   /**
-   * Собирает позиции грузов по Y координате
+   * Создает логер, который пишет положения всех грузов на каждом шаге
    *
-   * @param weights грузы
-   * @param time текущий момент времени
-   * @throws IOException при ошибке записи
+   * @param filename префикс файлов
+   * @param lattice решетка
+   * @throws IOException при ошибке создания файлов
    */
-  public void logY(List<Weight> weights, float time) throws IOException {
-    yWriter.write(Float.toString(time));
-    for (Weight w : weights) {
-      yWriter.write("," + w.getY());
-    }
-    yWriter.write("\n");
+  public PhysicsLogger(String filename, LatticeState lattice) throws IOException {
+    this(filename, lattice, WeightMask.all(lattice.size()), 1);
   }
 
   /**
-   * Собирает позиции грузов по X координате
+   * Создает логер с прореживанием и областью интереса для положений
    *
-   * @param weights грузы
-   * @param time текущий момент времени
-   * @throws IOException при ошибке записи
+   * @param filename префикс файлов
+   * @param lattice решетка
+   * @param positions грузы, положения которых записываются
+   * @param every записывается каждый {@code every}-й шаг
+   * @throws IOException при ошибке создания файлов
    */
-  public void logX(List<Weight> weights, float time) throws IOException {
-    xWriter.write(Float.toString(time));
-    for (Weight w : weights) {
-      xWriter.write("," + w.getX());
-    }
-    xWriter.write("\n");
+  public PhysicsLogger(String filename, LatticeState lattice, WeightMask positions, int every)
+      throws IOException {
+    add(new CoordinateCsvObserver(filename + "_xPos.csv", LatticeState.X, positions), every);
+    add(new CoordinateCsvObserver(filename + "_yPos.csv", LatticeState.Y, positions), every);
+    addEnergies(filename, lattice, every);
   }
 
+  private PhysicsLogger() {}
+
   /**
-   * Собирает показатели полной энергии системы
+   * Создает логер, который пишет положения грузов в бинарную траекторию {@code
+   * filename_trajectory.bin} (см. {@link TrajectoryFormat}), а энергии - в csv
    *
-   * @param weights веса
-   * @param springs пружины
-   * @throws IOException при ошибке записи
+   * @param filename префикс файлов
+   * @param lattice решетка
+   * @param dt фиксированный шаг по времени
+   * @param every записывается каждый {@code every}-й шаг
+   * @return логер
+   * @throws IOException при ошибке создания файлов
    */
-  public void logTotalEnergy(List<Weight> weights, List<Spring> springs, float time)
+  public static PhysicsLogger binary(String filename, LatticeState lattice, float dt, int every)
       throws IOException {
-    float total = 0f;
-
-    // Кинетическая энергия всех масс
-    for (Weight w : weights) {
-      float vx = w.getVelocityX();
-      float vy = w.getVelocityY();
-      total += 0.5f * w.getMass() * (vx * vx + vy * vy);
-    }
-
-    // Потенциальная энергия всех пружин
-    for (Spring s : springs) {
-      Vector2 a = null;
-      Vector2 b = null;
-      if (s.getLeftAnchor() != null && s.getRightAnchor() != null) {
-        a = s.getLeftAnchor();
-        b = s.getRightAnchor();
-      } else if (s.getLowerAnchor() != null && s.getUpperAnchor() != null) {
-        a = s.getLowerAnchor();
-        b = s.getUpperAnchor();
-      } else if (s.getAnchorA() != null && s.getAnchorB() != null) {
-        a = s.getAnchorA();
-        b = s.getAnchorB();
-      }
-      if (a == null || b == null) continue;
-
-      float currentLength = a.dst(b);
-      float restLength = s.getLength();
-      float dx = currentLength - restLength;
-      total += 0.5f * s.getK() * dx * dx;
-    }
-
-    energyWriter.write(Float.toString(time));
-    energyWriter.write("," + total);
-    energyWriter.write("\n");
+    PhysicsLogger logger = new PhysicsLogger();
+    logger.add(
+        new TrajectoryObserver(
+            Paths.get(filename + "_trajectory.bin"),
+            lattice,
+            dt * every,
+            TrajectoryFormat.POSITIONS),
+        every);
+    logger.addEnergies(filename, lattice, every);
+    return logger;
   }
 
   /**
-   * Суммирует кинетическую энергию грузов у границ сетки. Позволяет анализировать прохождение и
-   * отражение волны у стен.
+   * Создает логер, который пишет только энергии в csv, без положений
    *
-   * @param weights веса
-   * @throws IOException при ошибке записи
+   * @param filename префикс файлов
+   * @param lattice решетка
+   * @param every записывается каждый {@code every}-й шаг
+   * @return логер
+   * @throws IOException при ошибке создания файлов
    */
-  public void logBorderKineticEnergy(
-      List<Weight> weights, int weightsNumberX, int weightsNumberY, float time) throws IOException {
-    float total = 0f;
-    for (int j = 0; j < weightsNumberY; j++) {
-      for (int i = 0; i < weightsNumberX; i++) {
-        boolean isBorder = (i == 0 || i == weightsNumberX - 1 || j == 0 || j == weightsNumberY - 1);
-        if (!isBorder) continue;
-        int idx = j * weightsNumberX + i;
-        Weight w = weights.get(idx);
-        float vx = w.getVelocityX();
-        float vy = w.getVelocityY();
-        total += 0.5f * w.getMass() * (vx * vx + vy * vy);
-      }
-    }
-
-    borderWriter.write(time + "," + total + "\n");
+  public static PhysicsLogger energies(String filename, LatticeState lattice, int every)
+      throws IOException {
+    PhysicsLogger logger = new PhysicsLogger();
+    logger.addEnergies(filename, lattice, every);
+    return logger;
   }
 
-  public void close() throws IOException {
-    xWriter.close();
-    yWriter.close();
-    energyWriter.close();
-    borderWriter.close();
+  private void addEnergies(String filename, LatticeState lattice, int every) throws IOException {
+    add(new TotalEnergyObserver(filename + "_energy.csv"), every);
+    add(
+        new KineticEnergyObserver(
+            filename + "_border.csv",
+            WeightMask.border(lattice.getWeightsNumberX(), lattice.getWeightsNumberY())),
+        every);
   }
 }
@@ -0,0 +1,32 @@
+package org.mipt;
+
+import org.mipt.entity.SpringTable;
+
+/** Скалярное ядро сил пружин, работает на любой JVM */
+final class ScalarSpringKernel implements SpringKernel {
+  @Override
+  public void springForces(
+      SpringTable springs, float[] state, int n, float[] fx, float[] fy, int from, int to) {
+    final int[] a = springs.getFrom();
+    final int[] b = springs.getTo();
+    final float[] aOffX = springs.getFromOffsetX();
+    final float[] aOffY = springs.getFromOffsetY();
+    final float[] bScaleX = springs.getToScaleX();
+    final float[] bScaleY = springs.getToScaleY();
+    final float[] bOffX = springs.getToOffsetX();
+    final float[] bOffY = springs.getToOffsetY();
+    final float[] k = springs.getK();
+    final float[] restLength = springs.getRestLength();
+
+    for (int e = from; e < to; e++) {
+      int ia = a[e];
+      int ib = b[e];
+      float dx = (state[ia] + aOffX[e]) - (bScaleX[e] * state[ib] + bOffX[e]);
+      float dy = (state[n + ia] + aOffY[e]) - (bScaleY[e] * state[n + ib] + bOffY[e]);
+      float len = (float) Math.sqrt(dx * dx + dy * dy);
+      float scale = len < EPSILON ? 0f : (-k[e] * (len - restLength[e])) / len;
+      fx[e] = dx * scale;
+      fy[e] = dy * scale;
+    }
+  }
+}
@@ -0,0 +1,304 @@
+package org.mipt;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+import org.mipt.entity.LatticeState;
+import org.mipt.io.Checkpoint;
+import org.mipt.observer.PhysicsObserver;
+import org.mipt.profiling.Phase;
+import org.mipt.profiling.PhaseTimer;
+
+/**
+ * Поток симуляции, отвязанный от отрисовки. Решеткой владеет только этот поток: он делает
+ * фиксированные шаги, передает их наблюдателю и публикует снимки положений для окна.
+ *
+ * <p>Снимки передаются тройной буферизацией без блокировок: поток симуляции пишет в свой буфер и
+ * обменивает его на средний, окно забирает средний, только если в нем есть новый снимок. Команды
+ * окна, например толчки грузов, кладутся в неблокирующую очередь и применяются между шагами.
+ *
+ * <p>По умолчанию шаги идут в темпе реального времени, их расписание и поведение при отставании
+ * задает {@link StepScheduler}. Без него поток шагает так быстро, как позволяет процессор.
+ */
+public class SimulationThread implements Closeable {
+  /** Изменение решетки или физики, которое поток симуляции применяет между шагами */
+  public interface Command {
+    void apply(Physics physics, LatticeState lattice);
+  }
+
+  /** Снимок решетки после шага. Читается только окном, пока не будет обменян на следующий. */
+  public static final class Snapshot {
+    private final LatticeState state;
+    private long step;
+    private float time;
+    private boolean fresh;
+
+    Snapshot(LatticeState state) {
+      this.state = state;
+    }
+
+    public LatticeState getState() {
+      return state;
+    }
+
+    /** Номер последнего сделанного шага */
+    public long getStep() {
+      return step;
+    }
+
+    /** Модельное время после шага */
+    public float getTime() {
+      return time;
+    }
+  }
+
+  private final Physics physics;
+  private final LatticeState lattice;
+  private final PhysicsObserver observer;
+  private final PhaseTimer timer;
+  private final float fixedTimeStep;
+  private final StepScheduler scheduler;
+  private final boolean reduceSubSteps;
+
+  private final Queue<Command> commands = new ConcurrentLinkedQueue<>();
+  private final AtomicReference<Snapshot> middle;
+  private final Thread thread;
+
+  /** Буфер, в который пишет поток симуляции */
+  private Snapshot back;
+
+  /** Буфер, который читает окно */
+  private Snapshot front;
+
+  private volatile boolean realTime = true;
+  private volatile boolean closed;
+  private volatile Throwable failure;
+  private InputJournal journal;
+  private long step;
+  private float time;
+
+  /**
+   * Создает поток, но не запускает его
+   *
+   * @param physics физика. Дальше ей пользуется только поток симуляции.
+   * @param lattice решетка. Дальше ее меняет только поток симуляции.
+   * @param observer наблюдатель шагов, закрывается вместе с потоком
+   * @param timer таймер фаз {@link Phase#STEP} и {@link Phase#LOGGING}
+   * @param fixedTimeStep фиксированный шаг по времени
+   * @param scheduler расписание шагов в реальном времени с тем же {@code fixedTimeStep}
+   */
+  public SimulationThread(
+      Physics physics,
+      LatticeState lattice,
+      PhysicsObserver observer,
+      PhaseTimer timer,
+      float fixedTimeStep,
+      StepScheduler scheduler) {
+    this.physics = physics;
+    this.lattice = lattice;
+    this.observer = observer;
+    this.timer = timer;
+    this.fixedTimeStep = fixedTimeStep;
+    this.scheduler = scheduler;
+    this.reduceSubSteps =
+        scheduler.getDegradations().contains(StepScheduler.Degradation.REDUCE_SUBSTEPS);
+    back = new Snapshot(lattice.snapshot());
+    front = new Snapshot(lattice.snapshot());
+    middle = new AtomicReference<>(new Snapshot(lattice.snapshot()));
+    thread = new Thread(this::run, "physics-simulation");
+    thread.setDaemon(true);
+  }
+
+  public void start() {
+    thread.start();
+  }
+
+  /**
+   * Ставит команду в очередь. Можно вызывать из любого потока.
+   *
+   * @param command команда, которая выполнится перед следующим шагом
+   */
+  public void submit(Command command) {
+    commands.offer(command);
+    LockSupport.unpark(thread);
+  }
+
+  /**
+   * Последний опубликованный снимок. Вызывается только из одного потока, обычно из окна; прежний
+   * снимок после вызова может быть перезаписан.
+   *
+   * @return снимок, не старее предыдущего
+   * @throws IllegalStateException если поток симуляции завершился с ошибкой
+   */
+  public Snapshot latest() {
+    checkFailure();
+    if (middle.get().fresh) {
+      front.fresh = false;
+      front = middle.getAndSet(front);
+    }
+    return front;
+  }
+
+  /**
+   * Ставит в очередь загрузку контрольной точки: решетка, номер шага и модельное время берутся из
+   * нее. Можно вызывать из любого потока.
+   *
+   * @param checkpoint точка, снятая с решетки тех же размеров, масс и пружин
+   */
+  public void restore(Checkpoint checkpoint) {
+    submit(
+        (physics, state) -> {
+          checkpoint.restore(state);
+          step = checkpoint.getStep();
+          time = checkpoint.getTime();
+          if (journal != null) {
+            journal.state(state, step, time);
+          }
+          scheduler.reset();
+          publish();
+        });
+  }
+
+  /**
+   * Ведет журнал всех изменений между шагами. Вызывается до {@link #start()}; журнал закрывается
+   * вместе с потоком.
+   *
+   * @param journal журнал, созданный по начальному состоянию решетки и физики
+   */
+  public void setJournal(InputJournal journal) {
+    this.journal = journal;
+    physics.setJournal(journal);
+  }
+
+  /** Расписание шагов; его счетчики можно читать из любого потока */
+  public StepScheduler getScheduler() {
+    return scheduler;
+  }
+
+  public boolean isRealTime() {
+    return realTime;
+  }
+
+  /**
+   * Включает или выключает темп реального времени
+   *
+   * @param realTime {@code true} - один шаг за {@code fixedTimeStep} секунд, {@code false} - так
+   *     быстро, как позволяет процессор
+   */
+  public void setRealTime(boolean realTime) {
+    this.realTime = realTime;
+    LockSupport.unpark(thread);
+  }
+
+  private void run() {
+    try {
+      boolean paced = false;
+      while (!closed) {
+        Command command;
+        while ((command = commands.poll()) != null) {
+          command.apply(physics, lattice);
+        }
+        if (journal != null) {
+          journal.flush();
+        }
+
+        if (!realTime) {
+          paced = false;
+          advance(true);
+          continue;
+        }
+        if (!paced) {
+          // После шагов без темпа отставание не догоняется
+          scheduler.reset();
+          paced = true;
+        }
+
+        long tickStart = System.nanoTime();
+        int due = scheduler.stepsDue(tickStart);
+        if (due == 0) {
+          LockSupport.parkNanos(scheduler.nanosUntilNextStep(tickStart));
+          continue;
+        }
+        int done = 0;
+        while (done < due && !closed) {
+          advance(scheduler.shouldLog(done, due));
+          scheduler.stepped();
+          done++;
+          if (!scheduler.withinBudget(tickStart, System.nanoTime())) {
+            break;
+          }
+        }
+        scheduler.endTick(System.nanoTime(), done);
+        if (reduceSubSteps) {
+          physics.setSubSteps(scheduler.getSubSteps());
+        }
+      }
+    } catch (Throwable e) {
+      failure = e;
+    }
+  }
+
+  /** Делает один шаг, при необходимости передает его наблюдателю и публикует снимок */
+  private void advance(boolean log) throws IOException {
+    long start = timer.start();
+    physics.applyPhysics(lattice, fixedTimeStep);
+    timer.stop(Phase.STEP, start);
+    time += fixedTimeStep;
+    step++;
+    if (journal != null) {
+      journal.at(step);
+    }
+
+    if (log) {
+      start = timer.start();
+      observer.observe(lattice, step, time);
+      timer.stop(Phase.LOGGING, start);
+    }
+
+    publish();
+  }
+
+  private void publish() {
+    back.state.copyFrom(lattice);
+    back.step = step;
+    back.time = time;
+    back.fresh = true;
+    back = middle.getAndSet(back);
+  }
+
+  private void checkFailure() {
+    Throwable e = failure;
+    if (e != null) {
+      throw new IllegalStateException("Simulation thread failed", e);
+    }
+  }
+
+  /**
+   * Останавливает поток после текущего шага и закрывает наблюдателя и журнал
+   *
+   * @throws IOException при ошибке записи
+   */
+  @Override
+  public void close() throws IOException {
+    closed = true;
+    LockSupport.unpark(thread);
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for the simulation thread", e);
+    } finally {
+      try {
+        observer.close();
+      } finally {
+        if (journal != null) {
+          journal.close();
+        }
+      }
+    }
+    checkFailure();
+  }
+}
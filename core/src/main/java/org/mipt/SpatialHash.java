@@ -0,0 +1,195 @@
+package org.mipt;
+
+import java.util.Arrays;
+import org.mipt.entity.LatticeState;
+
+/**
+ * Равномерная сетка в мировых координатах для поиска пар пересекающихся грузов. Груз попадает в
+ * ячейку своего левого нижнего угла. Сторона ячейки не меньше самого большого груза, поэтому
+ * пересекающиеся грузы лежат в соседних ячейках при любом смещении от положения покоя.
+ *
+ * <p>Ячейки хранятся в хеш-таблице, разложенной сортировкой подсчетом в два массива. Если с
+ * прошлого вызова ни один груз не сменил ячейку, таблица не перестраивается.
+ */
+final class SpatialHash {
+  private static final int HASH_X = 73856093;
+  private static final int HASH_Y = 19349663;
+
+  /** Смещения просматриваемых ячеек, первой идет своя */
+  private static final int[] STENCIL_X = {0, 1, -1, 0, 1};
+
+  private static final int[] STENCIL_Y = {0, 0, 1, 1, 1};
+
+  private float inverseCellSize;
+  private int tableMask;
+  private boolean built;
+
+  /** Ячейка каждого груза: столбец в старших 32 битах, строка в младших */
+  private long[] cell;
+
+  /** Корзина хеш-таблицы каждого груза */
+  private int[] bucketOf;
+
+  /** Грузы корзины {@code b} лежат в {@code entries[bucketStart[b]..bucketStart[b + 1])} */
+  private int[] bucketStart;
+
+  private int[] entries;
+
+  /** Найденные пары, упорядочены по первому, затем по второму грузу */
+  private int[] pairA = new int[16];
+
+  private int[] pairB = new int[16];
+  private long[] pairKeys = new long[16];
+  private int pairCount;
+
+  /**
+   * Находит все пары пересекающихся грузов {@code i < j}
+   *
+   * @param lattice состояние решетки
+   * @return число пар, сами пары - в {@link #getPairA()} и {@link #getPairB()}
+   */
+  int findPairs(LatticeState lattice) {
+    rebuild(lattice);
+
+    int n = lattice.size();
+    float[] state = lattice.getState();
+    float[] width = lattice.getWidth();
+    float[] height = lattice.getHeight();
+    int yOff = lattice.offset(LatticeState.Y);
+
+    pairCount = 0;
+    for (int i = 0; i < n; i++) {
+      float x = state[i];
+      float y = state[yOff + i];
+      float w = width[i];
+      float h = height[i];
+      int cellX = (int) (cell[i] >> 32);
+      int cellY = (int) cell[i];
+      // Своя ячейка и половина соседних: каждая пара соседних ячеек просматривается один раз
+      for (int c = 0; c < STENCIL_X.length; c++) {
+        int cx = cellX + STENCIL_X[c];
+        int cy = cellY + STENCIL_Y[c];
+        long key = key(cx, cy);
+        int bucket = bucket(cx, cy);
+        for (int p = bucketStart[bucket]; p < bucketStart[bucket + 1]; p++) {
+          int j = entries[p];
+          if (cell[j] != key || (c == 0 && j <= i)) {
+            continue;
+          }
+          if (isColliding(x, y, w, h, state[j], state[yOff + j], width[j], height[j])) {
+            addPair(Math.min(i, j), Math.max(i, j));
+          }
+        }
+      }
+    }
+
+    // Порядок пар не зависит от раскладки хеш-таблицы
+    if (pairCount > 1) {
+      Arrays.sort(pairKeys, 0, pairCount);
+      for (int k = 0; k < pairCount; k++) {
+        pairA[k] = (int) (pairKeys[k] >>> 32);
+        pairB[k] = (int) pairKeys[k];
+      }
+    }
+    return pairCount;
+  }
+
+  int[] getPairA() {
+    return pairA;
+  }
+
+  int[] getPairB() {
+    return pairB;
+  }
+
+  /**
+   * Проверка коллизий грузов
+   *
+   * @param x1 - координата левая по x
+   * @param y1 - координата нижняя по y
+   */
+  static boolean isColliding(
+      float x1, float y1, float w1, float h1, float x2, float y2, float w2, float h2) {
+
+    return x1 < x2 + w2 && x1 + w1 > x2 && y1 < y2 + h2 && y1 + h1 > y2;
+  }
+
+  private void rebuild(LatticeState lattice) {
+    int n = lattice.size();
+    if (cell == null || cell.length != n) {
+      allocate(lattice);
+    }
+
+    float[] state = lattice.getState();
+    int yOff = lattice.offset(LatticeState.Y);
+    boolean moved = !built;
+    for (int i = 0; i < n; i++) {
+      int cx = (int) Math.floor(state[i] * inverseCellSize);
+      int cy = (int) Math.floor(state[yOff + i] * inverseCellSize);
+      long key = key(cx, cy);
+      if (cell[i] != key) {
+        cell[i] = key;
+        moved = true;
+      }
+    }
+    if (!moved) {
+      return;
+    }
+
+    Arrays.fill(bucketStart, 0);
+    for (int i = 0; i < n; i++) {
+      int bucket = bucket((int) (cell[i] >> 32), (int) cell[i]);
+      bucketOf[i] = bucket;
+      bucketStart[bucket]++;
+    }
+    // Сначала bucketStart[b] указывает на конец корзины, после заполнения - на ее начало
+    for (int b = 1; b <= tableMask; b++) {
+      bucketStart[b] += bucketStart[b - 1];
+    }
+    bucketStart[tableMask + 1] = n;
+    // Заполняем с конца, чтобы грузы в корзине шли по возрастанию номера
+    for (int i = n - 1; i >= 0; i--) {
+      entries[--bucketStart[bucketOf[i]]] = i;
+    }
+    built = true;
+  }
+
+  private void allocate(LatticeState lattice) {
+    int n = lattice.size();
+    float[] width = lattice.getWidth();
+    float[] height = lattice.getHeight();
+    float cellSize = 0f;
+    for (int i = 0; i < n; i++) {
+      cellSize = Math.max(cellSize, Math.max(width[i], height[i]));
+    }
+    inverseCellSize = 1f / cellSize;
+
+    int tableSize = Integer.highestOneBit(Math.max(1, n)) << 1;
+    tableMask = tableSize - 1;
+    cell = new long[n];
+    bucketOf = new int[n];
+    entries = new int[n];
+    bucketStart = new int[tableSize + 1];
+    built = false;
+  }
+
+  private static long key(int cx, int cy) {
+    return (long) cx << 32 | (cy & 0xFFFFFFFFL);
+  }
+
+  private int bucket(int cx, int cy) {
+    return (cx * HASH_X ^ cy * HASH_Y) & tableMask;
+  }
+
+  private void addPair(int a, int b) {
+    if (pairCount == pairA.length) {
+      pairA = Arrays.copyOf(pairA, pairCount * 2);
+      pairB = Arrays.copyOf(pairB, pairCount * 2);
+      pairKeys = Arrays.copyOf(pairKeys, pairCount * 2);
+    }
+    pairA[pairCount] = a;
+    pairB[pairCount] = b;
+    pairKeys[pairCount] = (long) a << 32 | b;
+    pairCount++;
+  }
+}
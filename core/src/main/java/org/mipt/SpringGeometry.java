@@ -0,0 +1,281 @@
+package org.mipt;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.mipt.entity.LatticeState;
+import org.mipt.entity.Spring;
+import org.mipt.entity.Weight;
+
+/**
+ * Геометрия витков всех пружин для отрисовки одним вызовом. Каждый виток - отрезок из двух вершин
+ * {@code x, y, цвет}, цвет упакован {@link Color#toFloatBits}. Вершины считаются прямо из {@link
+ * LatticeState} для пружин в {@link ViewWindow} и пишутся в один переиспользуемый {@link
+ * FloatBuffer}, GL-контекст не нужен.
+ *
+ * <p>Концы пружин те же, что задают грузы в {@link Weight#setX} и {@link Weight#setY}: середины
+ * сторон для горизонтальных и вертикальных пружин, центры грузов для диагональных; конец у стены
+ * неподвижен. Витки строятся по шаблону единичной пружины: вдоль оси от 0 до 1 и поперек на
+ * {@code ±1}, поэтому на пружину нужен один квадратный корень вместо одного на виток.
+ */
+public class SpringGeometry {
+  /** Число float на вершину: x, y и упакованный цвет */
+  public static final int FLOATS_PER_VERTEX = 3;
+
+  /** Ширина витка на экране в пикселях, начиная с которой рисуются витки, а не одна линия */
+  public static final float MIN_COIL_PIXELS = 1.5f;
+
+  /** Длина пружины в покое на экране в пикселях, меньше которой пружина не рисуется */
+  public static final float MIN_SPRING_PIXELS = 4f;
+
+  /** Скорость, с которой цвет пружины догоняет ее растяжение, за кадр */
+  private static final float STRAIN_BLEND = 0.01f;
+
+  /** Растяжение, при котором цвет насыщается */
+  private static final float STRAIN_SCALE = 100f;
+
+  private final int size;
+
+  /**
+   * Концы пружин: {@code a = (aScale * x[aIndex] + aOffsetX, aScale * y[aIndex] + aOffsetY)},
+   * масштаб 0 у конца на стене. Аналогично для {@code b}.
+   */
+  private final int[] aIndex;
+
+  private final float[] aScale;
+  private final float[] aOffsetX;
+  private final float[] aOffsetY;
+  private final int[] bIndex;
+  private final float[] bScale;
+  private final float[] bOffsetX;
+  private final float[] bOffsetY;
+
+  private final float[] width;
+  private final float[] restLength;
+
+  /** Шаблон витков каждой пружины: пары (доля длины, сторона) на каждую вершину */
+  private final float[][] template;
+
+  /** Сглаженное растяжение, по которому выбирается цвет */
+  private final float[] visualStrain;
+
+  private final int maxVertices;
+
+  /** Вершины собираются в массиве и переносятся в буфер одним вызовом */
+  private final float[] vertices;
+
+  /**
+   * Собирает концы и шаблоны витков пружин решетки
+   *
+   * @param lattice решетка в любом состоянии: концы на стенах берутся из текущих якорей пружин
+   */
+  public SpringGeometry(Lattice lattice) {
+    List<Spring> springs = lattice.getSprings();
+    List<Weight> weights = lattice.getWeights();
+    size = springs.size();
+    aIndex = new int[size];
+    aScale = new float[size];
+    aOffsetX = new float[size];
+    aOffsetY = new float[size];
+    bIndex = new int[size];
+    bScale = new float[size];
+    bOffsetX = new float[size];
+    bOffsetY = new float[size];
+    width = new float[size];
+    restLength = new float[size];
+    template = new float[size][];
+    visualStrain = new float[size];
+
+    Map<Spring, Integer> edgeBySpring = new IdentityHashMap<>();
+    Map<Integer, float[]> templateByCoils = new HashMap<>();
+    int vertices = 0;
+    for (int e = 0; e < size; e++) {
+      Spring spring = springs.get(e);
+      edgeBySpring.put(spring, e);
+      width[e] = spring.getWidth();
+      restLength[e] = spring.getLength();
+      visualStrain[e] = spring.getVisualStrain();
+
+      Vector2 a = startOf(spring);
+      Vector2 b = endOf(spring);
+      if (a == null || b == null) {
+        // Пружина без якорей не рисуется
+        template[e] = new float[0];
+        continue;
+      }
+      template[e] = templateByCoils.computeIfAbsent(spring.getCoils(), SpringGeometry::unitCoil);
+      vertices += 2 * spring.getCoils();
+      // Пока груз не найден, конец неподвижен в текущем якоре
+      aOffsetX[e] = a.x;
+      aOffsetY[e] = a.y;
+      bOffsetX[e] = b.x;
+      bOffsetY[e] = b.y;
+    }
+    maxVertices = vertices;
+    this.vertices = new float[vertices * FLOATS_PER_VERTEX];
+
+    for (int i = 0; i < weights.size(); i++) {
+      Weight w = weights.get(i);
+      float halfW = w.getWidth() / 2f;
+      float halfH = w.getHeight() / 2f;
+      attachEnd(edgeBySpring, w.getLeftSpring(), i, 0f, halfH);
+      attachStart(edgeBySpring, w.getRightSpring(), i, w.getWidth(), halfH);
+      attachEnd(edgeBySpring, w.getLowerSpring(), i, halfW, 0f);
+      attachStart(edgeBySpring, w.getUpperSpring(), i, halfW, w.getHeight());
+      attachStart(edgeBySpring, w.getUpperRightSpring(), i, halfW, halfH);
+      attachStart(edgeBySpring, w.getUpperLeftSpring(), i, halfW, halfH);
+      attachEnd(edgeBySpring, w.getLowerRightSpring(), i, halfW, halfH);
+      attachEnd(edgeBySpring, w.getLowerLeftSpring(), i, halfW, halfH);
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /** Число вершин всех витков, то есть нужная емкость буфера в вершинах */
+  public int getMaxVertices() {
+    return maxVertices;
+  }
+
+  /**
+   * Пишет вершины видимых пружин в буфер и обновляет их сглаженное растяжение. Детализация
+   * зависит от размера пружины на экране: витки, пока различима ширина витка, затем одна линия,
+   * а пружина короче {@link #MIN_SPRING_PIXELS} не рисуется. Пружины вне области пропускаются, их
+   * цвет не обновляется. Буфер очищается, после записи его предел стоит на конце данных, позиция -
+   * в нуле.
+   *
+   * @param lattice состояние решетки
+   * @param view видимая область
+   * @param out буфер емкостью не меньше {@code getMaxVertices() * FLOATS_PER_VERTEX}
+   * @return число записанных вершин
+   */
+  public int build(LatticeState lattice, ViewWindow view, FloatBuffer out) {
+    float[] state = lattice.getState();
+    int yOff = lattice.offset(LatticeState.Y);
+
+    int k = 0;
+    for (int e = 0; e < size; e++) {
+      float[] coil = template[e];
+      if (coil.length == 0 || view.toPixels(restLength[e]) < MIN_SPRING_PIXELS) {
+        continue;
+      }
+      float ax = aScale[e] * state[aIndex[e]] + aOffsetX[e];
+      float ay = aScale[e] * state[yOff + aIndex[e]] + aOffsetY[e];
+      float bx = bScale[e] * state[bIndex[e]] + bOffsetX[e];
+      float by = bScale[e] * state[yOff + bIndex[e]] + bOffsetY[e];
+      float w = width[e];
+      if (!view.overlaps(
+          Math.min(ax, bx) - w, Math.min(ay, by) - w, Math.max(ax, bx) + w, Math.max(ay, by) + w)) {
+        continue;
+      }
+
+      float dx = bx - ax;
+      float dy = by - ay;
+      float length = (float) Math.sqrt(dx * dx + dy * dy);
+      float strain = (length - restLength[e]) / restLength[e];
+      visualStrain[e] = MathUtils.lerp(visualStrain[e], strain, STRAIN_BLEND);
+      float color = strainColor(visualStrain[e]);
+
+      if (view.toPixels(w) < MIN_COIL_PIXELS) {
+        vertices[k++] = ax;
+        vertices[k++] = ay;
+        vertices[k++] = color;
+        vertices[k++] = bx;
+        vertices[k++] = by;
+        vertices[k++] = color;
+        continue;
+      }
+
+      // Нормаль к оси пружины длиной в ширину витка
+      float nx = 0f;
+      float ny = 0f;
+      if (length != 0f) {
+        nx = -dy / length * w;
+        ny = dx / length * w;
+      }
+      for (int v = 0; v < coil.length; v += 2) {
+        float along = coil[v];
+        float side = coil[v + 1];
+        vertices[k++] = ax + dx * along + nx * side;
+        vertices[k++] = ay + dy * along + ny * side;
+        vertices[k++] = color;
+      }
+    }
+    out.clear();
+    out.put(vertices, 0, k);
+    out.flip();
+    return k / FLOATS_PER_VERTEX;
+  }
+
+  /** Цвет по растяжению: красный - растянута, синий - сжата, белый - в равновесии */
+  static float strainColor(float strain) {
+    float s = MathUtils.clamp(strain * STRAIN_SCALE, -1f, 1f);
+    if (s >= 0) {
+      return Color.toFloatBits(1f, 1f - 0.6f * s, 1f - 0.6f * s, 1f);
+    }
+    return Color.toFloatBits(1f + 0.3f * s, 1f + 0.3f * s, 1f - s, 1f);
+  }
+
+  /**
+   * Шаблон пружины единичной длины: виток {@code i} идет от доли {@code i / coils} оси на стороне
+   * {@code sign} к доле {@code (i + 1) / coils} на противоположной, знак чередуется
+   */
+  private static float[] unitCoil(int coils) {
+    float[] coil = new float[4 * coils];
+    for (int i = 0; i < coils; i++) {
+      float sign = (i % 2 == 0) ? 1 : -1;
+      coil[4 * i] = (float) i / coils;
+      coil[4 * i + 1] = sign;
+      coil[4 * i + 2] = (float) (i + 1) / coils;
+      coil[4 * i + 3] = -sign;
+    }
+    return coil;
+  }
+
+  /** Начало пружины: левый, нижний или первый якорь */
+  private static Vector2 startOf(Spring spring) {
+    if (spring.getLeftAnchor() != null && spring.getRightAnchor() != null) {
+      return spring.getLeftAnchor();
+    } else if (spring.getLowerAnchor() != null && spring.getUpperAnchor() != null) {
+      return spring.getLowerAnchor();
+    }
+    return spring.getAnchorA();
+  }
+
+  private static Vector2 endOf(Spring spring) {
+    if (spring.getLeftAnchor() != null && spring.getRightAnchor() != null) {
+      return spring.getRightAnchor();
+    } else if (spring.getLowerAnchor() != null && spring.getUpperAnchor() != null) {
+      return spring.getUpperAnchor();
+    }
+    return spring.getAnchorB();
+  }
+
+  private void attachStart(
+      Map<Spring, Integer> edgeBySpring, Spring spring, int weight, float offX, float offY) {
+    Integer e = spring == null ? null : edgeBySpring.get(spring);
+    if (e != null) {
+      aIndex[e] = weight;
+      aScale[e] = 1f;
+      aOffsetX[e] = offX;
+      aOffsetY[e] = offY;
+    }
+  }
+
+  private void attachEnd(
+      Map<Spring, Integer> edgeBySpring, Spring spring, int weight, float offX, float offY) {
+    Integer e = spring == null ? null : edgeBySpring.get(spring);
+    if (e != null) {
+      bIndex[e] = weight;
+      bScale[e] = 1f;
+      bOffsetX[e] = offX;
+      bOffsetY[e] = offY;
+    }
+  }
+}
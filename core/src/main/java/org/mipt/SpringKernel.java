@@ -0,0 +1,55 @@
+package org.mipt;
+
+import org.mipt.entity.SpringTable;
+
+/**
+ * Ядро подсчета сил пружин по плоским массивам {@link SpringTable}. Кроме скалярного ядра есть
+ * векторное на Java Vector API, оно собирается отдельно под Java 17 и подключается, только если его
+ * выбрали свойством {@value #KERNEL_PROPERTY} и доступен модуль {@code jdk.incubator.vector}.
+ * Векторное ядро не всегда быстрее: ему мешают сборки координат по номерам грузов, поэтому по
+ * умолчанию используется скалярное, а выбирать стоит по {@code PhysicsBenchmark} на своей машине.
+ */
+interface SpringKernel {
+  /** Длина пружины, ниже которой направление силы не определено и сила считается нулевой */
+  float EPSILON = 0.0001F;
+
+  /** Системное свойство, которое выбирает ядро: {@code scalar} (по умолчанию) или {@code vector} */
+  String KERNEL_PROPERTY = "mipt.physics.kernel";
+
+  /**
+   * Считает силы пружин {@code [from, to)}, действующие на их конец {@code from}. На конец {@code
+   * to} действует противоположная сила.
+   */
+  void springForces(
+      SpringTable springs, float[] state, int n, float[] fx, float[] fy, int from, int to);
+
+  /**
+   * Выбирает ядро по свойству {@value #KERNEL_PROPERTY}
+   *
+   * @return векторное ядро, если оно выбрано и его класс загрузился, иначе скалярное. Если
+   *     векторное ядро выбрано, но не загрузилось, в {@code System.err} печатается предупреждение.
+   */
+  static SpringKernel select() {
+    String kernel = System.getProperty(KERNEL_PROPERTY, "scalar");
+    if (!"vector".equals(kernel)) {
+      if (!"scalar".equals(kernel)) {
+        throw new IllegalArgumentException(
+            "Unknown " + KERNEL_PROPERTY + "=" + kernel + ", expected scalar or vector");
+      }
+      return new ScalarSpringKernel();
+    }
+    try {
+      return (SpringKernel)
+          Class.forName("org.mipt.VectorSpringKernel").getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError | UnsupportedOperationException e) {
+      // Java 8, JVM без --add-modules jdk.incubator.vector или слишком узкие регистры
+      System.err.println(
+          "Warning: "
+              + KERNEL_PROPERTY
+              + "=vector, but the vector kernel is unavailable ("
+              + e
+              + "), using the scalar kernel");
+      return new ScalarSpringKernel();
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package org.mipt;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ограниченная очередь без блокировок для одного производителя и одного потребителя. Каждый индекс
+ * пишет только свой поток, поэтому хватает упорядоченной записи ({@code lazySet}).
+ *
+ * @param <T> тип элементов
+ */
+final class SpscQueue<T> {
+  private final Object[] buffer;
+  private final int mask;
+
+  /** Номер следующего элемента для чтения. Пишет только потребитель. */
+  private final AtomicLong head = new AtomicLong();
+
+  /** Номер следующего элемента для записи. Пишет только производитель. */
+  private final AtomicLong tail = new AtomicLong();
+
+  /**
+   * Создает пустую очередь
+   *
+   * @param capacity емкость, округляется вверх до степени двойки
+   */
+  SpscQueue(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+    }
+    int size = Integer.highestOneBit(capacity);
+    if (size < capacity) {
+      size <<= 1;
+    }
+    buffer = new Object[size];
+    mask = size - 1;
+  }
+
+  int capacity() {
+    return buffer.length;
+  }
+
+  /** Добавляет элемент. Вызывается только производителем. */
+  boolean offer(T item) {
+    long t = tail.get();
+    if (t - head.get() == buffer.length) {
+      return false;
+    }
+    buffer[(int) t & mask] = item;
+    tail.lazySet(t + 1);
+    return true;
+  }
+
+  /** Забирает элемент или возвращает {@code null}. Вызывается только потребителем. */
+  @SuppressWarnings("unchecked")
+  T poll() {
+    long h = head.get();
+    if (h == tail.get()) {
+      return null;
+    }
+    int index = (int) h & mask;
+    T item = (T) buffer[index];
+    buffer[index] = null;
+    head.lazySet(h + 1);
+    return item;
+  }
+
+  /** Примерное число элементов в очереди, можно вызывать из любого потока */
+  int size() {
+    return (int) (tail.get() - head.get());
+  }
+}
@@ -0,0 +1,221 @@
+package org.mipt;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Планировщик фиксированных шагов в реальном времени. Модельные часы сравниваются с настенными:
+ * за один такт делается столько шагов, сколько накопилось, но не больше {@code maxCatchUpSteps} и
+ * не дольше бюджета такта. Так медленный шаг не порождает все больше догоняющих шагов.
+ *
+ * <p>Если машина не успевает за реальным временем, включаются выбранные {@link Degradation}.
+ * Отставание, замедление и текущее число подшагов доступны из других потоков.
+ */
+public class StepScheduler {
+  /** Чем пожертвовать, когда шаги не успевают за реальным временем */
+  public enum Degradation {
+    /** Забыть отставание сверх одного такта: модельное время идет медленнее настенного */
+    SLOW_DOWN,
+    /** Не передавать наблюдателю догоняющие шаги, кроме последнего запланированного в такте */
+    DROP_LOGGING,
+    /** Уменьшать число подшагов вдвое, пока есть отставание, и возвращать его, когда догнали */
+    REDUCE_SUBSTEPS
+  }
+
+  public static final int DEFAULT_MAX_CATCH_UP_STEPS = 5;
+  public static final long DEFAULT_BUDGET_NANOS = 50_000_000L;
+
+  /** Сколько тактов без отставания нужно, чтобы удвоить число подшагов обратно */
+  private static final int RESTORE_AFTER_TICKS = 100;
+
+  /** Постоянная сглаживания коэффициента замедления, в наносекундах */
+  private static final double TIME_SCALE_WINDOW_NANOS = 1e9;
+
+  private final long stepNanos;
+  private final int maxCatchUpSteps;
+  private final long budgetNanos;
+  private final Set<Degradation> degradations;
+  private final int nominalSubSteps;
+
+  /** Момент настенного времени, до которого сделаны шаги */
+  private long simClock;
+
+  private boolean started;
+  private int onTimeTicks;
+  private long lastTick;
+
+  private volatile int subSteps;
+  private volatile long lagNanos;
+  private volatile long droppedNanos;
+  private volatile long skippedLogFrames;
+  private volatile double timeScale = 1.0;
+
+  /**
+   * Создает планировщик
+   *
+   * @param fixedTimeStep фиксированный шаг модели в секундах
+   * @param maxCatchUpSteps наибольшее число шагов за такт
+   * @param budgetNanos наибольшее время на шаги одного такта
+   * @param degradations что разрешено ухудшать при отставании
+   * @param nominalSubSteps число подшагов без отставания
+   */
+  public StepScheduler(
+      float fixedTimeStep,
+      int maxCatchUpSteps,
+      long budgetNanos,
+      Set<Degradation> degradations,
+      int nominalSubSteps) {
+    if (maxCatchUpSteps < 1) {
+      throw new IllegalArgumentException("maxCatchUpSteps must be positive: " + maxCatchUpSteps);
+    }
+    this.stepNanos = (long) (fixedTimeStep * 1e9);
+    this.maxCatchUpSteps = maxCatchUpSteps;
+    this.budgetNanos = budgetNanos;
+    this.degradations =
+        degradations.isEmpty() ? EnumSet.noneOf(Degradation.class) : EnumSet.copyOf(degradations);
+    this.nominalSubSteps = nominalSubSteps;
+    this.subSteps = nominalSubSteps;
+  }
+
+  /**
+   * Создает планировщик с ограничениями по умолчанию
+   *
+   * @param fixedTimeStep фиксированный шаг модели в секундах
+   * @param degradations что разрешено ухудшать при отставании
+   * @param nominalSubSteps число подшагов без отставания
+   */
+  public StepScheduler(
+      float fixedTimeStep, Set<Degradation> degradations, int nominalSubSteps) {
+    this(
+        fixedTimeStep,
+        DEFAULT_MAX_CATCH_UP_STEPS,
+        DEFAULT_BUDGET_NANOS,
+        degradations,
+        nominalSubSteps);
+  }
+
+  /**
+   * Начинает такт
+   *
+   * @param now текущее время по {@link System#nanoTime()}
+   * @return сколько шагов сделать в этом такте, 0 - ждать {@link #nanosUntilNextStep}
+   */
+  public int stepsDue(long now) {
+    if (!started) {
+      simClock = now - stepNanos;
+      lastTick = now;
+      started = true;
+    }
+    long due = (now - simClock) / stepNanos;
+    return (int) Math.min(due, maxCatchUpSteps);
+  }
+
+  /** Сколько ждать до следующего шага */
+  public long nanosUntilNextStep(long now) {
+    return Math.max(0L, simClock + stepNanos - now);
+  }
+
+  /**
+   * Можно ли сделать еще один шаг в этом такте
+   *
+   * @param tickStart начало такта
+   * @param now текущее время
+   */
+  public boolean withinBudget(long tickStart, long now) {
+    return now - tickStart < budgetNanos;
+  }
+
+  /**
+   * Передавать ли шаг наблюдателю
+   *
+   * @param index номер шага в такте
+   * @param due число шагов такта из {@link #stepsDue}
+   */
+  public boolean shouldLog(int index, int due) {
+    if (index == due - 1 || !degradations.contains(Degradation.DROP_LOGGING)) {
+      return true;
+    }
+    skippedLogFrames++;
+    return false;
+  }
+
+  /** Сдвигает модельные часы на один сделанный шаг */
+  public void stepped() {
+    simClock += stepNanos;
+  }
+
+  /**
+   * Заканчивает такт: обновляет отставание и замедление, забывает отставание при {@link
+   * Degradation#SLOW_DOWN} и меняет число подшагов при {@link Degradation#REDUCE_SUBSTEPS}
+   *
+   * @param now текущее время
+   * @param stepsDone число шагов, сделанных в такте
+   */
+  public void endTick(long now, int stepsDone) {
+    long lag = now - simClock;
+    long tolerated = (long) maxCatchUpSteps * stepNanos;
+    if (lag > tolerated && degradations.contains(Degradation.SLOW_DOWN)) {
+      droppedNanos += lag - tolerated;
+      simClock = now - tolerated;
+      lag = tolerated;
+    }
+
+    if (degradations.contains(Degradation.REDUCE_SUBSTEPS)) {
+      // Уменьшаем, только пока отставание не сокращается, чтобы не сбросить подшаги за пару тактов
+      if (lag > 2 * stepNanos && lag >= lagNanos) {
+        subSteps = Math.max(1, subSteps / 2);
+        onTimeTicks = 0;
+      } else if (lag <= stepNanos
+          && subSteps < nominalSubSteps
+          && ++onTimeTicks >= RESTORE_AFTER_TICKS) {
+        subSteps = Math.min(nominalSubSteps, subSteps * 2);
+        onTimeTicks = 0;
+      }
+    }
+    lagNanos = lag;
+
+    long elapsed = now - lastTick;
+    if (elapsed > 0) {
+      double scale = (double) stepsDone * stepNanos / elapsed;
+      double weight = Math.min(1.0, elapsed / TIME_SCALE_WINDOW_NANOS);
+      timeScale += (scale - timeScale) * weight;
+    }
+    lastTick = now;
+  }
+
+  /** Сбрасывает часы: следующий такт начнется без отставания */
+  public void reset() {
+    started = false;
+    lagNanos = 0L;
+    timeScale = 1.0;
+  }
+
+  /** Число подшагов, которое сейчас нужно задать физике */
+  public int getSubSteps() {
+    return subSteps;
+  }
+
+  /** Насколько модельное время отстает от настенного, в секундах. Меньше шага - без отставания. */
+  public float getLagSeconds() {
+    return lagNanos / 1e9f;
+  }
+
+  /** Сглаженное отношение модельного времени к настенному, 1 - реальное время */
+  public double getTimeScale() {
+    return timeScale;
+  }
+
+  /** Сколько модельного времени пропущено ради {@link Degradation#SLOW_DOWN}, в секундах */
+  public float getDroppedSeconds() {
+    return droppedNanos / 1e9f;
+  }
+
+  /** Сколько шагов не передано наблюдателю ради {@link Degradation#DROP_LOGGING} */
+  public long getSkippedLogFrames() {
+    return skippedLogFrames;
+  }
+
+  public Set<Degradation> getDegradations() {
+    return EnumSet.copyOf(degradations);
+  }
+}
@@ -0,0 +1,221 @@
+package org.mipt;
+
+/**
+ * Собственные значения и векторы плотной симметричной матрицы: приведение к трехдиагональному виду
+ * отражениями Хаусхолдера и неявный QL-алгоритм со сдвигами (процедуры tred2 и tql2 из EISPACK).
+ * Векторы хранятся строками, чтобы вращения QL шли по памяти подряд.
+ */
+final class SymmetricEigen {
+  private SymmetricEigen() {}
+
+  /**
+   * Раскладывает матрицу {@code a = V^T diag(d) V}
+   *
+   * @param a симметричная матрица, на выходе строки - ортонормированные собственные векторы
+   * @return собственные значения по возрастанию, в порядке строк {@code a}
+   */
+  static double[] decompose(double[][] a) {
+    int n = a.length;
+    double[] d = new double[n];
+    double[] e = new double[n];
+    if (n == 0) {
+      return d;
+    }
+    tridiagonalize(a, d, e);
+    diagonalize(a, d, e);
+    return d;
+  }
+
+  /**
+   * Приводит матрицу к трехдиагональному виду: диагональ в {@code d}, поддиагональ в {@code
+   * e[1..]}, строки {@code v} - накопленное ортогональное преобразование. Это tred2 с
+   * переставленными индексами: матрица симметрична, а внутренние циклы так идут вдоль строк.
+   */
+  private static void tridiagonalize(double[][] v, double[] d, double[] e) {
+    int n = v.length;
+    for (int j = 0; j < n; j++) {
+      d[j] = v[j][n - 1];
+    }
+
+    for (int i = n - 1; i > 0; i--) {
+      double scale = 0.0;
+      double h = 0.0;
+      for (int k = 0; k < i; k++) {
+        scale += Math.abs(d[k]);
+      }
+      if (scale == 0.0) {
+        e[i] = d[i - 1];
+        for (int j = 0; j < i; j++) {
+          d[j] = v[j][i - 1];
+          v[j][i] = 0.0;
+          v[i][j] = 0.0;
+        }
+      } else {
+        for (int k = 0; k < i; k++) {
+          d[k] /= scale;
+          h += d[k] * d[k];
+        }
+        double f = d[i - 1];
+        double g = Math.sqrt(h);
+        if (f > 0) {
+          g = -g;
+        }
+        e[i] = scale * g;
+        h -= f * g;
+        d[i - 1] = f - g;
+        for (int j = 0; j < i; j++) {
+          e[j] = 0.0;
+        }
+        for (int j = 0; j < i; j++) {
+          f = d[j];
+          v[i][j] = f;
+          g = e[j] + v[j][j] * f;
+          for (int k = j + 1; k < i; k++) {
+            g += v[j][k] * d[k];
+            e[k] += v[j][k] * f;
+          }
+          e[j] = g;
+        }
+        f = 0.0;
+        for (int j = 0; j < i; j++) {
+          e[j] /= h;
+          f += e[j] * d[j];
+        }
+        double hh = f / (h + h);
+        for (int j = 0; j < i; j++) {
+          e[j] -= hh * d[j];
+        }
+        for (int j = 0; j < i; j++) {
+          f = d[j];
+          g = e[j];
+          for (int k = j; k < i; k++) {
+            v[j][k] -= f * e[k] + g * d[k];
+          }
+          d[j] = v[j][i - 1];
+          v[j][i] = 0.0;
+        }
+      }
+      d[i] = h;
+    }
+
+    // Накопление преобразований
+    for (int i = 0; i < n - 1; i++) {
+      v[i][n - 1] = v[i][i];
+      v[i][i] = 1.0;
+      double h = d[i + 1];
+      if (h != 0.0) {
+        for (int k = 0; k <= i; k++) {
+          d[k] = v[i + 1][k] / h;
+        }
+        for (int j = 0; j <= i; j++) {
+          double g = 0.0;
+          for (int k = 0; k <= i; k++) {
+            g += v[i + 1][k] * v[j][k];
+          }
+          for (int k = 0; k <= i; k++) {
+            v[j][k] -= g * d[k];
+          }
+        }
+      }
+      for (int k = 0; k <= i; k++) {
+        v[i + 1][k] = 0.0;
+      }
+    }
+    for (int j = 0; j < n; j++) {
+      d[j] = v[j][n - 1];
+      v[j][n - 1] = 0.0;
+    }
+    v[n - 1][n - 1] = 1.0;
+    e[0] = 0.0;
+  }
+
+  /** Неявный QL трехдиагональной матрицы, вращения применяются к строкам {@code z} */
+  private static void diagonalize(double[][] z, double[] d, double[] e) {
+    int n = z.length;
+    for (int i = 1; i < n; i++) {
+      e[i - 1] = e[i];
+    }
+    e[n - 1] = 0.0;
+
+    double f = 0.0;
+    double tst1 = 0.0;
+    double eps = Math.ulp(1.0);
+    for (int l = 0; l < n; l++) {
+      tst1 = Math.max(tst1, Math.abs(d[l]) + Math.abs(e[l]));
+      int m = l;
+      while (m < n - 1 && Math.abs(e[m]) > eps * tst1) {
+        m++;
+      }
+
+      if (m > l) {
+        do {
+          double g = d[l];
+          double p = (d[l + 1] - g) / (2.0 * e[l]);
+          double r = Math.hypot(p, 1.0);
+          if (p < 0) {
+            r = -r;
+          }
+          d[l] = e[l] / (p + r);
+          d[l + 1] = e[l] * (p + r);
+          double dl1 = d[l + 1];
+          double h = g - d[l];
+          for (int i = l + 2; i < n; i++) {
+            d[i] -= h;
+          }
+          f += h;
+
+          p = d[m];
+          double c = 1.0;
+          double c2 = c;
+          double c3 = c;
+          double el1 = e[l + 1];
+          double s = 0.0;
+          double s2 = 0.0;
+          for (int i = m - 1; i >= l; i--) {
+            c3 = c2;
+            c2 = c;
+            s2 = s;
+            g = c * e[i];
+            h = c * p;
+            r = Math.hypot(p, e[i]);
+            e[i + 1] = s * r;
+            s = e[i] / r;
+            c = p / r;
+            p = c * d[i] - s * g;
+            d[i + 1] = h + s * (c * g + s * d[i]);
+            double[] lower = z[i];
+            double[] upper = z[i + 1];
+            for (int k = 0; k < n; k++) {
+              h = upper[k];
+              upper[k] = s * lower[k] + c * h;
+              lower[k] = c * lower[k] - s * h;
+            }
+          }
+          p = -s * s2 * c3 * el1 * e[l] / dl1;
+          e[l] = s * p;
+          d[l] = c * p;
+        } while (Math.abs(e[l]) > eps * tst1);
+      }
+      d[l] += f;
+      e[l] = 0.0;
+    }
+
+    for (int i = 0; i < n - 1; i++) {
+      int k = i;
+      double p = d[i];
+      for (int j = i + 1; j < n; j++) {
+        if (d[j] < p) {
+          k = j;
+          p = d[j];
+        }
+      }
+      if (k != i) {
+        d[k] = d[i];
+        d[i] = p;
+        double[] row = z[i];
+        z[i] = z[k];
+        z[k] = row;
+      }
+    }
+  }
+}
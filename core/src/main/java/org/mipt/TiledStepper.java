@@ -0,0 +1,193 @@
+package org.mipt;
+
+import org.mipt.entity.LatticeState;
+import org.mipt.entity.SpringTable;
+import org.mipt.integrator.Integrator;
+import org.mipt.integrator.IntegratorType;
+
+/**
+ * Шаги решетки плитками строк сетки. Каждая плитка считается в своем окне {@link
+ * LatticeState#window}: ее строки и по {@link #getHalo()} строк соседей с каждой стороны. Окно
+ * целиком помещается в кэш и проходит несколько подшагов подряд, пока его данные в кэше, вместо
+ * того чтобы каждый этап метода проходил по всей решетке.
+ *
+ * <p>Ошибка от обрезанных на краю окна пружин за одно вычисление сил проходит одну строку. Поэтому
+ * за проход из {@code m} подшагов метода с {@code e} вычислениями сил она доходит не дальше {@code
+ * m e + 1} строк, а лишняя строка - на ускорения, которые метод Верле считает заново в начале
+ * прохода. Свои строки плитки считаются так же, как без плиток. Цепочка столкновений за один
+ * подшаг может передать влияние на любое число строк, поэтому если хоть одно окно нашло пару
+ * столкновений, {@link #endPass()} возвращает решетку к началу прохода, и физика повторяет его без
+ * плиток. Так результат всегда побитно совпадает со счетом без плиток.
+ *
+ * <p>Каждое окно считает свои строки и {@code 2 * getHalo()} строк соседей, так что лишняя работа
+ * - около {@code 2 * getHalo() / tileRows} от счета без плиток. Если все окна вместе больше {@value
+ * #MAX_OVERHEAD} решеток, плитки не строятся.
+ *
+ * <p>Окна читают строки из копии решетки на начало прохода, а пишут только свои строки в решетку,
+ * так что плитки независимы и могут считаться параллельно.
+ */
+final class TiledStepper {
+  /** Во сколько раз окна могут быть больше решетки, чтобы плитки еще имели смысл */
+  static final int MAX_OVERHEAD = 2;
+
+  private final int tileRows;
+  private final int fusedSubSteps;
+
+  private LatticeState lattice;
+  private SpringTable springs;
+
+  /** Метод физики, для которого определен {@link #type} */
+  private Integrator integrator;
+
+  private IntegratorType type;
+
+  /** Состояние решетки на начало прохода */
+  private LatticeState source;
+
+  private Tile[] tiles = new Tile[0];
+
+  /** Последний проход нашел столкновения, и проходы идут без плиток */
+  private boolean colliding;
+
+  /** Плитка: свои строки {@code [fromRow, toRow)} и окно начиная со строки {@code windowFrom} */
+  private static final class Tile {
+    private final int fromRow;
+    private final int toRow;
+    private final int windowFrom;
+    private final LatticeState window;
+    private final Physics physics = new Physics();
+
+    /** Окно нашло пары столкновений в последнем проходе */
+    private boolean collided;
+
+    Tile(int fromRow, int toRow, int windowFrom, LatticeState window) {
+      this.fromRow = fromRow;
+      this.toRow = toRow;
+      this.windowFrom = windowFrom;
+      this.window = window;
+      physics.setWarnings(message -> {});
+    }
+  }
+
+  /**
+   * @param tileRows число своих строк плитки
+   * @param fusedSubSteps число подшагов, которые окно проходит подряд
+   */
+  TiledStepper(int tileRows, int fusedSubSteps) {
+    this.tileRows = tileRows;
+    this.fusedSubSteps = fusedSubSteps;
+  }
+
+  int getFusedSubSteps() {
+    return fusedSubSteps;
+  }
+
+  /** Число строк соседей с каждой стороны окна */
+  int getHalo() {
+    return fusedSubSteps * type.getEvaluations() + 1;
+  }
+
+  /**
+   * Готовит плитки для решетки и метода. Окна строятся заново при смене решетки, стен или типа
+   * метода, модель сил передается окнам каждый раз.
+   *
+   * @return число плиток, 0 или 1 - считать решетку без плиток
+   */
+  int prepare(LatticeState lattice, Integrator integrator, Physics.ForceModel forceModel) {
+    IntegratorType type =
+        integrator == this.integrator ? this.type : IntegratorType.of(integrator);
+    this.integrator = integrator;
+    if (lattice != this.lattice || lattice.getSprings() != springs || type != this.type) {
+      build(lattice, type);
+    }
+    for (Tile tile : tiles) {
+      if (tile.physics.getForceModel() != forceModel) {
+        tile.physics.setForceModel(forceModel);
+      }
+    }
+    return tiles.length;
+  }
+
+  private void build(LatticeState lattice, IntegratorType type) {
+    this.lattice = lattice;
+    this.springs = lattice.getSprings();
+    this.type = type;
+    this.source = lattice.snapshot();
+
+    int rows = lattice.getWeightsNumberY();
+    int halo = getHalo();
+    int count = (rows + tileRows - 1) / tileRows;
+    long windowRows = (long) rows + 2L * halo * (count - 1);
+    if (windowRows > (long) MAX_OVERHEAD * rows) {
+      tiles = new Tile[0];
+      return;
+    }
+    tiles = new Tile[count];
+    for (int t = 0; t < tiles.length; t++) {
+      int fromRow = t * tileRows;
+      int toRow = Math.min(rows, fromRow + tileRows);
+      int windowFrom = Math.max(0, fromRow - halo);
+      int windowTo = Math.min(rows, toRow + halo);
+      Tile tile = new Tile(fromRow, toRow, windowFrom, lattice.window(windowFrom, windowTo));
+      tile.physics.setIntegrator(type.create());
+      tiles[t] = tile;
+    }
+  }
+
+  /** Число плиток после {@link #prepare} */
+  int size() {
+    return tiles.length;
+  }
+
+  /** Запоминает состояние решетки перед проходом, из него окна берут строки соседей */
+  void beginPass() {
+    source.copyFrom(lattice);
+  }
+
+  /**
+   * Заканчивает проход по плиткам. Если окна нашли столкновения, решетка возвращается к началу
+   * прохода, а следующие проходы идут без плиток.
+   *
+   * @return {@code true}, если проход нужно повторить без плиток
+   */
+  boolean endPass() {
+    for (Tile tile : tiles) {
+      if (tile.collided) {
+        lattice.copyFrom(source);
+        colliding = true;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Последний проход нашел столкновения, следующий нужно считать без плиток */
+  boolean isColliding() {
+    return colliding;
+  }
+
+  /**
+   * @param colliding нашел ли столкновения проход без плиток
+   */
+  void setColliding(boolean colliding) {
+    this.colliding = colliding;
+  }
+
+  /**
+   * Проводит окно плитки через {@code count} подшагов и пишет ее строки в решетку
+   *
+   * @param index номер плитки
+   * @param subDelta длина подшага
+   * @param count число подшагов, не больше {@link #getFusedSubSteps()}
+   */
+  void advance(int index, float subDelta, int count) {
+    Tile tile = tiles[index];
+    LatticeState window = tile.window;
+    window.copyRows(source, tile.windowFrom, 0, window.getWeightsNumberY());
+    long pairs = tile.physics.getCollisionPairs();
+    tile.physics.advance(window, subDelta, count);
+    tile.collided = tile.physics.getCollisionPairs() != pairs;
+    lattice.copyRows(
+        window, tile.fromRow - tile.windowFrom, tile.fromRow, tile.toRow - tile.fromRow);
+  }
+}
@@ -0,0 +1,78 @@
+package org.mipt;
+
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+
+/**
+ * Видимая область мира и масштаб в пикселях. Нужна для отсечения невидимых пружин и грузов и для
+ * выбора детализации по размеру на экране.
+ */
+public class ViewWindow {
+  private final Matrix4 inverse = new Matrix4();
+  private final Vector3 corner = new Vector3();
+
+  private float minX = Float.NEGATIVE_INFINITY;
+  private float minY = Float.NEGATIVE_INFINITY;
+  private float maxX = Float.POSITIVE_INFINITY;
+  private float maxY = Float.POSITIVE_INFINITY;
+  private float pixelsPerUnit = Float.POSITIVE_INFINITY;
+
+  /**
+   * Пересчитывает область по матрице камеры: углы экрана переводятся в мировые координаты, берется
+   * охватывающий их прямоугольник
+   *
+   * @param combined проекция камеры, {@code camera.combined}
+   * @param screenHeight высота окна в пикселях
+   */
+  public void update(Matrix4 combined, int screenHeight) {
+    inverse.set(combined).inv();
+    minX = Float.POSITIVE_INFINITY;
+    minY = Float.POSITIVE_INFINITY;
+    maxX = Float.NEGATIVE_INFINITY;
+    maxY = Float.NEGATIVE_INFINITY;
+    for (int c = 0; c < 4; c++) {
+      corner.set((c & 1) == 0 ? -1f : 1f, (c & 2) == 0 ? -1f : 1f, 0f).prj(inverse);
+      minX = Math.min(minX, corner.x);
+      minY = Math.min(minY, corner.y);
+      maxX = Math.max(maxX, corner.x);
+      maxY = Math.max(maxY, corner.y);
+    }
+    pixelsPerUnit = screenHeight / (maxY - minY);
+  }
+
+  /**
+   * Задает область явно
+   *
+   * @param minX левая граница
+   * @param minY нижняя граница
+   * @param maxX правая граница
+   * @param maxY верхняя граница
+   * @param pixelsPerUnit пикселей экрана на единицу длины мира
+   */
+  public void set(float minX, float minY, float maxX, float maxY, float pixelsPerUnit) {
+    this.minX = minX;
+    this.minY = minY;
+    this.maxX = maxX;
+    this.maxY = maxY;
+    this.pixelsPerUnit = pixelsPerUnit;
+  }
+
+  /** Пересекает ли прямоугольник {@code [x0, x1] x [y0, y1]} видимую область */
+  public boolean overlaps(float x0, float y0, float x1, float y1) {
+    return x0 <= maxX && x1 >= minX && y0 <= maxY && y1 >= minY;
+  }
+
+  /**
+   * Длина на экране
+   *
+   * @param length длина в мировых координатах
+   * @return длина в пикселях
+   */
+  public float toPixels(float length) {
+    return length * pixelsPerUnit;
+  }
+
+  public float getPixelsPerUnit() {
+    return pixelsPerUnit;
+  }
+}
@@ -0,0 +1,363 @@
+package org.mipt.entity;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Состояние решетки грузов в виде плоских массивов примитивов. Именно его шагает {@link
+ * org.mipt.Physics}, а объекты {@link Weight} синхронизируются с ним только для отрисовки.
+ *
+ * <p>Вектор состояния хранится блоками: сначала все x, затем все y, vx и vy. Такая раскладка
+ * позволяет численным методам работать с ним как с одним вектором без копирования.
+ */
+public class LatticeState {
+  /** Номера блоков вектора состояния */
+  public static final int X = 0;
+
+  public static final int Y = 1;
+  public static final int VX = 2;
+  public static final int VY = 3;
+
+  /** Число блоков в векторе состояния */
+  public static final int BLOCKS = 4;
+
+  private final int weightsNumberX;
+  private final int weightsNumberY;
+  private final int size;
+
+  /** Номер первой строки в исходной решетке, не ноль только у окон {@link #window} */
+  private final int firstRow;
+
+  /** Число строк исходной решетки */
+  private final int latticeRows;
+
+  /** Вектор состояния: x, y, vx, vy по {@code size} элементов в каждом блоке */
+  private final float[] state;
+
+  private final float[] mass;
+  private final float[] width;
+  private final float[] height;
+
+  /** Положения грузов при построении решетки: x и y по {@code size} элементов */
+  private final float[] rest;
+
+  /** Грузы, из которых построено состояние. Нужны для компиляции таблицы пружин. */
+  private final Weight[] weights;
+
+  /** Таблица пружин. Компилируется при первом обращении и сбрасывается при смене стен. */
+  private SpringTable springs;
+
+  /** Границы для стен */
+  private float leftWallX;
+
+  private float rightWallX;
+  private float lowerWallY;
+  private float upperWallY;
+
+  private LatticeState(
+      Weight[] weights, int weightsNumberX, int weightsNumberY, int firstRow, int latticeRows) {
+    this.weightsNumberX = weightsNumberX;
+    this.weightsNumberY = weightsNumberY;
+    this.size = weights.length;
+    this.firstRow = firstRow;
+    this.latticeRows = latticeRows;
+    this.weights = weights;
+    this.state = new float[size * BLOCKS];
+    this.mass = new float[size];
+    this.width = new float[size];
+    this.height = new float[size];
+    this.rest = new float[size * 2];
+  }
+
+  /** Копия с собственным вектором состояния и общими неизменяемыми массивами */
+  private LatticeState(LatticeState source) {
+    this.weightsNumberX = source.weightsNumberX;
+    this.weightsNumberY = source.weightsNumberY;
+    this.size = source.size;
+    this.firstRow = source.firstRow;
+    this.latticeRows = source.latticeRows;
+    this.weights = source.weights;
+    this.state = source.state.clone();
+    this.mass = source.mass;
+    this.width = source.width;
+    this.height = source.height;
+    this.rest = source.rest;
+    this.springs = source.getSprings();
+    this.leftWallX = source.leftWallX;
+    this.rightWallX = source.rightWallX;
+    this.lowerWallY = source.lowerWallY;
+    this.upperWallY = source.upperWallY;
+  }
+
+  /**
+   * Строит состояние по списку грузов, упорядоченному по строкам сетки
+   *
+   * @param weights грузы
+   * @param weightsNumberX число грузов по X
+   * @param weightsNumberY число грузов по Y
+   * @return новое состояние решетки
+   */
+  public static LatticeState of(List<Weight> weights, int weightsNumberX, int weightsNumberY) {
+    if (weights.size() != weightsNumberX * weightsNumberY) {
+      throw new IllegalArgumentException(
+          "Expected " + weightsNumberX * weightsNumberY + " weights, got " + weights.size());
+    }
+    LatticeState lattice =
+        new LatticeState(
+            weights.toArray(new Weight[0]), weightsNumberX, weightsNumberY, 0, weightsNumberY);
+    for (int i = 0; i < lattice.size; i++) {
+      Weight w = lattice.weights[i];
+      lattice.mass[i] = w.getMass();
+      lattice.width[i] = w.getWidth();
+      lattice.height[i] = w.getHeight();
+    }
+    lattice.copyFrom(weights);
+    System.arraycopy(lattice.state, 0, lattice.rest, 0, lattice.rest.length);
+    return lattice;
+  }
+
+  /**
+   * Загружает положения и скорости из грузов
+   *
+   * @param weights грузы в том же порядке, что и при построении
+   */
+  public void copyFrom(List<Weight> weights) {
+    for (int i = 0; i < size; i++) {
+      Weight w = weights.get(i);
+      state[i] = w.getX();
+      state[size + i] = w.getY();
+      state[2 * size + i] = w.getVelocityX();
+      state[3 * size + i] = w.getVelocityY();
+    }
+  }
+
+  /**
+   * Снимок состояния. Массы, размеры и таблица пружин общие с исходной решеткой, а вектор состояния
+   * свой, поэтому снимок можно читать в другом потоке, пока решетка шагает дальше.
+   *
+   * @return снимок текущего состояния
+   */
+  public LatticeState snapshot() {
+    return new LatticeState(this);
+  }
+
+  /**
+   * Окно из строк сетки {@code [fromRow, toRow)}: отдельная решетка с массами, размерами,
+   * положением покоя и состоянием этих строк и теми же стенами. Пружины к строкам вне окна в его
+   * таблицу не входят, а пружины к стенам есть только у краев исходной решетки. Поэтому грузы
+   * внутри окна движутся так же, как в исходной решетке, а ошибка от обрезанных пружин идет от
+   * краев окна вглубь на строку за вычисление сил.
+   *
+   * @param fromRow первая строка окна
+   * @param toRow строка после последней
+   * @return новое окно, не связанное с этой решеткой
+   */
+  public LatticeState window(int fromRow, int toRow) {
+    if (fromRow < 0 || toRow > weightsNumberY || fromRow >= toRow) {
+      throw new IllegalArgumentException(
+          "Bad window rows " + fromRow + ":" + toRow + " of " + weightsNumberY);
+    }
+    int from = fromRow * weightsNumberX;
+    int count = (toRow - fromRow) * weightsNumberX;
+    LatticeState window =
+        new LatticeState(
+            Arrays.copyOfRange(weights, from, from + count),
+            weightsNumberX,
+            toRow - fromRow,
+            firstRow + fromRow,
+            latticeRows);
+    System.arraycopy(mass, from, window.mass, 0, count);
+    System.arraycopy(width, from, window.width, 0, count);
+    System.arraycopy(height, from, window.height, 0, count);
+    System.arraycopy(rest, from, window.rest, 0, count);
+    System.arraycopy(rest, size + from, window.rest, count, count);
+    window.leftWallX = leftWallX;
+    window.rightWallX = rightWallX;
+    window.lowerWallY = lowerWallY;
+    window.upperWallY = upperWallY;
+    window.copyRows(this, fromRow, 0, toRow - fromRow);
+    return window;
+  }
+
+  /**
+   * Копирует положения и скорости строк сетки из решетки той же ширины, например между решеткой и
+   * ее окном
+   *
+   * @param source решетка, из которой копируются строки
+   * @param sourceRow первая строка в источнике
+   * @param targetRow первая строка в этой решетке
+   * @param rows число строк
+   */
+  public void copyRows(LatticeState source, int sourceRow, int targetRow, int rows) {
+    if (source.weightsNumberX != weightsNumberX) {
+      throw new IllegalArgumentException(
+          "Expected " + weightsNumberX + " weights in a row, got " + source.weightsNumberX);
+    }
+    int count = rows * weightsNumberX;
+    for (int block = 0; block < BLOCKS; block++) {
+      System.arraycopy(
+          source.state,
+          block * source.size + sourceRow * weightsNumberX,
+          state,
+          block * size + targetRow * weightsNumberX,
+          count);
+    }
+  }
+
+  /**
+   * Копирует вектор состояния из решетки того же размера, например из исходной в снимок
+   *
+   * @param source решетка, из которой копируется состояние
+   */
+  public void copyFrom(LatticeState source) {
+    if (source.size != size) {
+      throw new IllegalArgumentException("Expected " + size + " weights, got " + source.size);
+    }
+    System.arraycopy(source.state, 0, state, 0, state.length);
+  }
+
+  /**
+   * Кинетическая энергия груза
+   *
+   * @param index номер груза
+   * @return {@code m * v^2 / 2}
+   */
+  public float kineticEnergy(int index) {
+    float vx = state[2 * size + index];
+    float vy = state[3 * size + index];
+    return 0.5f * mass[index] * (vx * vx + vy * vy);
+  }
+
+  /**
+   * Выгружает положения и скорости в грузы (а через них в якоря пружин) для отрисовки
+   *
+   * @param weights грузы в том же порядке, что и при построении
+   */
+  public void copyTo(List<Weight> weights) {
+    for (int i = 0; i < size; i++) {
+      Weight w = weights.get(i);
+      w.setVelocityX(state[2 * size + i]);
+      w.setVelocityY(state[3 * size + i]);
+      w.setX(state[i]);
+      w.setY(state[size + i]);
+    }
+  }
+
+  /**
+   * Смещение блока в векторе состояния
+   *
+   * @param block один из {@link #X}, {@link #Y}, {@link #VX}, {@link #VY}
+   * @return индекс первого элемента блока
+   */
+  public int offset(int block) {
+    return block * size;
+  }
+
+  public float[] getState() {
+    return state;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int getWeightsNumberX() {
+    return weightsNumberX;
+  }
+
+  public int getWeightsNumberY() {
+    return weightsNumberY;
+  }
+
+  /** Номер первой строки в исходной решетке: ноль, если это не окно */
+  public int getFirstRow() {
+    return firstRow;
+  }
+
+  /** Число строк исходной решетки */
+  public int getLatticeRows() {
+    return latticeRows;
+  }
+
+  public float[] getMass() {
+    return mass;
+  }
+
+  public float[] getWidth() {
+    return width;
+  }
+
+  public float[] getHeight() {
+    return height;
+  }
+
+  /**
+   * Положение покоя: положения грузов, из которых построено состояние, с той же раскладкой, что у
+   * первых двух блоков вектора состояния
+   *
+   * @return x и y по {@code size()} элементов, общие со снимками
+   */
+  public float[] getRestPositions() {
+    return rest;
+  }
+
+  /**
+   * Таблица пружин решетки. Стены должны быть заданы до первого обращения.
+   *
+   * @return скомпилированная топология пружин
+   */
+  public SpringTable getSprings() {
+    if (springs == null) {
+      springs = SpringTable.compile(this, weights);
+    }
+    return springs;
+  }
+
+  public float getX(int index) {
+    return state[index];
+  }
+
+  public float getY(int index) {
+    return state[size + index];
+  }
+
+  public float getVelocityX(int index) {
+    return state[2 * size + index];
+  }
+
+  public float getVelocityY(int index) {
+    return state[3 * size + index];
+  }
+
+  public void setVelocityX(int index, float velocityX) {
+    state[2 * size + index] = velocityX;
+  }
+
+  public void setVelocityY(int index, float velocityY) {
+    state[3 * size + index] = velocityY;
+  }
+
+  public void setWalls(float leftWallX, float rightWallX, float lowerWallY, float upperWallY) {
+    this.leftWallX = leftWallX;
+    this.rightWallX = rightWallX;
+    this.lowerWallY = lowerWallY;
+    this.upperWallY = upperWallY;
+    this.springs = null;
+  }
+
+  public float getLeftWallX() {
+    return leftWallX;
+  }
+
+  public float getRightWallX() {
+    return rightWallX;
+  }
+
+  public float getLowerWallY() {
+    return lowerWallY;
+  }
+
+  public float getUpperWallY() {
+    return upperWallY;
+  }
+}
@@ -0,0 +1,335 @@
+package org.mipt.entity;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Топология пружин решетки, один раз скомпилированная в плоские массивы.
+ *
+ * <p>Пружина {@code e} тянется от точки крепления на грузе {@code from[e]} к точке крепления на
+ * грузе {@code to[e]}:
+ *
+ * <pre>
+ *   a = (x[from] + fromOffsetX, y[from] + fromOffsetY)
+ *   b = (toScaleX * x[to] + toOffsetX, toScaleY * y[to] + toOffsetY)
+ * </pre>
+ *
+ * Пружина к стене хранится с {@code to == from}: по оси, перпендикулярной стене, масштаб равен нулю
+ * и смещение равно координате стены, а по другой оси точка следует за грузом. Так стены не требуют
+ * отдельных ветвлений в цикле по пружинам.
+ *
+ * <p>Для сборки сил по грузам хранится список инцидентности в формате CSR: для груза {@code i}
+ * пружины {@code incidenceEdge[incidenceStart[i] .. incidenceStart[i + 1])} со знаком {@code
+ * incidenceSign}, +1 для конца {@code from} и -1 для конца {@code to}.
+ */
+public class SpringTable {
+  private final int size;
+  private final int[] from;
+  private final int[] to;
+  private final float[] fromOffsetX;
+  private final float[] fromOffsetY;
+  private final float[] toScaleX;
+  private final float[] toScaleY;
+  private final float[] toOffsetX;
+  private final float[] toOffsetY;
+  private final float[] k;
+  private final float[] restLength;
+
+  /** Исходные пружины. Нужны только для отрисовки и статистики, не для подсчета сил. */
+  private final Spring[] springs;
+
+  private final int[] incidenceStart;
+  private final int[] incidenceEdge;
+  private final float[] incidenceSign;
+
+  private SpringTable(Builder b, int weightsNumber) {
+    size = b.springs.size();
+    from = toIntArray(b.from);
+    to = toIntArray(b.to);
+    fromOffsetX = toFloatArray(b.fromOffsetX);
+    fromOffsetY = toFloatArray(b.fromOffsetY);
+    toScaleX = toFloatArray(b.toScaleX);
+    toScaleY = toFloatArray(b.toScaleY);
+    toOffsetX = toFloatArray(b.toOffsetX);
+    toOffsetY = toFloatArray(b.toOffsetY);
+    springs = b.springs.toArray(new Spring[0]);
+    k = new float[size];
+    restLength = new float[size];
+    for (int e = 0; e < size; e++) {
+      k[e] = springs[e].getK();
+      restLength[e] = springs[e].getLength();
+    }
+
+    incidenceStart = new int[weightsNumber + 1];
+    for (int i = 0; i < weightsNumber; i++) {
+      incidenceStart[i + 1] = incidenceStart[i] + b.incidence.get(i).size();
+    }
+    incidenceEdge = new int[incidenceStart[weightsNumber]];
+    incidenceSign = new float[incidenceStart[weightsNumber]];
+    for (int i = 0; i < weightsNumber; i++) {
+      int p = incidenceStart[i];
+      for (int signedEdge : b.incidence.get(i)) {
+        incidenceEdge[p] = signedEdge >= 0 ? signedEdge : ~signedEdge;
+        incidenceSign[p] = signedEdge >= 0 ? 1f : -1f;
+        p++;
+      }
+    }
+  }
+
+  /**
+   * Компилирует пружины, прикрепленные к грузам решетки. Горизонтальные и вертикальные пружины
+   * крепятся к серединам сторон груза, как при подсчете сил по полям {@link Weight}. Диагональная
+   * пружина добавляется со стороны нижнего груза и крепится к серединам верхних сторон обоих
+   * грузов. Подсчет по {@link Weight} для верхнего груза брал середины нижних сторон, поэтому силы
+   * на него совпадают с прежними только при одинаковой высоте грузов и не побитно.
+   *
+   * <p>У окна {@link LatticeState#window} пружины к стенам есть только у краев исходной решетки, а
+   * пружины к строкам вне окна опускаются.
+   *
+   * @param lattice решетка, стены которой уже заданы
+   * @param weights грузы решетки по строкам
+   * @return таблица пружин
+   */
+  static SpringTable compile(LatticeState lattice, Weight[] weights) {
+    final int nx = lattice.getWeightsNumberX();
+    final int ny = lattice.getWeightsNumberY();
+    final int firstRow = lattice.getFirstRow();
+    final int lastRow = lattice.getLatticeRows() - 1;
+    Builder b = new Builder(weights.length);
+
+    for (int idx = 0; idx < weights.length; idx++) {
+      int j = idx / nx;
+      int i = idx % nx;
+      int row = firstRow + j;
+      Weight w = weights[idx];
+      float width = w.getWidth();
+      float h = w.getHeight();
+      float halfW = width / 2f;
+      float halfH = h / 2f;
+
+      if (w.getLeftSpring() != null) {
+        if (i == 0) {
+          b.wall(w.getLeftSpring(), idx, 0f, halfH, 0f, lattice.getLeftWallX(), 1f, halfH);
+        } else {
+          Weight o = weights[idx - 1];
+          b.link(w.getLeftSpring(), idx, 0f, halfH, idx - 1, o.getWidth(), o.getHeight() / 2f);
+        }
+      }
+
+      if (w.getRightSpring() != null) {
+        if (i == nx - 1) {
+          b.wall(w.getRightSpring(), idx, width, halfH, 0f, lattice.getRightWallX(), 1f, halfH);
+        } else {
+          Weight o = weights[idx + 1];
+          b.link(w.getRightSpring(), idx, width, halfH, idx + 1, 0f, o.getHeight() / 2f);
+        }
+      }
+
+      if (w.getLowerSpring() != null) {
+        if (row == 0) {
+          b.wall(w.getLowerSpring(), idx, halfW, 0f, 1f, halfW, 0f, lattice.getLowerWallY());
+        } else if (j > 0) {
+          Weight o = weights[idx - nx];
+          b.link(w.getLowerSpring(), idx, halfW, 0f, idx - nx, o.getWidth() / 2f, o.getHeight());
+        }
+      }
+
+      if (w.getUpperSpring() != null) {
+        if (row == lastRow) {
+          b.wall(w.getUpperSpring(), idx, halfW, h, 1f, halfW, 0f, lattice.getUpperWallY());
+        } else if (j < ny - 1) {
+          Weight o = weights[idx + nx];
+          b.link(w.getUpperSpring(), idx, halfW, h, idx + nx, o.getWidth() / 2f, 0f);
+        }
+      }
+
+      if (w.getUpperLeftSpring() != null && i > 0 && j < ny - 1) {
+        int o = idx + nx - 1;
+        Weight ow = weights[o];
+        b.link(w.getUpperLeftSpring(), idx, halfW, h, o, ow.getWidth() / 2f, ow.getHeight());
+      }
+      if (w.getUpperRightSpring() != null && i < nx - 1 && j < ny - 1) {
+        int o = idx + nx + 1;
+        Weight ow = weights[o];
+        b.link(w.getUpperRightSpring(), idx, halfW, h, o, ow.getWidth() / 2f, ow.getHeight());
+      }
+      if (w.getLowerLeftSpring() != null && i > 0 && j > 0) {
+        Weight o = weights[idx - nx - 1];
+        b.link(w.getLowerLeftSpring(), idx, halfW, 0f, idx - nx - 1, o.getWidth() / 2f, 0f);
+      }
+      if (w.getLowerRightSpring() != null && i < nx - 1 && j > 0) {
+        Weight o = weights[idx - nx + 1];
+        b.link(w.getLowerRightSpring(), idx, halfW, 0f, idx - nx + 1, o.getWidth() / 2f, 0f);
+      }
+    }
+
+    return new SpringTable(b, weights.length);
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Потенциальная энергия всех пружин
+   *
+   * @param state вектор состояния с раскладкой {@link LatticeState}
+   * @param weightsNumber число грузов
+   * @return сумма {@code k * dx^2 / 2} по пружинам
+   */
+  public float potentialEnergy(float[] state, int weightsNumber) {
+    float total = 0f;
+    for (int e = 0; e < size; e++) {
+      int a = from[e];
+      int b = to[e];
+      float dx = (state[a] + fromOffsetX[e]) - (toScaleX[e] * state[b] + toOffsetX[e]);
+      float dy =
+          (state[weightsNumber + a] + fromOffsetY[e])
+              - (toScaleY[e] * state[weightsNumber + b] + toOffsetY[e]);
+      float ext = (float) Math.sqrt(dx * dx + dy * dy) - restLength[e];
+      total += 0.5f * k[e] * ext * ext;
+    }
+    return total;
+  }
+
+  public int[] getFrom() {
+    return from;
+  }
+
+  public int[] getTo() {
+    return to;
+  }
+
+  public float[] getFromOffsetX() {
+    return fromOffsetX;
+  }
+
+  public float[] getFromOffsetY() {
+    return fromOffsetY;
+  }
+
+  public float[] getToScaleX() {
+    return toScaleX;
+  }
+
+  public float[] getToScaleY() {
+    return toScaleY;
+  }
+
+  public float[] getToOffsetX() {
+    return toOffsetX;
+  }
+
+  public float[] getToOffsetY() {
+    return toOffsetY;
+  }
+
+  public float[] getK() {
+    return k;
+  }
+
+  public float[] getRestLength() {
+    return restLength;
+  }
+
+  public Spring getSpring(int index) {
+    return springs[index];
+  }
+
+  public int[] getIncidenceStart() {
+    return incidenceStart;
+  }
+
+  public int[] getIncidenceEdge() {
+    return incidenceEdge;
+  }
+
+  public float[] getIncidenceSign() {
+    return incidenceSign;
+  }
+
+  private static int[] toIntArray(List<Integer> list) {
+    int[] res = new int[list.size()];
+    for (int i = 0; i < res.length; i++) {
+      res[i] = list.get(i);
+    }
+    return res;
+  }
+
+  private static float[] toFloatArray(List<Float> list) {
+    float[] res = new float[list.size()];
+    for (int i = 0; i < res.length; i++) {
+      res[i] = list.get(i);
+    }
+    return res;
+  }
+
+  /** Накапливает пружины при компиляции */
+  private static final class Builder {
+    private final List<Spring> springs = new ArrayList<>();
+    private final List<Integer> from = new ArrayList<>();
+    private final List<Integer> to = new ArrayList<>();
+    private final List<Float> fromOffsetX = new ArrayList<>();
+    private final List<Float> fromOffsetY = new ArrayList<>();
+    private final List<Float> toScaleX = new ArrayList<>();
+    private final List<Float> toScaleY = new ArrayList<>();
+    private final List<Float> toOffsetX = new ArrayList<>();
+    private final List<Float> toOffsetY = new ArrayList<>();
+    private final Map<Spring, Integer> edgeBySpring = new IdentityHashMap<>();
+
+    /** Пружины каждого груза; конец {@code to} хранится как {@code ~edge} */
+    private final List<List<Integer>> incidence = new ArrayList<>();
+
+    Builder(int weightsNumber) {
+      for (int i = 0; i < weightsNumber; i++) {
+        incidence.add(new ArrayList<Integer>());
+      }
+    }
+
+    /**
+     * Пружина между двумя грузами. Если та же пружина уже добавлена со стороны второго груза,
+     * текущий груз становится ее концом {@code to}, и сила действует на оба груза.
+     */
+    void link(Spring s, int a, float aOffX, float aOffY, int b, float bOffX, float bOffY) {
+      Integer existing = edgeBySpring.get(s);
+      if (existing != null && to.get(existing) == a && from.get(existing) == b) {
+        incidence.get(a).add(~existing);
+        return;
+      }
+      int e = add(s, a, aOffX, aOffY, b, 1f, bOffX, 1f, bOffY);
+      edgeBySpring.put(s, e);
+    }
+
+    /** Пружина от груза к стене. Вторая точка крепления задается масштабом и смещением. */
+    void wall(
+        Spring s, int a, float aOffX, float aOffY, float sx, float offX, float sy, float offY) {
+      add(s, a, aOffX, aOffY, a, sx, offX, sy, offY);
+    }
+
+    private int add(
+        Spring s,
+        int a,
+        float aOffX,
+        float aOffY,
+        int b,
+        float sx,
+        float offX,
+        float sy,
+        float offY) {
+      int e = springs.size();
+      springs.add(s);
+      from.add(a);
+      to.add(b);
+      fromOffsetX.add(aOffX);
+      fromOffsetY.add(aOffY);
+      toScaleX.add(sx);
+      toScaleY.add(sy);
+      toOffsetX.add(offX);
+      toOffsetY.add(offY);
+      incidence.get(a).add(e);
+      return e;
+    }
+  }
+}
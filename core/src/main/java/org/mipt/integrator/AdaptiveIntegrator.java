@@ -0,0 +1,26 @@
+package org.mipt.integrator;
+
+import org.mipt.entity.LatticeState;
+
+/**
+ * Метод с автоматическим выбором шага. Вместо фиксированного числа подшагов {@link
+ * org.mipt.Physics} вызывает {@link #advance}, пока не пройдет весь шаг кадра.
+ */
+public interface AdaptiveIntegrator extends Integrator {
+  /**
+   * Делает один принятый шаг длиной не больше {@code maxH}. Отклоненные попытки повторяются
+   * внутри с меньшим шагом.
+   *
+   * @param lattice решетка, вектор состояния которой обновляется
+   * @param maxH наибольший допустимый шаг, обычно остаток шага кадра
+   * @param derivative правая часть системы
+   * @return длина сделанного шага
+   */
+  float advance(LatticeState lattice, float maxH, Derivative derivative);
+
+  /** Число принятых шагов */
+  long getAcceptedSteps();
+
+  /** Число отклоненных попыток */
+  long getRejectedSteps();
+}
@@ -0,0 +1,16 @@
+package org.mipt.integrator;
+
+import org.mipt.entity.LatticeState;
+
+/** Правая часть системы уравнений движения решетки */
+public interface Derivative {
+  /**
+   * Считает производную вектора состояния: в блоки положений пишутся скорости, в блоки скоростей -
+   * ускорения. Ускорения зависят только от положений.
+   *
+   * @param lattice решетка, задающая массы и пружины
+   * @param state вектор состояния с раскладкой {@link LatticeState}
+   * @param res вектор, в который записывается производная
+   */
+  void evaluate(LatticeState lattice, float[] state, float[] res);
+}
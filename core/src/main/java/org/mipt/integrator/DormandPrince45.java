@@ -0,0 +1,227 @@
+package org.mipt.integrator;
+
+import org.mipt.entity.LatticeState;
+
+/**
+ * Вложенный метод Рунге-Кутты Дормана-Принса 5(4). Шаг делается решением 5-го порядка, разность с
+ * решением 4-го порядка дает оценку локальной ошибки, по которой выбирается следующий шаг. Пока
+ * решетка покоится или медленно затухает, шаги длинные; после толчка шаг дробится.
+ *
+ * <p>Ошибка нормируется на {@code tolerance * (1 + |y|)} по каждой компоненте вектора состояния
+ * и усредняется по среднеквадратичной норме. Для положений {@code y} - смещение от положения покоя
+ * {@link LatticeState#getRestPositions()}: мировые координаты грузов порядка тысяч, и от них
+ * допуск по положениям был бы в тысячи раз слабее, чем по скоростям, и зависел бы от того, где
+ * стоит решетка. Производная в начале шага считается заново: между
+ * шагами столкновения и толчки меняют скорости.
+ */
+public class DormandPrince45 implements AdaptiveIntegrator {
+  public static final float DEFAULT_TOLERANCE = 1e-4f;
+
+  private static final float MIN_STEP = 1e-6f;
+  private static final float SAFETY = 0.9f;
+  private static final float MIN_FACTOR = 0.2f;
+  private static final float MAX_FACTOR = 5f;
+
+  private static final float A21 = 1f / 5f;
+  private static final float A31 = 3f / 40f;
+  private static final float A32 = 9f / 40f;
+  private static final float A41 = 44f / 45f;
+  private static final float A42 = -56f / 15f;
+  private static final float A43 = 32f / 9f;
+  private static final float A51 = 19372f / 6561f;
+  private static final float A52 = -25360f / 2187f;
+  private static final float A53 = 64448f / 6561f;
+  private static final float A54 = -212f / 729f;
+  private static final float A61 = 9017f / 3168f;
+  private static final float A62 = -355f / 33f;
+  private static final float A63 = 46732f / 5247f;
+  private static final float A64 = 49f / 176f;
+  private static final float A65 = -5103f / 18656f;
+
+  /** Веса решения 5-го порядка */
+  private static final float B1 = 35f / 384f;
+
+  private static final float B3 = 500f / 1113f;
+  private static final float B4 = 125f / 192f;
+  private static final float B5 = -2187f / 6784f;
+  private static final float B6 = 11f / 84f;
+
+  /** Разность весов решений 5-го и 4-го порядка */
+  private static final float E1 = 71f / 57600f;
+
+  private static final float E3 = -71f / 16695f;
+  private static final float E4 = 71f / 1920f;
+  private static final float E5 = -17253f / 339200f;
+  private static final float E6 = 22f / 525f;
+  private static final float E7 = -1f / 40f;
+
+  private float tolerance;
+
+  /** Шаг, предложенный после последней попытки. 0 - еще не было ни одной попытки. */
+  private float stepSize;
+
+  private long acceptedSteps;
+  private long rejectedSteps;
+
+  private float[] k1;
+  private float[] k2;
+  private float[] k3;
+  private float[] k4;
+  private float[] k5;
+  private float[] k6;
+  private float[] k7;
+
+  /** Промежуточное состояние стадии, в конце - решение 5-го порядка */
+  private float[] stage;
+
+  public DormandPrince45() {
+    this(DEFAULT_TOLERANCE);
+  }
+
+  /**
+   * Создает метод с заданной точностью
+   *
+   * @param tolerance допустимая локальная ошибка относительно {@code 1 + |y|}, для положений
+   *     {@code y} - смещение от положения покоя
+   */
+  public DormandPrince45(float tolerance) {
+    setTolerance(tolerance);
+  }
+
+  public float getTolerance() {
+    return tolerance;
+  }
+
+  public void setTolerance(float tolerance) {
+    if (!(tolerance > 0f)) {
+      throw new IllegalArgumentException("tolerance must be positive: " + tolerance);
+    }
+    this.tolerance = tolerance;
+  }
+
+  /** Шаг, с которого начнется следующая попытка */
+  public float getStepSize() {
+    return stepSize;
+  }
+
+  @Override
+  public long getAcceptedSteps() {
+    return acceptedSteps;
+  }
+
+  @Override
+  public long getRejectedSteps() {
+    return rejectedSteps;
+  }
+
+  public void resetCounters() {
+    acceptedSteps = 0;
+    rejectedSteps = 0;
+  }
+
+  /** Проходит весь шаг {@code h} несколькими адаптивными шагами */
+  @Override
+  public void step(LatticeState lattice, float h, Derivative derivative) {
+    float remaining = h;
+    while (remaining > 0f) {
+      remaining -= advance(lattice, remaining, derivative);
+    }
+  }
+
+  @Override
+  public float advance(LatticeState lattice, float maxH, Derivative derivative) {
+    float[] state = lattice.getState();
+    int length = state.length;
+    ensureBuffers(length);
+
+    derivative.evaluate(lattice, state, k1);
+    float h = stepSize > 0f ? Math.min(stepSize, maxH) : maxH;
+    // Не оставляем хвост, который пришлось бы проходить отдельным крошечным шагом
+    if (h > maxH * (1f - MIN_FACTOR)) {
+      h = maxH;
+    }
+    while (true) {
+      float error = attempt(lattice, state, h, derivative);
+      float factor =
+          error == 0f
+              ? MAX_FACTOR
+              : Math.max(MIN_FACTOR, Math.min(MAX_FACTOR, SAFETY * (float) Math.pow(error, -0.2)));
+      if (error <= 1f || h <= MIN_STEP) {
+        System.arraycopy(stage, 0, state, 0, length);
+        acceptedSteps++;
+        stepSize = h * factor;
+        return h;
+      }
+      rejectedSteps++;
+      h = Math.max(MIN_STEP, h * Math.min(1f, factor));
+    }
+  }
+
+  /**
+   * Считает стадии 2-7 из {@code k1}, пишет решение 5-го порядка в {@link #stage}
+   *
+   * @return нормированная ошибка шага, шаг принимается при значении не больше 1
+   */
+  private float attempt(LatticeState lattice, float[] state, float h, Derivative derivative) {
+    int length = state.length;
+
+    for (int i = 0; i < length; i++) {
+      stage[i] = state[i] + h * (A21 * k1[i]);
+    }
+    derivative.evaluate(lattice, stage, k2);
+
+    for (int i = 0; i < length; i++) {
+      stage[i] = state[i] + h * (A31 * k1[i] + A32 * k2[i]);
+    }
+    derivative.evaluate(lattice, stage, k3);
+
+    for (int i = 0; i < length; i++) {
+      stage[i] = state[i] + h * (A41 * k1[i] + A42 * k2[i] + A43 * k3[i]);
+    }
+    derivative.evaluate(lattice, stage, k4);
+
+    for (int i = 0; i < length; i++) {
+      stage[i] = state[i] + h * (A51 * k1[i] + A52 * k2[i] + A53 * k3[i] + A54 * k4[i]);
+    }
+    derivative.evaluate(lattice, stage, k5);
+
+    for (int i = 0; i < length; i++) {
+      stage[i] =
+          state[i] + h * (A61 * k1[i] + A62 * k2[i] + A63 * k3[i] + A64 * k4[i] + A65 * k5[i]);
+    }
+    derivative.evaluate(lattice, stage, k6);
+
+    for (int i = 0; i < length; i++) {
+      stage[i] =
+          state[i] + h * (B1 * k1[i] + B3 * k3[i] + B4 * k4[i] + B5 * k5[i] + B6 * k6[i]);
+    }
+    derivative.evaluate(lattice, stage, k7);
+
+    float[] rest = lattice.getRestPositions();
+    int positions = lattice.offset(LatticeState.VX);
+    float sum = 0f;
+    for (int i = 0; i < length; i++) {
+      float e =
+          h * (E1 * k1[i] + E3 * k3[i] + E4 * k4[i] + E5 * k5[i] + E6 * k6[i] + E7 * k7[i]);
+      float origin = i < positions ? rest[i] : 0f;
+      float size = Math.max(Math.abs(state[i] - origin), Math.abs(stage[i] - origin));
+      float ratio = e / (tolerance * (1f + size));
+      sum += ratio * ratio;
+    }
+    return (float) Math.sqrt(sum / length);
+  }
+
+  private void ensureBuffers(int length) {
+    if (stage != null && stage.length == length) {
+      return;
+    }
+    k1 = new float[length];
+    k2 = new float[length];
+    k3 = new float[length];
+    k4 = new float[length];
+    k5 = new float[length];
+    k6 = new float[length];
+    k7 = new float[length];
+    stage = new float[length];
+  }
+}
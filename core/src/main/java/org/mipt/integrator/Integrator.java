@@ -0,0 +1,21 @@
+package org.mipt.integrator;
+
+import org.mipt.entity.LatticeState;
+
+/** Численный метод, который продвигает состояние решетки на один шаг по времени */
+public interface Integrator {
+  /**
+   * Делает шаг на месте
+   *
+   * @param lattice решетка, вектор состояния которой обновляется
+   * @param h шаг по времени
+   * @param derivative правая часть системы
+   */
+  void step(LatticeState lattice, float h, Derivative derivative);
+
+  /**
+   * Сбрасывает то, что метод запомнил между шагами. Вызывается, когда правая часть меняется при
+   * тех же положениях: при смене модели сил, стен или таблицы пружин.
+   */
+  default void invalidate() {}
+}
@@ -0,0 +1,74 @@
+package org.mipt.integrator;
+
+/** Доступные численные методы */
+public enum IntegratorType {
+  /** Рунге-Кутта 4-го порядка, 4 вычисления сил на шаг */
+  RK4(RungeKutta4.class, 4) {
+    @Override
+    public Integrator create() {
+      return new RungeKutta4();
+    }
+  },
+  /** Скоростной метод Верле, 1 вычисление сил на шаг */
+  VERLET(VelocityVerlet.class, 1) {
+    @Override
+    public Integrator create() {
+      return new VelocityVerlet();
+    }
+  },
+  /** Позиционный метод Верле (leapfrog), 1 вычисление сил на шаг */
+  LEAPFROG(PositionVerlet.class, 1) {
+    @Override
+    public Integrator create() {
+      return new PositionVerlet();
+    }
+  },
+  /** Дорман-Принс 5(4) с автоматическим выбором шага, 7 вычислений сил на попытку */
+  DOPRI45(DormandPrince45.class, 7) {
+    @Override
+    public Integrator create() {
+      return new DormandPrince45();
+    }
+  };
+
+  /** Копия {@link #values()}, чтобы {@link #of} не выделял память */
+  private static final IntegratorType[] TYPES = values();
+
+  private final Class<? extends Integrator> type;
+  private final int evaluations;
+
+  IntegratorType(Class<? extends Integrator> type, int evaluations) {
+    this.type = type;
+    this.evaluations = evaluations;
+  }
+
+  /**
+   * Число вычислений сил на шаг, у метода с автоматическим выбором шага - на попытку. Каждое
+   * вычисление связывает груз с соседями, так что за шаг влияние проходит столько строк сетки.
+   */
+  public int getEvaluations() {
+    return evaluations;
+  }
+
+  /**
+   * Создает новый экземпляр метода со своими буферами
+   *
+   * @return метод
+   */
+  public abstract Integrator create();
+
+  /**
+   * Тип существующего метода
+   *
+   * @param integrator метод
+   * @return тип, который создает методы того же класса
+   */
+  public static IntegratorType of(Integrator integrator) {
+    for (IntegratorType type : TYPES) {
+      if (type.type == integrator.getClass()) {
+        return type;
+      }
+    }
+    throw new IllegalArgumentException("Unknown integrator " + integrator.getClass().getName());
+  }
+}
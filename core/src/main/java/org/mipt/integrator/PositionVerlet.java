@@ -0,0 +1,33 @@
+package org.mipt.integrator;
+
+import org.mipt.entity.LatticeState;
+
+/**
+ * Позиционный метод Верле, он же leapfrog (drift-kick-drift). Симплектический метод 2-го порядка с
+ * одним вычислением сил на шаг и без состояния между шагами.
+ */
+public class PositionVerlet implements Integrator {
+  /** Производная в середине шага, нужны только блоки скоростей (ускорения) */
+  private float[] diff;
+
+  @Override
+  public void step(LatticeState lattice, float h, Derivative derivative) {
+    float[] state = lattice.getState();
+    int positions = lattice.offset(LatticeState.VX);
+    if (diff == null || diff.length != state.length) {
+      diff = new float[state.length];
+    }
+
+    float halfH = h * 0.5f;
+    for (int i = 0; i < positions; i++) {
+      state[i] = state[i] + state[positions + i] * halfH;
+    }
+
+    derivative.evaluate(lattice, state, diff);
+    for (int i = 0; i < positions; i++) {
+      float v = state[positions + i] + diff[positions + i] * h;
+      state[positions + i] = v;
+      state[i] = state[i] + v * halfH;
+    }
+  }
+}
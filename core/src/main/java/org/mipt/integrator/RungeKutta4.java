@@ -0,0 +1,66 @@
+package org.mipt.integrator;
+
+import org.mipt.entity.LatticeState;
+
+/**
+ * Классический метод Рунге-Кутты 4-го порядка. Четыре вычисления сил на шаг, энергия медленно
+ * уплывает на длинных прогонах.
+ */
+public class RungeKutta4 implements Integrator {
+  /** Буферы стадий. Переиспользуются между шагами, чтобы не нагружать GC. */
+  private float[] k1;
+
+  private float[] k2;
+  private float[] k3;
+  private float[] k4;
+
+  /** Промежуточное состояние, в котором считается производная на стадиях 2-4 */
+  private float[] stage;
+
+  /**
+   * Стадии пишутся в заранее выделенные буферы, масштабирование стадии и построение следующего
+   * промежуточного состояния сделаны одним циклом.
+   */
+  @Override
+  public void step(LatticeState lattice, float h, Derivative derivative) {
+    float[] state = lattice.getState();
+    int length = state.length;
+    ensureBuffers(length);
+
+    derivative.evaluate(lattice, state, k1);
+    for (int i = 0; i < length; i++) {
+      k1[i] = k1[i] * h;
+      stage[i] = state[i] + k1[i] * 0.5f;
+    }
+
+    derivative.evaluate(lattice, stage, k2);
+    for (int i = 0; i < length; i++) {
+      k2[i] = k2[i] * h;
+      stage[i] = state[i] + k2[i] * 0.5f;
+    }
+
+    derivative.evaluate(lattice, stage, k3);
+    for (int i = 0; i < length; i++) {
+      k3[i] = k3[i] * h;
+      stage[i] = state[i] + k3[i];
+    }
+
+    derivative.evaluate(lattice, stage, k4);
+    float sixth = 1.0f / 6.0f;
+    for (int i = 0; i < length; i++) {
+      float newZ = k1[i] + k2[i] * 2.0f + k3[i] * 2.0f + k4[i] * h;
+      state[i] = state[i] + newZ * sixth;
+    }
+  }
+
+  private void ensureBuffers(int length) {
+    if (stage != null && stage.length == length) {
+      return;
+    }
+    k1 = new float[length];
+    k2 = new float[length];
+    k3 = new float[length];
+    k4 = new float[length];
+    stage = new float[length];
+  }
+}
@@ -0,0 +1,68 @@
+package org.mipt.integrator;
+
+import org.mipt.entity.LatticeState;
+
+/**
+ * Скоростной метод Верле (kick-drift-kick). Симплектический метод 2-го порядка: энергия колеблется
+ * около точного значения и не уплывает.
+ *
+ * <p>Ускорения с конца шага переиспользуются в начале следующего, так что силы считаются один раз
+ * на шаг. Столкновения и толчки меняют только скорости и кэш не портят. Если положения изменились
+ * снаружи, например при загрузке состояния, ускорения считаются заново, а смену самих сил при тех
+ * же положениях сообщает {@link #invalidate()}.
+ */
+public class VelocityVerlet implements Integrator {
+  /** Производная в конце прошлого шага, нужны только блоки скоростей (ускорения) */
+  private float[] diff;
+
+  /** Положения, для которых посчитаны ускорения в {@link #diff} */
+  private float[] cachedPositions;
+
+  private boolean cacheValid;
+
+  @Override
+  public void step(LatticeState lattice, float h, Derivative derivative) {
+    float[] state = lattice.getState();
+    int positions = lattice.offset(LatticeState.VX);
+    if (diff == null || diff.length != state.length) {
+      diff = new float[state.length];
+      cachedPositions = new float[positions];
+      cacheValid = false;
+    }
+    if (!isCacheValid(state, positions)) {
+      derivative.evaluate(lattice, state, diff);
+    }
+
+    float halfH = h * 0.5f;
+    for (int i = 0; i < positions; i++) {
+      float v = state[positions + i] + diff[positions + i] * halfH;
+      state[positions + i] = v;
+      state[i] = state[i] + v * h;
+    }
+
+    derivative.evaluate(lattice, state, diff);
+    for (int i = 0; i < positions; i++) {
+      state[positions + i] = state[positions + i] + diff[positions + i] * halfH;
+    }
+
+    System.arraycopy(state, 0, cachedPositions, 0, positions);
+    cacheValid = true;
+  }
+
+  @Override
+  public void invalidate() {
+    cacheValid = false;
+  }
+
+  private boolean isCacheValid(float[] state, int positions) {
+    if (!cacheValid) {
+      return false;
+    }
+    for (int i = 0; i < positions; i++) {
+      if (state[i] != cachedPositions[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,254 @@
+package org.mipt.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import org.mipt.entity.LatticeState;
+import org.mipt.entity.SpringTable;
+
+/**
+ * Контрольная точка: полное состояние решетки в компактном бинарном файле. Из нее можно продолжить
+ * счет или начать несколько экспериментов с одного заранее возбужденного состояния.
+ *
+ * <p>Заголовок ({@value #HEADER_SIZE} байт, little-endian):
+ *
+ * <pre>
+ *   int   magic       'EWCP'
+ *   int   version
+ *   int   weightsNumberX
+ *   int   weightsNumberY
+ *   long  step        номер последнего сделанного шага
+ *   float time        модельное время
+ *   float leftWallX, rightWallX, lowerWallY, upperWallY
+ *   long  parameters  отпечаток масс, размеров грузов и пружин
+ *   int[3] reserved
+ * </pre>
+ *
+ * Затем вектор состояния {@link LatticeState} целиком: x, y, vx, vy. Массы и пружины не пишутся,
+ * они задаются построением решетки, а отпечаток не дает восстановить точку в другую решетку.
+ */
+public final class Checkpoint {
+  static final int MAGIC = 0x45574350;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 64;
+  static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+  private final int weightsNumberX;
+  private final int weightsNumberY;
+  private final long step;
+  private final float time;
+  private final float leftWallX;
+  private final float rightWallX;
+  private final float lowerWallY;
+  private final float upperWallY;
+  private final long parameters;
+  private final float[] state;
+
+  private Checkpoint(ByteBuffer header, float[] state) {
+    this.weightsNumberX = header.getInt();
+    this.weightsNumberY = header.getInt();
+    this.step = header.getLong();
+    this.time = header.getFloat();
+    this.leftWallX = header.getFloat();
+    this.rightWallX = header.getFloat();
+    this.lowerWallY = header.getFloat();
+    this.upperWallY = header.getFloat();
+    this.parameters = header.getLong();
+    this.state = state;
+  }
+
+  /**
+   * Записывает контрольную точку. Файл сначала пишется рядом под временным именем и затем
+   * переименовывается, так что прерванная запись не портит предыдущую точку.
+   *
+   * @param file путь к файлу, существующий файл заменяется
+   * @param lattice состояние решетки
+   * @param step номер последнего сделанного шага
+   * @param time модельное время
+   * @throws IOException при ошибке записи
+   */
+  public static void write(Path file, LatticeState lattice, long step, float time)
+      throws IOException {
+    float[] state = lattice.getState();
+    ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + 4 * state.length);
+    buffer.order(ORDER);
+    buffer
+        .putInt(MAGIC)
+        .putInt(VERSION)
+        .putInt(lattice.getWeightsNumberX())
+        .putInt(lattice.getWeightsNumberY())
+        .putLong(step)
+        .putFloat(time)
+        .putFloat(lattice.getLeftWallX())
+        .putFloat(lattice.getRightWallX())
+        .putFloat(lattice.getLowerWallY())
+        .putFloat(lattice.getUpperWallY())
+        .putLong(parameters(lattice));
+    buffer.position(HEADER_SIZE);
+    buffer.asFloatBuffer().put(state);
+    buffer.rewind();
+
+    Path absolute = file.toAbsolutePath();
+    Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+    try (FileChannel channel =
+        FileChannel.open(
+            temp,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+    try {
+      Files.move(temp, absolute, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temp, absolute, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Читает контрольную точку целиком
+   *
+   * @param file путь к файлу
+   * @return прочитанная точка
+   * @throws IOException если файл не удалось прочитать, он обрезан или другого формата
+   */
+  public static Checkpoint read(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer header = readFully(channel, 0, HEADER_SIZE);
+      if (header.getInt() != MAGIC) {
+        throw new IOException("Not a checkpoint file");
+      }
+      int version = header.getInt();
+      if (version != VERSION) {
+        throw new IOException("Unsupported checkpoint version " + version);
+      }
+      int weightsNumberX = header.getInt(8);
+      int weightsNumberY = header.getInt(12);
+      long floats = (long) LatticeState.BLOCKS * weightsNumberX * weightsNumberY;
+      if (weightsNumberX <= 0 || weightsNumberY <= 0 || floats > Integer.MAX_VALUE / 4) {
+        throw new IOException(
+            "Bad checkpoint lattice size " + weightsNumberX + "x" + weightsNumberY);
+      }
+      if (channel.size() != HEADER_SIZE + 4 * floats) {
+        throw new IOException("Checkpoint is truncated");
+      }
+      float[] state = new float[(int) floats];
+      readFully(channel, HEADER_SIZE, 4 * (int) floats).asFloatBuffer().get(state);
+      return new Checkpoint(header, state);
+    }
+  }
+
+  /**
+   * Проверяет, что точку можно загрузить в решетку
+   *
+   * @param lattice решетка или ее снимок
+   * @throws IllegalArgumentException если у решетки другие размеры, массы или пружины
+   */
+  public void check(LatticeState lattice) {
+    if (lattice.getWeightsNumberX() != weightsNumberX
+        || lattice.getWeightsNumberY() != weightsNumberY) {
+      throw new IllegalArgumentException(
+          "Checkpoint is for a "
+              + weightsNumberX
+              + "x"
+              + weightsNumberY
+              + " lattice, got "
+              + lattice.getWeightsNumberX()
+              + "x"
+              + lattice.getWeightsNumberY());
+    }
+    if (parameters(lattice) != parameters) {
+      throw new IllegalArgumentException(
+          "Checkpoint was taken on a lattice with other masses or springs");
+    }
+  }
+
+  /**
+   * Загружает точку в решетку: вектор состояния и стены
+   *
+   * @param lattice решетка, построенная с теми же размерами, массами и пружинами
+   * @throws IllegalArgumentException если решетка другая
+   */
+  public void restore(LatticeState lattice) {
+    check(lattice);
+    // Смена стен сбрасывает таблицу пружин, поэтому только если стены другие
+    if (lattice.getLeftWallX() != leftWallX
+        || lattice.getRightWallX() != rightWallX
+        || lattice.getLowerWallY() != lowerWallY
+        || lattice.getUpperWallY() != upperWallY) {
+      lattice.setWalls(leftWallX, rightWallX, lowerWallY, upperWallY);
+    }
+    System.arraycopy(state, 0, lattice.getState(), 0, state.length);
+  }
+
+  public int getWeightsNumberX() {
+    return weightsNumberX;
+  }
+
+  public int getWeightsNumberY() {
+    return weightsNumberY;
+  }
+
+  /** Номер последнего сделанного шага */
+  public long getStep() {
+    return step;
+  }
+
+  /** Модельное время */
+  public float getTime() {
+    return time;
+  }
+
+  private static ByteBuffer readFully(FileChannel channel, long position, int bytes)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(bytes);
+    buffer.order(ORDER);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IOException("Checkpoint is truncated");
+      }
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Отпечаток FNV-1a по битам масс, размеров грузов, концов, жесткостей и длин пружин
+   *
+   * @param lattice решетка или ее снимок
+   * @return одинаковый для решеток, построенных с одними параметрами
+   */
+  public static long parameters(LatticeState lattice) {
+    SpringTable springs = lattice.getSprings();
+    long hash = 0xcbf29ce484222325L;
+    hash = mix(hash, lattice.getMass());
+    hash = mix(hash, lattice.getWidth());
+    hash = mix(hash, lattice.getHeight());
+    hash = mix(hash, springs.getFrom());
+    hash = mix(hash, springs.getTo());
+    hash = mix(hash, springs.getK());
+    return mix(hash, springs.getRestLength());
+  }
+
+  private static long mix(long hash, float[] values) {
+    for (float value : values) {
+      hash = (hash ^ Float.floatToIntBits(value)) * 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  private static long mix(long hash, int[] values) {
+    for (int value : values) {
+      hash = (hash ^ value) * 0x100000001b3L;
+    }
+    return hash;
+  }
+}
@@ -0,0 +1,59 @@
+package org.mipt.io;
+
+import java.nio.ByteOrder;
+import org.mipt.entity.LatticeState;
+
+/**
+ * Разметка бинарного файла траектории.
+ *
+ * <p>Заголовок ({@value #HEADER_SIZE} байт, little-endian):
+ *
+ * <pre>
+ *   int   magic       'EWTR'
+ *   int   version
+ *   int   weightsNumberX
+ *   int   weightsNumberY
+ *   float dt
+ *   int   fields      битовая маска FIELD_*
+ *   int   frameCount  число записанных кадров, обновляется после каждого кадра
+ *   int   reserved
+ * </pre>
+ *
+ * Затем идут кадры одинакового размера: {@code float time} и по {@code weightsNumberX *
+ * weightsNumberY} значений для каждого поля из маски в порядке x, y, vx, vy. Файл может быть
+ * длиннее записанных кадров, верным считается {@code frameCount}.
+ */
+public final class TrajectoryFormat {
+  static final int MAGIC = 0x45575452;
+  static final int VERSION = 1;
+  static final int HEADER_SIZE = 32;
+  static final int FRAME_COUNT_POSITION = 24;
+  static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+  public static final int FIELD_X = 1 << LatticeState.X;
+  public static final int FIELD_Y = 1 << LatticeState.Y;
+  public static final int FIELD_VX = 1 << LatticeState.VX;
+  public static final int FIELD_VY = 1 << LatticeState.VY;
+  public static final int POSITIONS = FIELD_X | FIELD_Y;
+  public static final int ALL = POSITIONS | FIELD_VX | FIELD_VY;
+
+  private TrajectoryFormat() {}
+
+  /** Число полей в маске */
+  static int fieldCount(int fields) {
+    return Integer.bitCount(fields & ALL);
+  }
+
+  /** Номер поля внутри кадра или -1, если поле не записывается */
+  static int fieldSlot(int fields, int field) {
+    if ((fields & field) == 0) {
+      return -1;
+    }
+    return Integer.bitCount(fields & (field - 1));
+  }
+
+  /** Размер кадра в байтах */
+  static long frameBytes(int fields, int weightsNumber) {
+    return 4L * (1 + (long) fieldCount(fields) * weightsNumber);
+  }
+}
@@ -0,0 +1,222 @@
+package org.mipt.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Читает файл траектории формата {@link TrajectoryFormat}. Файл отображается в память только для
+ * чтения, кадры и временные ряды возвращаются как представления над ним без копирования.
+ */
+public class TrajectoryReader implements Closeable {
+  /** Максимальный размер одной отображаемой области файла */
+  private static final long SEGMENT_BYTES = 1L << 30;
+
+  private final FileChannel channel;
+  private final int weightsNumberX;
+  private final int weightsNumberY;
+  private final int weightsNumber;
+  private final float dt;
+  private final int fields;
+  private final int frameCount;
+  private final int frameFloats;
+  private final int framesPerSegment;
+  private final FloatBuffer[] segments;
+
+  private TrajectoryReader(FileChannel channel) throws IOException {
+    this.channel = channel;
+    ByteBuffer header = ByteBuffer.allocate(TrajectoryFormat.HEADER_SIZE);
+    header.order(TrajectoryFormat.ORDER);
+    while (header.hasRemaining()) {
+      if (channel.read(header, header.position()) < 0) {
+        throw new IOException("Trajectory header is truncated");
+      }
+    }
+    header.flip();
+    if (header.getInt() != TrajectoryFormat.MAGIC) {
+      throw new IOException("Not a trajectory file");
+    }
+    int version = header.getInt();
+    if (version != TrajectoryFormat.VERSION) {
+      throw new IOException("Unsupported trajectory version " + version);
+    }
+    weightsNumberX = header.getInt();
+    weightsNumberY = header.getInt();
+    weightsNumber = weightsNumberX * weightsNumberY;
+    dt = header.getFloat();
+    fields = header.getInt();
+    frameCount = header.getInt();
+
+    long frameBytes = TrajectoryFormat.frameBytes(fields, weightsNumber);
+    frameFloats = (int) (frameBytes / 4);
+    framesPerSegment = (int) Math.max(1, Math.min(frameCount, SEGMENT_BYTES / frameBytes));
+    int segmentCount = frameCount == 0 ? 0 : (frameCount + framesPerSegment - 1) / framesPerSegment;
+    segments = new FloatBuffer[segmentCount];
+    for (int s = 0; s < segmentCount; s++) {
+      int frames = Math.min(framesPerSegment, frameCount - s * framesPerSegment);
+      long position = TrajectoryFormat.HEADER_SIZE + (long) s * framesPerSegment * frameBytes;
+      MappedByteBuffer region =
+          channel.map(FileChannel.MapMode.READ_ONLY, position, frames * frameBytes);
+      region.order(TrajectoryFormat.ORDER);
+      segments[s] = region.asFloatBuffer();
+    }
+  }
+
+  /**
+   * Открывает файл траектории
+   *
+   * @param file путь к файлу
+   * @return читатель траектории
+   * @throws IOException если файл не удалось прочитать или он другого формата
+   */
+  public static TrajectoryReader open(Path file) throws IOException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+    try {
+      return new TrajectoryReader(channel);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  public int getWeightsNumberX() {
+    return weightsNumberX;
+  }
+
+  public int getWeightsNumberY() {
+    return weightsNumberY;
+  }
+
+  public float getDt() {
+    return dt;
+  }
+
+  public int getFields() {
+    return fields;
+  }
+
+  public int getFrameCount() {
+    return frameCount;
+  }
+
+  /**
+   * Момент времени кадра
+   *
+   * @param frame номер кадра
+   * @return время
+   */
+  public float time(int frame) {
+    return segment(frame).get(frameStart(frame));
+  }
+
+  /**
+   * Все поля кадра подряд, без времени
+   *
+   * @param frame номер кадра
+   * @return представление над файлом длиной {@code число полей * число грузов}
+   */
+  public FloatBuffer frame(int frame) {
+    return slice(segment(frame), frameStart(frame) + 1, frameFloats - 1);
+  }
+
+  /**
+   * Одно поле кадра
+   *
+   * @param frame номер кадра
+   * @param field одно из {@code TrajectoryFormat.FIELD_*}
+   * @return представление над файлом длиной в число грузов
+   */
+  public FloatBuffer field(int frame, int field) {
+    return slice(segment(frame), fieldStart(frame, field), weightsNumber);
+  }
+
+  /**
+   * Значение поля одного груза в кадре
+   *
+   * @param frame номер кадра
+   * @param field одно из {@code TrajectoryFormat.FIELD_*}
+   * @param weight номер груза
+   * @return значение
+   */
+  public float value(int frame, int field, int weight) {
+    return segment(frame).get(fieldStart(frame, field) + weight);
+  }
+
+  /**
+   * Временной ряд поля одного груза. Значения читаются из файла при обращении.
+   *
+   * @param weight номер груза
+   * @param field одно из {@code TrajectoryFormat.FIELD_*}
+   * @return ряд длиной в число кадров
+   */
+  public TimeSeries series(int weight, int field) {
+    fieldOffset(field);
+    if (weight < 0 || weight >= weightsNumber) {
+      throw new IndexOutOfBoundsException("Weight " + weight + " of " + weightsNumber);
+    }
+    return new TimeSeries(weight, field);
+  }
+
+  /** Временной ряд одного груза поверх отображенного файла */
+  public final class TimeSeries {
+    private final int weight;
+    private final int field;
+
+    private TimeSeries(int weight, int field) {
+      this.weight = weight;
+      this.field = field;
+    }
+
+    public int size() {
+      return frameCount;
+    }
+
+    public float get(int frame) {
+      return value(frame, field, weight);
+    }
+
+    public float time(int frame) {
+      return TrajectoryReader.this.time(frame);
+    }
+  }
+
+  private FloatBuffer segment(int frame) {
+    if (frame < 0 || frame >= frameCount) {
+      throw new IndexOutOfBoundsException("Frame " + frame + " of " + frameCount);
+    }
+    return segments[frame / framesPerSegment];
+  }
+
+  private int frameStart(int frame) {
+    return (frame % framesPerSegment) * frameFloats;
+  }
+
+  private int fieldStart(int frame, int field) {
+    return frameStart(frame) + fieldOffset(field);
+  }
+
+  private int fieldOffset(int field) {
+    int slot = TrajectoryFormat.fieldSlot(fields, field);
+    if (Integer.bitCount(field) != 1 || slot < 0) {
+      throw new IllegalArgumentException("Field " + field + " is not in the trajectory");
+    }
+    return 1 + slot * weightsNumber;
+  }
+
+  private static FloatBuffer slice(FloatBuffer segment, int start, int length) {
+    FloatBuffer view = segment.duplicate();
+    view.position(start);
+    view.limit(start + length);
+    return view.slice().asReadOnlyBuffer();
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
@@ -0,0 +1,139 @@
+package org.mipt.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.mipt.entity.LatticeState;
+
+/**
+ * Пишет траекторию решетки в бинарный файл формата {@link TrajectoryFormat}. Кадры копируются
+ * блоками из вектора состояния прямо в отображенную в память область файла, без форматирования
+ * чисел.
+ */
+public class TrajectoryWriter implements Closeable {
+  /** Примерный размер одной отображаемой области файла */
+  private static final long CHUNK_BYTES = 64L << 20;
+
+  private final FileChannel channel;
+  private final MappedByteBuffer header;
+  private final int fields;
+  private final int weightsNumber;
+  private final long frameBytes;
+  private final int framesPerChunk;
+
+  private MappedByteBuffer region;
+  private FloatBuffer chunk;
+  private int framesInChunk;
+  private int frameCount;
+
+  /**
+   * Создает файл траектории, перезаписывая существующий
+   *
+   * @param file путь к файлу
+   * @param weightsNumberX число грузов по X
+   * @param weightsNumberY число грузов по Y
+   * @param dt шаг между кадрами
+   * @param fields маска полей {@code TrajectoryFormat.FIELD_*}
+   * @throws IOException при ошибке создания файла
+   */
+  public TrajectoryWriter(Path file, int weightsNumberX, int weightsNumberY, float dt, int fields)
+      throws IOException {
+    if (TrajectoryFormat.fieldCount(fields) == 0) {
+      throw new IllegalArgumentException("No fields selected: " + fields);
+    }
+    this.fields = fields & TrajectoryFormat.ALL;
+    this.weightsNumber = weightsNumberX * weightsNumberY;
+    this.frameBytes = TrajectoryFormat.frameBytes(this.fields, weightsNumber);
+    this.framesPerChunk = (int) Math.max(1, Math.min(Integer.MAX_VALUE, CHUNK_BYTES / frameBytes));
+
+    channel =
+        FileChannel.open(
+            file,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+    header = channel.map(FileChannel.MapMode.READ_WRITE, 0, TrajectoryFormat.HEADER_SIZE);
+    header.order(TrajectoryFormat.ORDER);
+    header
+        .putInt(TrajectoryFormat.MAGIC)
+        .putInt(TrajectoryFormat.VERSION)
+        .putInt(weightsNumberX)
+        .putInt(weightsNumberY)
+        .putFloat(dt)
+        .putInt(this.fields)
+        .putInt(0)
+        .putInt(0);
+  }
+
+  /**
+   * Записывает кадр
+   *
+   * @param lattice состояние решетки
+   * @param time момент времени кадра
+   * @throws IOException при ошибке отображения файла
+   */
+  public void write(LatticeState lattice, float time) throws IOException {
+    if (lattice.size() != weightsNumber) {
+      throw new IllegalArgumentException(
+          "Expected " + weightsNumber + " weights, got " + lattice.size());
+    }
+    write(lattice.getState(), time);
+  }
+
+  /**
+   * Записывает кадр из вектора состояния с раскладкой {@link LatticeState}
+   *
+   * @param state вектор состояния
+   * @param time момент времени кадра
+   * @throws IOException при ошибке отображения файла
+   */
+  public void write(float[] state, float time) throws IOException {
+    if (chunk == null || framesInChunk == framesPerChunk) {
+      mapNextChunk();
+    }
+    chunk.put(time);
+    for (int block = 0; block < LatticeState.BLOCKS; block++) {
+      if ((fields & (1 << block)) != 0) {
+        chunk.put(state, block * weightsNumber, weightsNumber);
+      }
+    }
+    framesInChunk++;
+    frameCount++;
+    header.putInt(TrajectoryFormat.FRAME_COUNT_POSITION, frameCount);
+  }
+
+  private void mapNextChunk() throws IOException {
+    long position = TrajectoryFormat.HEADER_SIZE + frameCount * frameBytes;
+    if (region != null) {
+      region.force();
+    }
+    region = channel.map(FileChannel.MapMode.READ_WRITE, position, framesPerChunk * frameBytes);
+    region.order(TrajectoryFormat.ORDER);
+    chunk = region.asFloatBuffer();
+    framesInChunk = 0;
+  }
+
+  public int getFrameCount() {
+    return frameCount;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (region != null) {
+      region.force();
+    }
+    header.force();
+    try {
+      channel.truncate(TrajectoryFormat.HEADER_SIZE + frameCount * frameBytes);
+    } catch (IOException e) {
+      // Пока файл отображен в память, некоторые ОС не дают его обрезать. Хвост без кадров
+      // безопасен: читатель опирается на frameCount из заголовка.
+    }
+    channel.close();
+  }
+}
@@ -0,0 +1,37 @@
+package org.mipt.observer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.mipt.entity.LatticeState;
+import org.mipt.io.Checkpoint;
+
+/**
+ * Пишет контрольную точку {@link Checkpoint} на каждом шаге, который ему передали, заменяя
+ * предыдущую. Частоту задает {@link ObserverPipeline}, а чтобы запись не останавливала шаги, его
+ * оборачивают в {@link org.mipt.AsyncPhysicsLogger} с политикой {@code DROP}.
+ */
+public class CheckpointObserver implements PhysicsObserver {
+  private final Path file;
+  private long writtenStep = -1;
+
+  /**
+   * @param file путь к файлу контрольной точки
+   */
+  public CheckpointObserver(Path file) {
+    this.file = file;
+  }
+
+  @Override
+  public void observe(LatticeState lattice, long step, float time) throws IOException {
+    Checkpoint.write(file, lattice, step, time);
+    writtenStep = step;
+  }
+
+  /** Номер шага последней записанной точки, -1 - точек еще не было */
+  public long getWrittenStep() {
+    return writtenStep;
+  }
+
+  @Override
+  public void close() {}
+}
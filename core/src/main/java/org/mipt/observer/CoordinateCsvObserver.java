@@ -0,0 +1,58 @@
+package org.mipt.observer;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import org.mipt.entity.LatticeState;
+
+/** Пишет в csv одну координату или скорость выбранных грузов: строка на шаг, столбец на груз */
+public class CoordinateCsvObserver implements PhysicsObserver {
+  private static final String[] NAMES = {"x", "y", "vx", "vy"};
+
+  private final Writer writer;
+  private final int block;
+  private final WeightMask mask;
+
+  /**
+   * Создает файл и пишет заголовок {@code time,x0,x1,...}
+   *
+   * @param filename имя файла
+   * @param block один из {@link LatticeState#X}, {@link LatticeState#Y}, {@link LatticeState#VX},
+   *     {@link LatticeState#VY}
+   * @param mask записываемые грузы
+   * @throws IOException при ошибке создания файла
+   */
+  public CoordinateCsvObserver(String filename, int block, WeightMask mask) throws IOException {
+    this.writer = new BufferedWriter(new FileWriter(filename));
+    this.block = block;
+    this.mask = mask;
+    writer.write("time");
+    for (int k = 0; k < mask.size(); k++) {
+      writer.write("," + NAMES[block] + mask.get(k));
+    }
+    writer.write("\n");
+  }
+
+  @Override
+  public void observe(LatticeState lattice, long step, float time) throws IOException {
+    float[] state = lattice.getState();
+    int offset = lattice.offset(block);
+    writer.write(Float.toString(time));
+    for (int k = 0; k < mask.size(); k++) {
+      writer.write(',');
+      writer.write(Float.toString(state[offset + mask.get(k)]));
+    }
+    writer.write('\n');
+  }
+
+  @Override
+  public void flush() throws IOException {
+    writer.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+}
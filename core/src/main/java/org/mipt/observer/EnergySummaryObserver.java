@@ -0,0 +1,100 @@
+package org.mipt.observer;
+
+import org.mipt.entity.LatticeState;
+
+/**
+ * Сводка по энергии за весь запуск без записи в файлы: дрейф полной энергии относительно первого
+ * наблюдаемого шага, пик кинетической энергии грузов у стен и момент прихода волны к стенам.
+ */
+public class EnergySummaryObserver implements PhysicsObserver {
+  /** Доля начальной энергии у стен, с которой считается, что волна дошла до стен */
+  public static final float ARRIVAL_FRACTION = 0.01f;
+
+  private final WeightMask border;
+
+  private boolean started;
+  private float initialEnergy;
+  private float finalEnergy;
+  private float maxDrift;
+  private float peakBorderEnergy;
+  private float peakBorderTime = Float.NaN;
+  private float arrivalTime = Float.NaN;
+  private long observedSteps;
+
+  /**
+   * @param border грузы у стен, обычно {@link WeightMask#border}
+   */
+  public EnergySummaryObserver(WeightMask border) {
+    this.border = border;
+  }
+
+  @Override
+  public void observe(LatticeState lattice, long step, float time) {
+    float total = 0f;
+    for (int i = 0; i < lattice.size(); i++) {
+      total += lattice.kineticEnergy(i);
+    }
+    total += lattice.getSprings().potentialEnergy(lattice.getState(), lattice.size());
+    float atBorder = 0f;
+    for (int k = 0; k < border.size(); k++) {
+      atBorder += lattice.kineticEnergy(border.get(k));
+    }
+
+    if (!started) {
+      initialEnergy = total;
+      started = true;
+    }
+    finalEnergy = total;
+    if (initialEnergy != 0f) {
+      maxDrift = Math.max(maxDrift, Math.abs(total - initialEnergy) / Math.abs(initialEnergy));
+    }
+    if (atBorder > peakBorderEnergy) {
+      peakBorderEnergy = atBorder;
+      peakBorderTime = time;
+    }
+    if (Float.isNaN(arrivalTime) && atBorder > ARRIVAL_FRACTION * Math.abs(initialEnergy)) {
+      arrivalTime = time;
+    }
+    observedSteps++;
+  }
+
+  /** Полная энергия на первом наблюдаемом шаге */
+  public float getInitialEnergy() {
+    return initialEnergy;
+  }
+
+  /** Полная энергия на последнем наблюдаемом шаге */
+  public float getFinalEnergy() {
+    return finalEnergy;
+  }
+
+  /** Наибольшее отклонение полной энергии от начальной, в долях начальной */
+  public float getMaxDrift() {
+    return maxDrift;
+  }
+
+  /** Наибольшая кинетическая энергия грузов у стен */
+  public float getPeakBorderEnergy() {
+    return peakBorderEnergy;
+  }
+
+  /** Момент пика энергии у стен, NaN - энергия у стен не появлялась */
+  public float getPeakBorderTime() {
+    return peakBorderTime;
+  }
+
+  /**
+   * Первый момент, когда энергия у стен превысила {@value #ARRIVAL_FRACTION} начальной, NaN -
+   * волна не дошла
+   */
+  public float getArrivalTime() {
+    return arrivalTime;
+  }
+
+  public long getObservedSteps() {
+    return observedSteps;
+  }
+
+  @Override
+  public void close() {}
+}
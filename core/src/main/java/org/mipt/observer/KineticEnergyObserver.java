@@ -0,0 +1,49 @@
+package org.mipt.observer;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import org.mipt.entity.LatticeState;
+
+/**
+ * Пишет в csv суммарную кинетическую энергию выбранных грузов. С маской {@link
+ * WeightMask#border} позволяет анализировать прохождение и отражение волны у стен.
+ */
+public class KineticEnergyObserver implements PhysicsObserver {
+  private final Writer writer;
+  private final WeightMask mask;
+
+  /**
+   * Создает файл и пишет заголовок {@code time,energy}
+   *
+   * @param filename имя файла
+   * @param mask грузы, энергия которых суммируется
+   * @throws IOException при ошибке создания файла
+   */
+  public KineticEnergyObserver(String filename, WeightMask mask) throws IOException {
+    this.writer = new BufferedWriter(new FileWriter(filename));
+    this.mask = mask;
+    writer.write("time,energy\n");
+  }
+
+  @Override
+  public void observe(LatticeState lattice, long step, float time) throws IOException {
+    float total = 0f;
+    for (int k = 0; k < mask.size(); k++) {
+      total += lattice.kineticEnergy(mask.get(k));
+    }
+
+    writer.write(time + "," + total + "\n");
+  }
+
+  @Override
+  public void flush() throws IOException {
+    writer.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+}
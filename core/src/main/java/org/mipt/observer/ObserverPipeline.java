@@ -0,0 +1,87 @@
+package org.mipt.observer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.mipt.entity.LatticeState;
+
+/**
+ * Набор наблюдателей, у каждого из которых своя частота записи: наблюдатель, добавленный с {@code
+ * every = 10}, вызывается на шагах 10, 20, 30...
+ */
+public class ObserverPipeline implements PhysicsObserver {
+  private final List<PhysicsObserver> observers = new ArrayList<>();
+  private final List<Integer> periods = new ArrayList<>();
+
+  /**
+   * Добавляет наблюдателя, которого вызывают на каждом шаге
+   *
+   * @param observer наблюдатель
+   * @return этот же набор
+   */
+  public ObserverPipeline add(PhysicsObserver observer) {
+    return add(observer, 1);
+  }
+
+  /**
+   * Добавляет наблюдателя с прореживанием
+   *
+   * @param observer наблюдатель
+   * @param every наблюдатель вызывается на каждом {@code every}-м шаге
+   * @return этот же набор
+   */
+  public ObserverPipeline add(PhysicsObserver observer, int every) {
+    if (every < 1) {
+      throw new IllegalArgumentException("every must be positive: " + every);
+    }
+    observers.add(observer);
+    periods.add(every);
+    return this;
+  }
+
+  @Override
+  public void observe(LatticeState lattice, long step, float time) throws IOException {
+    for (int k = 0; k < observers.size(); k++) {
+      if (step % periods.get(k) == 0) {
+        observers.get(k).observe(lattice, step, time);
+      }
+    }
+  }
+
+  @Override
+  public boolean wants(long step) {
+    for (int k = 0; k < observers.size(); k++) {
+      if (step % periods.get(k) == 0 && observers.get(k).wants(step)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    for (PhysicsObserver observer : observers) {
+      observer.flush();
+    }
+  }
+
+  /** Закрывает всех наблюдателей, даже если кто-то из них завершился с ошибкой */
+  @Override
+  public void close() throws IOException {
+    IOException failure = null;
+    for (PhysicsObserver observer : observers) {
+      try {
+        observer.close();
+      } catch (IOException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+}
@@ -0,0 +1,37 @@
+package org.mipt.observer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import org.mipt.entity.LatticeState;
+
+/** Наблюдатель, которого цикл симуляции вызывает после каждого фиксированного шага */
+public interface PhysicsObserver extends Closeable {
+  /**
+   * Обрабатывает состояние после шага
+   *
+   * @param lattice состояние решетки. Ссылку нельзя сохранять: после возврата решетка шагает
+   *     дальше.
+   * @param step номер завершенного фиксированного шага, начиная с 1
+   * @param time текущий момент времени
+   * @throws IOException при ошибке записи
+   */
+  void observe(LatticeState lattice, long step, float time) throws IOException;
+
+  /**
+   * Нужен ли наблюдателю шаг. Позволяет не снимать копию состояния для шагов, которые никто не
+   * запишет.
+   *
+   * @param step номер шага
+   * @return {@code true}, если {@link #observe} что-то сделает на этом шаге
+   */
+  default boolean wants(long step) {
+    return true;
+  }
+
+  /**
+   * Сбрасывает накопленные данные в файлы
+   *
+   * @throws IOException при ошибке записи
+   */
+  default void flush() throws IOException {}
+}
@@ -0,0 +1,50 @@
+package org.mipt.observer;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import org.mipt.entity.LatticeState;
+
+/**
+ * Пишет в csv полную энергию системы: кинетическую энергию всех грузов и потенциальную энергию всех
+ * пружин. Потенциальная энергия считается по той же геометрии пружин, что и силы в {@link
+ * org.mipt.Physics}.
+ */
+public class TotalEnergyObserver implements PhysicsObserver {
+  private final Writer writer;
+
+  /**
+   * Создает файл и пишет заголовок {@code time,energy}
+   *
+   * @param filename имя файла
+   * @throws IOException при ошибке создания файла
+   */
+  public TotalEnergyObserver(String filename) throws IOException {
+    writer = new BufferedWriter(new FileWriter(filename));
+    writer.write("time,energy\n");
+  }
+
+  @Override
+  public void observe(LatticeState lattice, long step, float time) throws IOException {
+    float total = 0f;
+    for (int i = 0; i < lattice.size(); i++) {
+      total += lattice.kineticEnergy(i);
+    }
+    total += lattice.getSprings().potentialEnergy(lattice.getState(), lattice.size());
+
+    writer.write(Float.toString(time));
+    writer.write("," + total);
+    writer.write("\n");
+  }
+
+  @Override
+  public void flush() throws IOException {
+    writer.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+}
@@ -0,0 +1,38 @@
+package org.mipt.observer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import org.mipt.entity.LatticeState;
+import org.mipt.io.TrajectoryFormat;
+import org.mipt.io.TrajectoryWriter;
+
+/** Пишет кадры всех грузов в бинарную траекторию формата {@link TrajectoryFormat} */
+public class TrajectoryObserver implements PhysicsObserver {
+  private final TrajectoryWriter writer;
+
+  /**
+   * Создает файл траектории
+   *
+   * @param file путь к файлу
+   * @param lattice решетка, размеры которой пишутся в заголовок
+   * @param dt время между записываемыми кадрами
+   * @param fields маска полей {@code TrajectoryFormat.FIELD_*}
+   * @throws IOException при ошибке создания файла
+   */
+  public TrajectoryObserver(Path file, LatticeState lattice, float dt, int fields)
+      throws IOException {
+    writer =
+        new TrajectoryWriter(
+            file, lattice.getWeightsNumberX(), lattice.getWeightsNumberY(), dt, fields);
+  }
+
+  @Override
+  public void observe(LatticeState lattice, long step, float time) throws IOException {
+    writer.write(lattice, time);
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.close();
+  }
+}
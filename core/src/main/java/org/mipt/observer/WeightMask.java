@@ -0,0 +1,111 @@
+package org.mipt.observer;
+
+import java.util.Arrays;
+
+/** Набор грузов, которые записывает наблюдатель. Индексы идут по строкам сетки. */
+public final class WeightMask {
+  private final int[] indices;
+
+  private WeightMask(int[] indices) {
+    this.indices = indices;
+  }
+
+  /**
+   * Все грузы
+   *
+   * @param weightsNumber число грузов
+   * @return маска
+   */
+  public static WeightMask all(int weightsNumber) {
+    int[] indices = new int[weightsNumber];
+    for (int i = 0; i < weightsNumber; i++) {
+      indices[i] = i;
+    }
+    return new WeightMask(indices);
+  }
+
+  /**
+   * Прямоугольная область сетки {@code [fromI, toI) x [fromJ, toJ)}
+   *
+   * @param weightsNumberX число грузов по X
+   * @param weightsNumberY число грузов по Y
+   * @param fromI первый столбец
+   * @param fromJ первая строка
+   * @param toI столбец после последнего
+   * @param toJ строка после последней
+   * @return маска
+   */
+  public static WeightMask region(
+      int weightsNumberX, int weightsNumberY, int fromI, int fromJ, int toI, int toJ) {
+    if (fromI < 0
+        || fromJ < 0
+        || toI > weightsNumberX
+        || toJ > weightsNumberY
+        || fromI > toI
+        || fromJ > toJ) {
+      throw new IllegalArgumentException(
+          "Bad region [" + fromI + ", " + toI + ") x [" + fromJ + ", " + toJ + ")");
+    }
+    int[] indices = new int[(toI - fromI) * (toJ - fromJ)];
+    int k = 0;
+    for (int j = fromJ; j < toJ; j++) {
+      for (int i = fromI; i < toI; i++) {
+        indices[k++] = j * weightsNumberX + i;
+      }
+    }
+    return new WeightMask(indices);
+  }
+
+  /**
+   * Строки сетки {@code [fromRow, toRow)}
+   *
+   * @param weightsNumberX число грузов по X
+   * @param weightsNumberY число грузов по Y
+   * @param fromRow первая строка
+   * @param toRow строка после последней
+   * @return маска
+   */
+  public static WeightMask rows(int weightsNumberX, int weightsNumberY, int fromRow, int toRow) {
+    return region(weightsNumberX, weightsNumberY, 0, fromRow, weightsNumberX, toRow);
+  }
+
+  /**
+   * Грузы у стен: крайние строки и столбцы сетки
+   *
+   * @param weightsNumberX число грузов по X
+   * @param weightsNumberY число грузов по Y
+   * @return маска
+   */
+  public static WeightMask border(int weightsNumberX, int weightsNumberY) {
+    int[] indices = new int[weightsNumberX * weightsNumberY];
+    int k = 0;
+    for (int j = 0; j < weightsNumberY; j++) {
+      for (int i = 0; i < weightsNumberX; i++) {
+        boolean isBorder =
+            (i == 0 || i == weightsNumberX - 1 || j == 0 || j == weightsNumberY - 1);
+        if (isBorder) {
+          indices[k++] = j * weightsNumberX + i;
+        }
+      }
+    }
+    return new WeightMask(Arrays.copyOf(indices, k));
+  }
+
+  /**
+   * Произвольный набор грузов
+   *
+   * @param indices номера грузов
+   * @return маска
+   */
+  public static WeightMask of(int... indices) {
+    return new WeightMask(indices.clone());
+  }
+
+  public int size() {
+    return indices.length;
+  }
+
+  public int get(int k) {
+    return indices[k];
+  }
+}
@@ -0,0 +1,31 @@
+package org.mipt.profiling;
+
+/** Замеряемые фазы кадра и шага физики */
+public enum Phase {
+  /** Весь кадр окна */
+  FRAME("frame"),
+  /** Один фиксированный шаг {@link org.mipt.Physics#applyPhysics} */
+  STEP("physics step"),
+  /** Одно вычисление производной: силы пружин и ускорения */
+  FORCES("forces"),
+  /** Поиск и разрешение столкновений после подшага */
+  COLLISIONS("collisions"),
+  /** Запись кадра наблюдателями */
+  LOGGING("logging"),
+  /** Копирование состояния обратно в объекты {@link org.mipt.entity.Weight} */
+  SYNC_WEIGHTS("sync weights"),
+  /** Отрисовка пружин */
+  DRAW_SPRINGS("draw springs"),
+  /** Отрисовка грузов */
+  DRAW_WEIGHTS("draw weights");
+
+  private final String label;
+
+  Phase(String label) {
+    this.label = label;
+  }
+
+  public String getLabel() {
+    return label;
+  }
+}
@@ -0,0 +1,44 @@
+package org.mipt.profiling;
+
+/**
+ * Получатель замеров фаз вне процесса, например JFR. Реализация на {@code jdk.jfr} собирается
+ * отдельно под Java 11 и подключается, только если ее класс загрузился.
+ */
+interface PhaseEventSink {
+  /** Получатель, который ничего не записывает */
+  PhaseEventSink NONE =
+      new PhaseEventSink() {
+        @Override
+        public boolean isRecording() {
+          return false;
+        }
+
+        @Override
+        public void emit(Phase phase, long duration) {}
+      };
+
+  /** Идет ли сейчас запись, то есть нужны ли замеры */
+  boolean isRecording();
+
+  /**
+   * Записывает замер
+   *
+   * @param phase фаза
+   * @param duration длительность в наносекундах
+   */
+  void emit(Phase phase, long duration);
+
+  /**
+   * Загружает получатель JFR-событий
+   *
+   * @return получатель JFR или {@link #NONE} на JVM без {@code jdk.jfr}
+   */
+  static PhaseEventSink load() {
+    try {
+      return (PhaseEventSink)
+          Class.forName("org.mipt.profiling.JfrPhaseSink").getDeclaredConstructor().newInstance();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return NONE;
+    }
+  }
+}
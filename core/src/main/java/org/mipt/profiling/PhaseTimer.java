@@ -0,0 +1,131 @@
+package org.mipt.profiling;
+
+/**
+ * Замеры длительности фаз. Фаза оборачивается так:
+ *
+ * <pre>{@code
+ * long start = timer.start();
+ * ...
+ * timer.stop(Phase.FORCES, start);
+ * }</pre>
+ *
+ * <p>Пока таймер выключен и не идет запись JFR, {@link #start()} возвращает 0 без обращения к
+ * часам, а {@link #stop} сразу выходит. Включенный таймер копит замеры в {@link RollingHistogram}
+ * по каждой фазе; во время записи JFR каждый замер также уходит событием {@code
+ * org.mipt.PhysicsPhase}.
+ *
+ * <p>Фазы можно замерять из разных потоков, но гистограммы не синхронизированы: одну фазу должен
+ * замерять один поток, а читаемые из другого потока перцентили приблизительны. Поэтому и сброс
+ * гистограмм при включении только запрашивается, а гистограмму фазы очищает поток, который ее
+ * замеряет, перед своим следующим замером.
+ */
+public class PhaseTimer {
+  public static final int DEFAULT_WINDOW = 512;
+
+  private final RollingHistogram[] histograms;
+  private final PhaseEventSink events;
+  private volatile boolean enabled;
+
+  /** Номер запроса сброса гистограмм, растет при каждом включении */
+  private volatile int generation;
+
+  /** Номер последнего сброса, который применил поток фазы; пишет только этот поток */
+  private final int[] cleared;
+
+  public PhaseTimer() {
+    this(DEFAULT_WINDOW);
+  }
+
+  /**
+   * Создает выключенный таймер
+   *
+   * @param window число последних замеров каждой фазы в гистограмме
+   */
+  public PhaseTimer(int window) {
+    Phase[] phases = Phase.values();
+    histograms = new RollingHistogram[phases.length];
+    cleared = new int[phases.length];
+    for (int i = 0; i < phases.length; i++) {
+      histograms[i] = new RollingHistogram(window);
+    }
+    events = PhaseEventSink.load();
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Включает или выключает накопление гистограмм. При включении старые замеры сбрасываются: каждую
+   * гистограмму очищает поток ее фазы перед следующим замером, а до тех пор фаза не попадает в
+   * {@link #summary}.
+   *
+   * @param enabled включить
+   */
+  public void setEnabled(boolean enabled) {
+    if (enabled && !this.enabled) {
+      generation++;
+    }
+    this.enabled = enabled;
+  }
+
+  /**
+   * Начинает замер
+   *
+   * @return отметка времени для {@link #stop} или 0, если замер не нужен
+   */
+  public long start() {
+    return enabled || events.isRecording() ? System.nanoTime() : 0L;
+  }
+
+  /**
+   * Заканчивает замер
+   *
+   * @param phase фаза
+   * @param start значение, которое вернул {@link #start()}
+   */
+  public void stop(Phase phase, long start) {
+    if (start == 0L) {
+      return;
+    }
+    long end = System.nanoTime();
+    long duration = end - start;
+    if (enabled) {
+      int index = phase.ordinal();
+      int requested = generation;
+      if (cleared[index] != requested) {
+        histograms[index].clear();
+        cleared[index] = requested;
+      }
+      histograms[index].record(duration, end);
+    }
+    events.emit(phase, duration);
+  }
+
+  public RollingHistogram getHistogram(Phase phase) {
+    return histograms[phase.ordinal()];
+  }
+
+  /**
+   * Таблица p50/p99 и частоты по всем фазам, у которых есть замеры после последнего включения
+   *
+   * @param out куда дописать таблицу
+   * @return тот же {@code out}
+   */
+  public StringBuilder summary(StringBuilder out) {
+    for (Phase phase : Phase.values()) {
+      RollingHistogram histogram = histograms[phase.ordinal()];
+      if (histogram.count() == 0 || cleared[phase.ordinal()] != generation) {
+        continue;
+      }
+      out.append(
+          String.format(
+              "%-13s p50 %7.3f ms  p99 %7.3f ms  %7.1f/s%n",
+              phase.getLabel(),
+              histogram.percentile(0.5) / 1e6,
+              histogram.percentile(0.99) / 1e6,
+              histogram.ratePerSecond()));
+    }
+    return out;
+  }
+}
@@ -0,0 +1,71 @@
+package org.mipt.profiling;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.utils.Disposable;
+import java.util.function.Supplier;
+
+/**
+ * Текстовая панель в левом верхнем углу окна: строка состояния и таблица {@link
+ * PhaseTimer#summary}
+ */
+public class ProfilerOverlay implements Disposable {
+  private static final float MARGIN = 10f;
+
+  /** Текст обновляется несколько раз в секунду, чтобы цифры можно было прочитать */
+  private static final long REFRESH_NANOS = 250_000_000L;
+
+  private final SpriteBatch batch = new SpriteBatch();
+  private final BitmapFont font = new BitmapFont();
+  private final Matrix4 projection = new Matrix4();
+  private final StringBuilder text = new StringBuilder();
+  private final Supplier<String> status;
+  private long refreshedAt;
+
+  public ProfilerOverlay() {
+    this(() -> "");
+  }
+
+  /**
+   * Создает панель
+   *
+   * @param status строка, которая выводится после числа шагов в секунду, например отставание
+   *     симуляции. Запрашивается при каждом обновлении текста.
+   */
+  public ProfilerOverlay(Supplier<String> status) {
+    this.status = status;
+    font.setColor(Color.YELLOW);
+  }
+
+  /**
+   * Рисует панель поверх кадра в экранных координатах
+   *
+   * @param timer таймер с замерами
+   * @param width ширина окна в пикселях
+   * @param height высота окна в пикселях
+   */
+  public void draw(PhaseTimer timer, int width, int height) {
+    long now = System.nanoTime();
+    if (text.length() == 0 || now - refreshedAt >= REFRESH_NANOS) {
+      text.setLength(0);
+      double stepsPerSecond = timer.getHistogram(Phase.STEP).ratePerSecond();
+      text.append(String.format("steps/s %.1f  %s%n", stepsPerSecond, status.get()));
+      timer.summary(text);
+      refreshedAt = now;
+    }
+
+    projection.setToOrtho2D(0, 0, width, height);
+    batch.setProjectionMatrix(projection);
+    batch.begin();
+    font.draw(batch, text, MARGIN, height - MARGIN);
+    batch.end();
+  }
+
+  @Override
+  public void dispose() {
+    batch.dispose();
+    font.dispose();
+  }
+}
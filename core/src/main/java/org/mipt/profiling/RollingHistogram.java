@@ -0,0 +1,83 @@
+package org.mipt.profiling;
+
+import java.util.Arrays;
+
+/**
+ * Длительности последних {@code window} замеров одной фазы. Перцентили считаются по требованию
+ * сортировкой копии окна, поэтому запись стоит пару присваиваний.
+ */
+public class RollingHistogram {
+  private final long[] durations;
+  private final long[] timestamps;
+  private final long[] sorted;
+  private int next;
+  private int count;
+
+  /**
+   * Создает пустую гистограмму
+   *
+   * @param window число последних замеров, по которым считается статистика
+   */
+  public RollingHistogram(int window) {
+    if (window < 2) {
+      throw new IllegalArgumentException("window must be at least 2: " + window);
+    }
+    durations = new long[window];
+    timestamps = new long[window];
+    sorted = new long[window];
+  }
+
+  /**
+   * Добавляет замер, вытесняя самый старый
+   *
+   * @param duration длительность в наносекундах
+   * @param timestamp момент окончания по {@link System#nanoTime()}
+   */
+  public void record(long duration, long timestamp) {
+    durations[next] = duration;
+    timestamps[next] = timestamp;
+    next = (next + 1) % durations.length;
+    if (count < durations.length) {
+      count++;
+    }
+  }
+
+  public int count() {
+    return count;
+  }
+
+  /**
+   * Перцентиль длительности в окне
+   *
+   * @param quantile доля от 0 до 1, например 0.99
+   * @return длительность в наносекундах, 0 если замеров нет
+   */
+  public long percentile(double quantile) {
+    if (count == 0) {
+      return 0L;
+    }
+    System.arraycopy(durations, 0, sorted, 0, count);
+    Arrays.sort(sorted, 0, count);
+    int index = (int) Math.min(count - 1, Math.floor(quantile * count));
+    return sorted[index];
+  }
+
+  /**
+   * Частота замеров в окне, например шагов в секунду
+   *
+   * @return число замеров в секунду, 0 если замеров меньше двух
+   */
+  public double ratePerSecond() {
+    if (count < 2) {
+      return 0.0;
+    }
+    long newest = timestamps[(next - 1 + durations.length) % durations.length];
+    long oldest = timestamps[(next - count + durations.length) % durations.length];
+    return newest == oldest ? 0.0 : (count - 1) * 1e9 / (newest - oldest);
+  }
+
+  public void clear() {
+    next = 0;
+    count = 0;
+  }
+}
@@ -0,0 +1,140 @@
+package org.mipt;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import org.mipt.entity.LatticeState;
+import org.mipt.integrator.IntegratorType;
+import org.mipt.io.Checkpoint;
+import org.mipt.observer.PhysicsObserver;
+import org.mipt.profiling.PhaseTimer;
+
+/** Повтор журнала без окна дает то же состояние, что и записанный сеанс */
+class JournalReplayTest {
+  private static final float FIXED_TIME_STEP = 0.01f;
+  private static final int SIZE = 12;
+
+  /** Сколько шагов поток симуляции делает между командами */
+  private static final int STEPS_BETWEEN = 20;
+
+  @TempDir Path directory;
+
+  @Test
+  @Timeout(60)
+  void replaysSessionOfTheSimulationThread() throws Exception {
+    LatticeState lattice = Lattice.create(SIZE, SIZE).getState();
+    Physics physics = new Physics();
+    physics.setWarnings(message -> {});
+    StepScheduler scheduler =
+        new StepScheduler(
+            FIXED_TIME_STEP,
+            EnumSet.noneOf(StepScheduler.Degradation.class),
+            physics.getSubSteps());
+    SimulationThread simulation =
+        new SimulationThread(
+            physics, lattice, new IdleObserver(), new PhaseTimer(), FIXED_TIME_STEP, scheduler);
+    Path journal = directory.resolve("session.ewj");
+    simulation.setJournal(new InputJournal(journal, lattice, FIXED_TIME_STEP, physics));
+    simulation.setRealTime(false);
+    simulation.start();
+
+    Path checkpoint = directory.resolve("session.ewcp");
+    try {
+      simulation.submit(
+          (p, state) -> Excitation.RADIAL.apply(p, state, Excitation.DEFAULT_VELOCITY));
+      awaitSteps(simulation);
+      simulation.submit((p, state) -> p.setIntegrator(IntegratorType.DOPRI45.create()));
+      awaitSteps(simulation);
+      SimulationThread.Snapshot snapshot = simulation.latest();
+      Checkpoint.write(checkpoint, snapshot.getState(), snapshot.getStep(), snapshot.getTime());
+      simulation.submit((p, state) -> p.setSubSteps(6));
+      awaitSteps(simulation);
+      // Загрузка точки возвращает решетку назад и пишется в журнал записью STATE
+      simulation.restore(Checkpoint.read(checkpoint));
+      awaitSteps(simulation);
+      simulation.submit((p, state) -> p.setIntegrator(IntegratorType.VERLET.create()));
+      awaitSteps(simulation);
+      simulation.submit((p, state) -> p.setForceModel(Physics.ForceModel.LINEAR));
+      simulation.submit((p, state) -> Excitation.COLUMN.apply(p, state, 50f));
+      awaitSteps(simulation);
+    } finally {
+      simulation.close();
+    }
+
+    JournalReplay replay = JournalReplay.open(journal);
+    assertArrayEquals(lattice.getState(), replay(replay));
+    assertEquals(simulation.latest().getStep(), replay.getStep());
+  }
+
+  @Test
+  void replaysJournalWithoutEndUpToTheLastEntry() throws IOException {
+    LatticeState lattice = Lattice.create(SIZE, SIZE).getState();
+    Physics physics = new Physics();
+    Path journal = directory.resolve("crashed.ewj");
+    Path copy = directory.resolve("copy.ewj");
+    try (InputJournal writer = new InputJournal(journal, lattice, FIXED_TIME_STEP, physics)) {
+      physics.setJournal(writer);
+      Excitation.RADIAL.apply(physics, lattice, Excitation.DEFAULT_VELOCITY);
+      for (int step = 1; step <= 2 * STEPS_BETWEEN; step++) {
+        physics.applyPhysics(lattice, FIXED_TIME_STEP);
+        writer.at(step);
+        if (step == STEPS_BETWEEN) {
+          physics.setSubSteps(6);
+        }
+      }
+      physics.pushWeight(lattice, 0, 100f, 0f);
+      writer.flush();
+      // Файл в том виде, в каком его оставило бы падение окна: без записи конца
+      Files.copy(journal, copy);
+    }
+
+    JournalReplay replay = JournalReplay.open(copy);
+    assertArrayEquals(lattice.getState(), replay(replay));
+    assertEquals(2 * STEPS_BETWEEN, replay.getStep());
+  }
+
+  /** Повторяет журнал так же, как {@link HeadlessRunner} */
+  private static float[] replay(JournalReplay replay) throws IOException {
+    LatticeState lattice =
+        Lattice.create(replay.getWeightsNumberX(), replay.getWeightsNumberY()).getState();
+    Physics physics = new Physics();
+    physics.setWarnings(message -> {});
+    replay.configure(physics);
+    while (replay.applyDue(physics, lattice)) {
+      physics.applyPhysics(lattice, replay.getFixedTimeStep());
+      replay.stepped();
+    }
+    return lattice.getState();
+  }
+
+  /** Ждет, пока поток симуляции сделает еще {@link #STEPS_BETWEEN} шагов */
+  private static void awaitSteps(SimulationThread simulation) throws InterruptedException {
+    for (int i = 0; i < STEPS_BETWEEN; i++) {
+      long step = simulation.latest().getStep();
+      while (simulation.latest().getStep() == step) {
+        Thread.sleep(1);
+      }
+    }
+  }
+
+  /** Наблюдатель, которому шаги не нужны */
+  private static final class IdleObserver implements PhysicsObserver {
+    @Override
+    public void observe(LatticeState lattice, long step, float time) {}
+
+    @Override
+    public boolean wants(long step) {
+      return false;
+    }
+
+    @Override
+    public void close() {}
+  }
+}
@@ -0,0 +1,46 @@
+package org.mipt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import org.junit.jupiter.api.Test;
+import org.mipt.entity.LatticeState;
+import org.mipt.integrator.IntegratorType;
+
+/** Шаг {@link Physics#applyPhysics} после прогрева не выделяет память ни одним методом */
+class PhysicsAllocationTest {
+  private static final float FIXED_TIME_STEP = 0.01f;
+  private static final int WARMUP_STEPS = 500;
+  private static final int STEPS = 200;
+
+  @Test
+  void stepsWithoutAllocation() {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+    long thread = Thread.currentThread().getId();
+
+    for (IntegratorType type : IntegratorType.values()) {
+      for (int tileRows : new int[] {0, 8}) {
+        LatticeState state = Lattice.create(30, 30).getState();
+        Physics physics = new Physics();
+        physics.setIntegrator(type.create());
+        physics.setTiling(tileRows, 1);
+        Excitation.RADIAL.apply(physics, state, Excitation.DEFAULT_VELOCITY);
+        // Прогрев: буферы методов и плиток создаются на первых шагах
+        for (int i = 0; i < WARMUP_STEPS; i++) {
+          physics.applyPhysics(state, FIXED_TIME_STEP);
+        }
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < STEPS; i++) {
+          physics.applyPhysics(state, FIXED_TIME_STEP);
+        }
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertEquals(0, allocated, type + ", tileRows = " + tileRows);
+      }
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package org.mipt;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mipt.entity.LatticeState;
+import org.mipt.entity.Spring;
+
+/** Вершины пружин пишутся в обычный прямой буфер, без GL-контекста */
+class SpringGeometryTest {
+  private static final float EPSILON = 1e-3f;
+
+  private Lattice lattice;
+  private LatticeState state;
+  private SpringGeometry geometry;
+  private FloatBuffer buffer;
+  private final ViewWindow view = new ViewWindow();
+
+  @BeforeEach
+  void createLattice() {
+    lattice = Lattice.create(3, 2);
+    state = lattice.getState();
+    geometry = new SpringGeometry(lattice);
+    buffer =
+        ByteBuffer.allocateDirect(
+                geometry.getMaxVertices() * SpringGeometry.FLOATS_PER_VERTEX * Float.BYTES)
+            .order(ByteOrder.nativeOrder())
+            .asFloatBuffer();
+  }
+
+  @Test
+  void writesAllCoilsOfVisibleSprings() {
+    view.set(-1e4f, -1e4f, 1e4f, 1e4f, 1f);
+    int vertices = geometry.build(state, view, buffer);
+
+    assertEquals(geometry.getMaxVertices(), vertices);
+    assertEquals(0, buffer.position());
+    assertEquals(vertices * SpringGeometry.FLOATS_PER_VERTEX, buffer.limit());
+  }
+
+  @Test
+  void drawsSmallSpringsAsLinesBetweenEnds() {
+    // Виток уже пикселя, а пружина в покое длиннее MIN_SPRING_PIXELS
+    view.set(-1e4f, -1e4f, 1e4f, 1e4f, 0.1f);
+    int vertices = geometry.build(state, view, buffer);
+
+    assertEquals(2 * geometry.size(), vertices);
+    for (int e = 0; e < geometry.size(); e++) {
+      Spring spring = lattice.getSprings().get(e);
+      int a = 2 * e * SpringGeometry.FLOATS_PER_VERTEX;
+      int b = a + SpringGeometry.FLOATS_PER_VERTEX;
+      float dx = buffer.get(b) - buffer.get(a);
+      float dy = buffer.get(b + 1) - buffer.get(a + 1);
+      // Решетка в покое: отрезок от конца до конца длиной в длину пружины
+      assertEquals(spring.getLength(), (float) Math.sqrt(dx * dx + dy * dy), EPSILON);
+      assertEquals(buffer.get(a + 2), buffer.get(b + 2));
+    }
+  }
+
+  @Test
+  void followsWeightsOfTheState() {
+    view.set(-1e4f, -1e4f, 1e4f, 1e4f, 0.1f);
+    geometry.build(state, view, buffer);
+    float wallX = buffer.get(0);
+    float wallY = buffer.get(1);
+
+    // Первая пружина идет от левой стены к левой стороне первого груза
+    state.getState()[0] += 10f;
+    geometry.build(state, view, buffer);
+
+    int end = SpringGeometry.FLOATS_PER_VERTEX;
+    assertEquals(wallX, buffer.get(0), EPSILON);
+    assertEquals(wallY, buffer.get(1), EPSILON);
+    assertEquals(state.getX(0), buffer.get(end), EPSILON);
+    assertEquals(state.getY(0) + state.getHeight()[0] / 2f, buffer.get(end + 1), EPSILON);
+  }
+
+  @Test
+  void skipsSpringsOutsideTheView() {
+    view.set(-2e4f, -2e4f, -1e4f, -1e4f, 1f);
+
+    assertEquals(0, geometry.build(state, view, buffer));
+    assertEquals(0, buffer.limit());
+  }
+
+  @Test
+  void skipsSpringsShorterThanAFewPixels() {
+    view.set(-1e4f, -1e4f, 1e4f, 1e4f, 0.01f);
+
+    assertEquals(0, geometry.build(state, view, buffer));
+    assertEquals(0, buffer.limit());
+  }
+}
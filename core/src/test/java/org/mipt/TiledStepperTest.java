@@ -0,0 +1,82 @@
+package org.mipt;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mipt.entity.LatticeState;
+import org.mipt.integrator.IntegratorType;
+
+/** Шаги плитками побитно совпадают с шагами без плиток, в том числе при столкновениях */
+class TiledStepperTest {
+  private static final float FIXED_TIME_STEP = 0.01f;
+  private static final int SIZE = 40;
+  private static final int STEPS = 60;
+
+  /** Толчок, при котором грузы в центре сталкиваются в первые же шаги */
+  private static final float COLLIDING_VELOCITY = 6000f;
+
+  private ForkJoinPool pool;
+
+  @BeforeEach
+  void createPool() {
+    pool = new ForkJoinPool(2);
+  }
+
+  @AfterEach
+  void shutdownPool() {
+    pool.shutdown();
+  }
+
+  @Test
+  void tilesMatchUntiledSteps() {
+    for (IntegratorType type : IntegratorType.values()) {
+      for (Physics.ForceModel forceModel : Physics.ForceModel.values()) {
+        for (float velocity : new float[] {Excitation.DEFAULT_VELOCITY, COLLIDING_VELOCITY}) {
+          Physics reference = physics(type, forceModel, null, 0, 1);
+          float[] expected = run(reference, velocity);
+          if (velocity == COLLIDING_VELOCITY) {
+            assertTrue(reference.getCollisionPairs() > 0, type + " " + forceModel);
+          }
+
+          String name = type + " " + forceModel + " v=" + velocity;
+          assertArrayEquals(
+              expected, run(physics(type, forceModel, null, 8, 1), velocity), name + " 8x1");
+          assertArrayEquals(
+              expected, run(physics(type, forceModel, pool, 8, 1), velocity), name + " 8x1 pool");
+          assertArrayEquals(
+              expected, run(physics(type, forceModel, null, 16, 2), velocity), name + " 16x2");
+          assertArrayEquals(
+              expected, run(physics(type, forceModel, pool, 16, 2), velocity), name + " 16x2 pool");
+        }
+      }
+    }
+  }
+
+  private static Physics physics(
+      IntegratorType type,
+      Physics.ForceModel forceModel,
+      ForkJoinPool pool,
+      int tileRows,
+      int fusedSubSteps) {
+    Physics physics = new Physics(pool);
+    physics.setIntegrator(type.create());
+    physics.setForceModel(forceModel);
+    physics.setTiling(tileRows, fusedSubSteps);
+    // Сильный толчок выходит за пределы линейной модели, здесь важно только совпадение
+    physics.setWarnings(message -> {});
+    return physics;
+  }
+
+  private static float[] run(Physics physics, float velocity) {
+    LatticeState state = Lattice.create(SIZE, SIZE).getState();
+    Excitation.RADIAL.apply(physics, state, velocity);
+    for (int step = 0; step < STEPS; step++) {
+      physics.applyPhysics(state, FIXED_TIME_STEP);
+    }
+    return state.getState();
+  }
+}
@@ -0,0 +1,85 @@
+package org.mipt;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+import org.mipt.entity.SpringTable;
+
+/**
+ * Ядро сил пружин на Java Vector API: каждая полоса вектора считает свою пружину. Координаты концов
+ * собираются из вектора состояния по номерам грузов, остальные массивы {@link SpringTable} читаются
+ * подряд. Порядок операций тот же, что в {@link ScalarSpringKernel}, поэтому результаты совпадают
+ * побитово. Хвост, не кратный длине вектора, досчитывает скалярное ядро.
+ *
+ * <p>Собирается под Java 17 отдельно от остального кода и загружается через {@link
+ * SpringKernel#select()}. Для работы JVM нужен флаг {@code --add-modules jdk.incubator.vector}.
+ */
+final class VectorSpringKernel implements SpringKernel {
+  /**
+   * Не шире 256 бит: на JDK 17 C2 падал с SIGSEGV на 512-битном gather с AVX-512. Восемь полос
+   * float все равно покрывают основной выигрыш.
+   */
+  private static final VectorSpecies<Float> SPECIES =
+      FloatVector.SPECIES_PREFERRED.vectorBitSize() > 256
+          ? FloatVector.SPECIES_256
+          : FloatVector.SPECIES_PREFERRED;
+
+  /** На более узких регистрах выигрыша нет */
+  private static final int MIN_LANES = 4;
+
+  private final ScalarSpringKernel tail = new ScalarSpringKernel();
+
+  VectorSpringKernel() {
+    if (SPECIES.length() < MIN_LANES) {
+      throw new UnsupportedOperationException("Only " + SPECIES.length() + " float lanes");
+    }
+  }
+
+  @Override
+  public void springForces(
+      SpringTable springs, float[] state, int n, float[] fx, float[] fy, int from, int to) {
+    final int[] a = springs.getFrom();
+    final int[] b = springs.getTo();
+    final float[] aOffX = springs.getFromOffsetX();
+    final float[] aOffY = springs.getFromOffsetY();
+    final float[] bScaleX = springs.getToScaleX();
+    final float[] bScaleY = springs.getToScaleY();
+    final float[] bOffX = springs.getToOffsetX();
+    final float[] bOffY = springs.getToOffsetY();
+    final float[] k = springs.getK();
+    final float[] restLength = springs.getRestLength();
+
+    int e = from;
+    int upper = from + SPECIES.loopBound(to - from);
+    for (; e < upper; e += SPECIES.length()) {
+      FloatVector ax = FloatVector.fromArray(SPECIES, state, 0, a, e);
+      FloatVector ay = FloatVector.fromArray(SPECIES, state, n, a, e);
+      FloatVector bx = FloatVector.fromArray(SPECIES, state, 0, b, e);
+      FloatVector by = FloatVector.fromArray(SPECIES, state, n, b, e);
+
+      FloatVector dx =
+          ax.add(FloatVector.fromArray(SPECIES, aOffX, e))
+              .sub(
+                  bx.mul(FloatVector.fromArray(SPECIES, bScaleX, e))
+                      .add(FloatVector.fromArray(SPECIES, bOffX, e)));
+      FloatVector dy =
+          ay.add(FloatVector.fromArray(SPECIES, aOffY, e))
+              .sub(
+                  by.mul(FloatVector.fromArray(SPECIES, bScaleY, e))
+                      .add(FloatVector.fromArray(SPECIES, bOffY, e)));
+      FloatVector len = dx.mul(dx).add(dy.mul(dy)).sqrt();
+
+      FloatVector scale =
+          FloatVector.fromArray(SPECIES, k, e)
+              .neg()
+              .mul(len.sub(FloatVector.fromArray(SPECIES, restLength, e)))
+              .div(len);
+      VectorMask<Float> degenerate = len.lt(EPSILON);
+      scale = scale.blend(0f, degenerate);
+
+      dx.mul(scale).intoArray(fx, e);
+      dy.mul(scale).intoArray(fy, e);
+    }
+    tail.springForces(springs, state, n, fx, fy, e, to);
+  }
+}